@@ -0,0 +1,59 @@
+package fr.dz.envo.benchmark;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Données communes aux benchmarks : noms de fichiers de filenames.txt et ancienne analyse par expression régulière
+ */
+public class BenchmarkCorpus {
+	
+	// Constantes
+	private static final String CORPUS = "/filenames.txt";
+	private static final String SERIE_REG_EXP = "^([A-Za-z0-9 .]*)[Ss]([0-9]{1,2})[EeXx]([0-9]{1,2}).*$";
+	
+	private BenchmarkCorpus() {
+	}
+	
+	/**
+	 * Chargement des noms de fichiers
+	 * @return
+	 * @throws Exception
+	 */
+	public static List<String> loadCorpus() throws Exception {
+		InputStream in = BenchmarkCorpus.class.getResourceAsStream(CORPUS);
+		try {
+			return IOUtils.readLines(in, "UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Ancienne analyse du nom de fichier (expression régulière compilée à chaque requète, puis plusieurs replaceAll)
+	 * @param filename
+	 * @return La requète
+	 */
+	public static String parseRegExp(String filename) {
+		String query;
+		Pattern pattern = Pattern.compile(SERIE_REG_EXP);
+		Matcher matcher = pattern.matcher(filename);
+		if ( matcher.find() ) {
+			query = matcher.group(1).replaceAll("\\.", " ").trim().toLowerCase();
+			Integer.parseInt(matcher.group(2));
+			Integer.parseInt(matcher.group(3));
+		} else {
+			if ( filename.lastIndexOf(".") != -1 ) {
+				query = filename.substring(0, filename.lastIndexOf("."));
+			} else {
+				query = filename;
+			}
+			query = query.replaceAll("\\.", " ").trim().toLowerCase();
+		}
+		return query;
+	}
+}
@@ -0,0 +1,80 @@
+package fr.dz.envo.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Level;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import fr.dz.envo.EnVO;
+import fr.dz.envo.util.IOUtils;
+
+/**
+ * Détection et conversion d'encoding sur un fichier de sous-titres d'un épisode (700 répliques, ~50 Ko)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EncodingBenchmark {
+	
+	// Constantes
+	private static final int SUBTITLES = 700;
+	
+	// Fichiers
+	private File directory;
+	private File utf8;
+	private File windows1252;
+	private File work;
+	
+	@Setup
+	public void setup() throws Exception {
+		EnVO.LOGGER.setLevel(Level.INFO);
+		directory = new File("target/benchmark-files");
+		directory.mkdirs();
+		StringBuilder content = new StringBuilder();
+		for ( int i = 1; i <= SUBTITLES; i++ ) {
+			content.append(i).append("\r\n");
+			content.append("00:").append(10 + i / 60).append(':').append(10 + i % 50).append(",000 --> 00:")
+					.append(10 + i / 60).append(':').append(11 + i % 50).append(",500\r\n");
+			content.append(i % 3 == 0 ? "Déjà vu, ça a été très étrange !" : "I know, it's really weird.").append("\r\n\r\n");
+		}
+		utf8 = new File(directory, "utf8.srt");
+		FileUtils.writeStringToFile(utf8, content.toString(), "UTF-8");
+		windows1252 = new File(directory, "windows1252.srt");
+		FileUtils.writeStringToFile(windows1252, content.toString(), EnVO.DEFAULT_TARGET_ENCODING);
+		work = new File(directory, "work.srt");
+	}
+	
+	@TearDown
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(directory);
+	}
+	
+	@Benchmark
+	public String detectEncodingUTF8() throws Exception {
+		return IOUtils.detectEncoding(utf8);
+	}
+	
+	@Benchmark
+	public String detectEncodingWindows1252() throws Exception {
+		return IOUtils.detectEncoding(windows1252);
+	}
+	
+	/**
+	 * Conversion en WINDOWS-1252 d'une copie du fichier UTF-8 (copie comprise)
+	 */
+	@Benchmark
+	public long changeEncoding() throws Exception {
+		FileUtils.copyFile(utf8, work);
+		IOUtils.changeEncoding(work, "UTF-8", EnVO.DEFAULT_TARGET_ENCODING);
+		return work.length();
+	}
+}
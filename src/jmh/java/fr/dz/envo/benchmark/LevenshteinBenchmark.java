@@ -0,0 +1,72 @@
+package fr.dz.envo.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import fr.dz.envo.util.Levenshtein;
+
+/**
+ * Distance de Levenshtein entre un nom de fichier cherché et les noms de fichiers du corpus
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LevenshteinBenchmark {
+	
+	// Constantes
+	private static final String REQUEST = "The.Big.Bang.Theory.S05E23.[LOL].avi";
+	private static final int LIMIT = 10;
+	
+	// Données
+	private List<String> filenames;
+	private String long0;
+	private String long1;
+	
+	@Setup
+	public void setup() throws Exception {
+		filenames = BenchmarkCorpus.loadCorpus();
+		long0 = StringUtils.repeat(REQUEST, 4);
+		long1 = StringUtils.repeat("The.Big.Bang.Theory.S05E22.720p.HDTV.X264-DIMENSION.mkv", 3);
+	}
+	
+	/**
+	 * Distance complète avec chaque nom du corpus
+	 */
+	@Benchmark
+	public int distance() {
+		int total = 0;
+		for ( String filename : filenames ) {
+			total += Levenshtein.distance(REQUEST, filename);
+		}
+		return total;
+	}
+	
+	/**
+	 * Distance bornée avec chaque nom du corpus
+	 */
+	@Benchmark
+	public int distanceAtMost() {
+		int total = 0;
+		for ( String filename : filenames ) {
+			total += Levenshtein.distanceAtMost(REQUEST, filename, LIMIT);
+		}
+		return total;
+	}
+	
+	/**
+	 * Distance entre deux chaînes de plus de 64 caractères (moteur par bande)
+	 */
+	@Benchmark
+	public int distanceLongStrings() {
+		return Levenshtein.distance(long0, long1);
+	}
+}
@@ -0,0 +1,73 @@
+package fr.dz.envo.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Level;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import fr.dz.envo.EnVO;
+import fr.dz.envo.api.SubtitlesRequest;
+
+/**
+ * Analyse des noms de fichiers du corpus
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RequestParsingBenchmark {
+	
+	// Données
+	private List<String> filenames;
+	private SubtitlesRequest request;
+	
+	@Setup
+	public void setup() throws Exception {
+		EnVO.LOGGER.setLevel(Level.INFO);
+		filenames = BenchmarkCorpus.loadCorpus();
+		request = new SubtitlesRequest(null, null);
+	}
+	
+	/**
+	 * Parcours unique du nom de fichier
+	 */
+	@Benchmark
+	public int parseFilename() {
+		int total = 0;
+		for ( String filename : filenames ) {
+			request.parseFilename(filename);
+			total += request.getQuery().length();
+		}
+		return total;
+	}
+	
+	/**
+	 * Ancienne analyse par expression régulière, pour comparaison
+	 */
+	@Benchmark
+	public int parseRegExp() {
+		int total = 0;
+		for ( String filename : filenames ) {
+			total += BenchmarkCorpus.parseRegExp(filename).length();
+		}
+		return total;
+	}
+	
+	/**
+	 * Construction complète de la requète (SubtitlesRequest.init), recherche de la taille du fichier comprise
+	 */
+	@Benchmark
+	public int init() {
+		int total = 0;
+		for ( String filename : filenames ) {
+			total += new SubtitlesRequest("fre", "target/" + filename).getQuery().length();
+		}
+		return total;
+	}
+}
@@ -0,0 +1,106 @@
+package fr.dz.envo.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Level;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import fr.dz.envo.EnVO;
+import fr.dz.envo.api.SubtitlesRequest;
+import fr.dz.envo.api.SubtitlesResult;
+import fr.dz.envo.api.SubtitlesResultFile;
+import fr.dz.envo.api.SubtitlesResultsScorer;
+
+/**
+ * Scoring d'un ensemble de résultats construit à partir des noms de fichiers du corpus :
+ * 20 résultats de 3 fichiers ayant chacun 5 noms
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ScoringBenchmark {
+	
+	// Constantes
+	private static final String REQUEST = "The.Big.Bang.Theory.S05E23.[LOL].avi";
+	private static final int RESULTS = 20;
+	private static final int FILES = 3;
+	private static final int NAMES = 5;
+	
+	// Données
+	private SubtitlesRequest request;
+	private List<SubtitlesResult> results;
+	private SubtitlesResultsScorer scorer;
+	
+	@Setup
+	public void setup() throws Exception {
+		EnVO.LOGGER.setLevel(Level.INFO);
+		request = new SubtitlesRequest("fre", REQUEST);
+		scorer = new SubtitlesResultsScorer();
+		List<String> filenames = BenchmarkCorpus.loadCorpus();
+		results = new ArrayList<SubtitlesResult>();
+		int index = 0;
+		for ( int i = 0; i < RESULTS; i++ ) {
+			SubtitlesResult result = new SubtitlesResult();
+			result.setTrusted(i % 2 == 0);
+			for ( int j = 0; j < FILES; j++ ) {
+				SubtitlesResultFile file = new SubtitlesResultFile();
+				file.setSize(Long.valueOf(175000000 + index));
+				List<String> names = new ArrayList<String>();
+				for ( int k = 0; k < NAMES; k++ ) {
+					names.add(filenames.get(index++ % filenames.size()));
+				}
+				file.setFileNames(names);
+				result.getFiles().add(file);
+			}
+			results.add(result);
+		}
+	}
+	
+	/**
+	 * SubtitlesResultFile.doScoring sur chaque fichier
+	 */
+	@Benchmark
+	public int fileScoring() {
+		int total = 0;
+		for ( SubtitlesResult result : results ) {
+			for ( SubtitlesResultFile file : result.getFiles() ) {
+				file.doScoring(request);
+				total += file.getScoringValue();
+			}
+		}
+		return total;
+	}
+	
+	/**
+	 * SubtitlesResult.doScoring sur chaque résultat, fichiers compris
+	 */
+	@Benchmark
+	public int resultScoring() {
+		int total = 0;
+		for ( SubtitlesResult result : results ) {
+			for ( SubtitlesResultFile file : result.getFiles() ) {
+				file.setScoring(null);
+			}
+			result.doScoring(request);
+			total += result.getScoringValue();
+		}
+		return total;
+	}
+	
+	/**
+	 * Scoring de l'ensemble des résultats par index de tokens
+	 */
+	@Benchmark
+	public int resultsScorer() {
+		scorer.doScoring(request, results);
+		return results.get(0).getScoringValue();
+	}
+}
@@ -0,0 +1,75 @@
+package fr.dz.envo.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Level;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import fr.dz.envo.EnVO;
+import fr.dz.envo.api.SearchSubtitlesManager;
+import fr.dz.envo.api.SubtitlesRequest;
+import fr.dz.envo.util.http.ReplayURLFetcher;
+import fr.dz.envo.util.http.URLFetchers;
+
+/**
+ * Recherche complète (toutes les sources, scoring et téléchargement) à partir de réponses enregistrées
+ * Les réponses doivent avoir été enregistrées au préalable avec le même fichier et la même langue :
+ *   envo.sh -Denvo.replay.mode=record -Denvo.replay.directory=target/replay ...
+ * La latence simulée se règle avec -p latency=... -p jitter=... (ms)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SearchBenchmark {
+	
+	// Paramètres
+	@Param("target/replay")
+	private String directory;
+	@Param("The.Big.Bang.Theory.S05E23.[LOL].avi")
+	private String filename;
+	@Param("fre")
+	private String lang;
+	@Param("0")
+	private long latency;
+	@Param("0")
+	private long jitter;
+	
+	// Données
+	private File folder;
+	
+	@Setup
+	public void setup() throws Exception {
+		EnVO.LOGGER.setLevel(Level.INFO);
+		if ( ! new File(directory).isDirectory() ) {
+			throw new IllegalStateException("Aucune réponse enregistrée dans "+directory);
+		}
+		folder = new File("target/benchmark-search");
+		folder.mkdirs();
+		URLFetchers.setHttpFetcher(new ReplayURLFetcher(null, ReplayURLFetcher.Mode.REPLAY, new File(directory), latency, jitter));
+		URLFetchers.setPageFetcher(URLFetchers.getHttpFetcher());
+	}
+	
+	@TearDown
+	public void tearDown() throws Exception {
+		URLFetchers.setPageFetcher(null);
+		URLFetchers.setHttpFetcher(null);
+		FileUtils.deleteDirectory(folder);
+	}
+	
+	@Benchmark
+	public boolean search() throws Exception {
+		SearchSubtitlesManager manager = new SearchSubtitlesManager(new SubtitlesRequest(lang, new File(folder, filename).getPath()));
+		manager.doTasks();
+		return manager.isDownloaded();
+	}
+}
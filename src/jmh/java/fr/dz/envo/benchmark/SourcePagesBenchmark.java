@@ -0,0 +1,116 @@
+package fr.dz.envo.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Level;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import fr.dz.envo.EnVO;
+import fr.dz.envo.api.SubtitlesRequest;
+import fr.dz.envo.api.SubtitlesResult;
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.sources.OpenSubtitlesDownloader;
+import fr.dz.envo.util.http.AbstractURLFetcher;
+import fr.dz.envo.util.http.URLFetchers;
+import fr.dz.envo.util.http.URLResponse;
+
+/**
+ * Analyse des pages OpenSubtitles capturées dans html/ : parsing Jsoup, liste des résultats d'une page
+ * de recherche et création d'un résultat à partir d'une page de sous-titres
+ * Les pages de noms de fichiers demandées par createResult sont servies en mémoire
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SourcePagesBenchmark {
+	
+	// Constantes
+	private static final String BASE_URI = "http://www.opensubtitles.org/fr/search2";
+	private static final String SEARCH_PAGE = "html/The.Big.Bang.Theory.S05E22.[LOL].avi.html";
+	private static final String SUBTITLES_PAGE = "html/The.Big.Bang.Theory.S05E23.[LOL].avi.html";
+	private static final String FILENAMES_PAGE = "<html><body><a>The.Big.Bang.Theory.S05E23.HDTV.x264-LOL.mp4</a>"
+			+ "<a>The.Big.Bang.Theory.S05E23.720p.HDTV.X264-DIMENSION.mkv</a><a>the.big.bang.theory.523.hdtv-lol.avi</a></body></html>";
+	
+	// Données
+	private byte[] searchPage;
+	private byte[] subtitlesPage;
+	private Document subtitlesDocument;
+	private OpenSubtitlesDownloader source;
+	
+	@Setup
+	public void setup() throws Exception {
+		EnVO.LOGGER.setLevel(Level.INFO);
+		searchPage = FileUtils.readFileToByteArray(new File(SEARCH_PAGE));
+		subtitlesPage = FileUtils.readFileToByteArray(new File(SUBTITLES_PAGE));
+		subtitlesDocument = parse(subtitlesPage);
+		URLFetchers.setPageFetcher(new AbstractURLFetcher() {
+			@Override
+			public URLResponse fetch(URL url, Map<String,String> headers) throws EnVOException {
+				URLResponse response = new URLResponse(url, HttpURLConnection.HTTP_OK, new ByteArrayInputStream(FILENAMES_PAGE.getBytes()));
+				response.setHeader(URLResponse.CONTENT_TYPE_HEADER, "text/html; charset=UTF-8");
+				return response;
+			}
+		});
+		source = new OpenSubtitlesDownloader();
+		source.init(new SubtitlesRequest("fre", "The.Big.Bang.Theory.S05E23.[LOL].avi"));
+	}
+	
+	@TearDown
+	public void tearDown() {
+		URLFetchers.setPageFetcher(null);
+	}
+	
+	private Document parse(byte[] page) throws Exception {
+		return Jsoup.parse(new ByteArrayInputStream(page), null, BASE_URI);
+	}
+	
+	@Benchmark
+	public Document parseSearchPage() throws Exception {
+		return parse(searchPage);
+	}
+	
+	@Benchmark
+	public Document parseSubtitlesPage() throws Exception {
+		return parse(subtitlesPage);
+	}
+	
+	/**
+	 * Parsing de la page de recherche et récupération des URLs des résultats
+	 */
+	@Benchmark
+	public List<URL> resultsURLs() throws Exception {
+		return source.getResultsURLs(parse(searchPage));
+	}
+	
+	/**
+	 * Création du résultat à partir de la page de sous-titres déjà parsée
+	 */
+	@Benchmark
+	public SubtitlesResult createResult() throws Exception {
+		return source.createResult(subtitlesDocument);
+	}
+	
+	/**
+	 * Parsing de la page de sous-titres et création du résultat
+	 */
+	@Benchmark
+	public SubtitlesResult parseAndCreateResult() throws Exception {
+		return source.createResult(parse(subtitlesPage));
+	}
+}
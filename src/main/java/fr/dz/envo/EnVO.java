@@ -8,9 +8,15 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
+import fr.dz.envo.api.AbstractSubtitlesSource;
+import fr.dz.envo.api.BatchSubtitlesManager;
+import fr.dz.envo.api.BatchTranscodeManager;
 import fr.dz.envo.api.SearchSubtitlesManager;
 import fr.dz.envo.api.SubtitlesRequest;
+import fr.dz.envo.api.WatchSubtitlesManager;
 import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.server.EnVOClient;
+import fr.dz.envo.server.EnVOServer;
 import fr.dz.envo.util.IOUtils;
 
 public class EnVO {
@@ -20,11 +26,22 @@ public class EnVO {
 	// Constantes
 	public static final String VERBOSE_OPTION = "-v";
 	public static final String TRANSCODE_OPTION = "-t";
+	public static final String BATCH_OPTION = "-b";
+	public static final String DAEMON_OPTION = "-d";
+	public static final String CLIENT_OPTION = "-c";
+	public static final String STOP_OPTION = "-s";
+	public static final String WATCH_OPTION = "-m";
 	public static final String DEFAULT_TARGET_ENCODING = "WINDOWS-1252";
 
 	/**
 	 * Utilitaire de téléchargement de sous-titres depuis EnVO
 	 * @param args Arguments : <options> <langue> <nom_de_fichier>
+	 *             ou en mode traitement par lot : <options> -b <langue> <dossier|liste_de_fichiers>
+	 *             ou en mode transcodage : <options> -t <fichier_sous_titre|dossier> [encoding]
+	 *             ou en mode démon : <options> -d
+	 *             ou via le démon : <options> -c <arguments de l'un des modes ci-dessus>
+	 *             ou pour arrêter le démon : -s
+	 *             ou en mode surveillance d'un dossier : <options> -m <langue> <dossier>
 	 */
 	public static void main(String[] args) {
 		
@@ -37,47 +54,118 @@ public class EnVO {
 		}
 		
 		try {
-			// Mode transcodage, on change l'encoding du fichier pour la freebox
-			if ( options.contains(TRANSCODE_OPTION) ) {
-				options.remove(TRANSCODE_OPTION);
-				
-				// Nombre d'arguments incorrects
-				if ( options.size() != 1 && options.size() != 2 ) {
-					System.err.println("Arguments : <options> <fichier_sous_titre> [encoding]");
-					return;
+			// Mode démon, le contexte Spring et les connexions restent prêts entre les requètes
+			if ( options.contains(DAEMON_OPTION) ) {
+				EnVOServer server = new EnVOServer();
+				server.start();
+				server.serve();
+			}
+			// Mode surveillance, les sous-titres sont recherchés pour les nouveaux fichiers vidéo du dossier
+			else if ( options.contains(WATCH_OPTION) ) {
+				options.remove(WATCH_OPTION);
+				if ( options.size() != 2 ) {
+					throw new EnVOException("Arguments : <options> -m <langue> <dossier>");
 				}
-				
-				// Changement d'encoding, si nécessaire
-				String filename = options.get(0);
-				File file = new File(filename);
-				String targetEncoding = options.size() < 2 ? DEFAULT_TARGET_ENCODING : options.get(1);
-				String actualEncoding = IOUtils.detectEncoding(file);
-				if ( ! StringUtils.isEmpty(actualEncoding) ) {
-					if ( ! StringUtils.equals(actualEncoding, targetEncoding) ) {
-						IOUtils.changeEncoding(file, actualEncoding, targetEncoding);
-					} else {
-						LOGGER.warn("Le fichier "+filename+" est déjà dans le bon encoding");
-					}
+				WatchSubtitlesManager manager = new WatchSubtitlesManager(options.get(0), new File(options.get(1)));
+				manager.start();
+				manager.watch();
+			}
+			// Arrêt du démon
+			else if ( options.contains(STOP_OPTION) ) {
+				new EnVOClient().stop();
+			}
+			// Requète envoyée au démon, exécutée ici s'il n'est pas démarré
+			else if ( options.contains(CLIENT_OPTION) ) {
+				options.remove(CLIENT_OPTION);
+				EnVOClient client = new EnVOClient();
+				if ( client.isAvailable() ) {
+					System.out.println(client.send(options));
 				} else {
-					throw new EnVOException("Impossible de détecter l'encoding du fichier "+filename);
+					LOGGER.debug("Démon non démarré, exécution locale de la requète");
+					execute(options);
 				}
 			}
-			// Mode par défaut, récupération de sous-titres
 			else {
+				execute(options);
+			}
+		} catch (EnVOException e) {
+			System.err.println(e.getMessage());
+		}
+	}
+	
+	/**
+	 * Exécute une requète (recherche, traitement par lot ou transcodage) à partir de ses options
+	 * @param options Les options, sans l'option verbose
+	 * @return Le bilan de la requète
+	 * @throws EnVOException Si la requète est en erreur ou si ses arguments sont incorrects
+	 */
+	public static String execute(List<String> options) throws EnVOException {
+		options = new ArrayList<String>(options);
 		
-				// Nombre d'arguments incorrects
-				if ( options.size() != 2 ) {
-					System.err.println("Arguments : <options> <langue> <nom_de_fichier>");
-					return;
+		// Mode transcodage, on change l'encoding du fichier pour la freebox
+		if ( options.contains(TRANSCODE_OPTION) ) {
+			options.remove(TRANSCODE_OPTION);
+			
+			// Nombre d'arguments incorrects
+			if ( options.size() != 1 && options.size() != 2 ) {
+				throw new EnVOException("Arguments : <options> <fichier_sous_titre|dossier> [encoding]");
+			}
+			
+			// Changement d'encoding, si nécessaire
+			String filename = options.get(0);
+			File file = new File(filename);
+			String targetEncoding = options.size() < 2 ? DEFAULT_TARGET_ENCODING : options.get(1);
+			
+			// Dossier : conversion de tous les fichiers de sous-titres de l'arborescence
+			if ( file.isDirectory() ) {
+				BatchTranscodeManager manager = new BatchTranscodeManager(file, targetEncoding);
+				manager.doTranscode();
+				return "Fichiers : "+manager.getFiles()+", convertis : "+manager.getTranscoded()
+						+", déjà dans le bon encoding : "+manager.getSkipped()+", encoding inconnu : "+manager.getUndetected();
+			}
+			String actualEncoding = IOUtils.detectEncoding(file);
+			if ( ! StringUtils.isEmpty(actualEncoding) ) {
+				if ( ! StringUtils.equalsIgnoreCase(actualEncoding, targetEncoding) ) {
+					IOUtils.changeEncoding(file, actualEncoding, targetEncoding);
+					return "Fichier converti de "+actualEncoding+" en "+targetEncoding;
+				} else {
+					LOGGER.warn("Le fichier "+filename+" est déjà dans le bon encoding");
+					return "Fichier déjà en "+targetEncoding;
 				}
+			} else {
+				throw new EnVOException("Impossible de détecter l'encoding du fichier "+filename);
+			}
+		}
+		// Mode traitement par lot, récupération de sous-titres pour tous les fichiers vidéo d'un dossier ou d'une liste
+		else if ( options.contains(BATCH_OPTION) ) {
+			options.remove(BATCH_OPTION);
 			
-				// Création de la requète et utilisation d'un thread par source pour optimiser le tout
-				SubtitlesRequest request = new SubtitlesRequest(options.get(0), options.get(1));
-				SearchSubtitlesManager manager = new SearchSubtitlesManager(request);
-				manager.doTasks();
+			// Nombre d'arguments incorrects
+			if ( options.size() != 2 ) {
+				throw new EnVOException("Arguments : <options> -b <langue> <dossier|liste_de_fichiers>");
 			}
-		} catch (EnVOException e) {
-			System.err.println(e.getMessage());
+			
+			// Toutes les requètes passent par le même pool de threads et le même contexte Spring
+			List<String> files = BatchSubtitlesManager.findVideoFiles(new File(options.get(1)));
+			BatchSubtitlesManager manager = new BatchSubtitlesManager(options.get(0), files);
+			manager.doRequests();
+			return "Fichiers : "+files.size()+", sous-titres téléchargés : "+manager.getDownloaded()
+					+", non trouvés : "+manager.getNotFound()+", déjà présents : "+manager.getSkipped()+", erreurs : "+manager.getErrors();
+		}
+		// Mode par défaut, récupération de sous-titres
+		else {
+	
+			// Nombre d'arguments incorrects
+			if ( options.size() != 2 ) {
+				throw new EnVOException("Arguments : <options> <langue> <nom_de_fichier>");
+			}
+		
+			// Création de la requète et utilisation d'un thread par source pour optimiser le tout
+			SubtitlesRequest request = new SubtitlesRequest(options.get(0), options.get(1));
+			SearchSubtitlesManager manager = new SearchSubtitlesManager(request);
+			manager.doTasks();
+			return manager.isDownloaded() ? "Sous-titres téléchargés : "+AbstractSubtitlesSource.getSubtitlesFile(request)
+					: "Aucun sous-titre trouvé";
 		}
 	}
 
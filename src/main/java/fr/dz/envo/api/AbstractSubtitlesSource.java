@@ -1,23 +1,38 @@
 package fr.dz.envo.api;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
+import org.apache.commons.io.input.CloseShieldInputStream;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.springframework.stereotype.Service;
 
 import fr.dz.envo.EnVO;
 import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.util.Configuration;
 import fr.dz.envo.util.IOUtils;
+import fr.dz.envo.util.http.URLFetchers;
+import fr.dz.envo.util.http.URLResponse;
+import fr.dz.envo.util.thread.GenericThreadManager.DaemonThreadFactory;
+import fr.dz.envo.util.thread.SingleFlight;
 
 
 public abstract class AbstractSubtitlesSource implements SubtitlesSource {
@@ -25,6 +40,14 @@ public abstract class AbstractSubtitlesSource implements SubtitlesSource {
 	// Constantes
 	protected static final String SRT_EXTENSION = "srt";
 	protected static final String NFO_EXTENSION = "nfo";
+	protected static final String PAGES_THREADS_KEY = "pages.threads";
+	protected static final int DEFAULT_PAGES_THREADS = 4;
+	
+	// Les pages en cours de récupération, partagées par les requètes qui les demandent en même temps
+	private static final SingleFlight<String,Document> PAGES = new SingleFlight<String,Document>();
+	
+	// Le pool de threads partagé pour la récupération des pages résultat (threads démons pour ne pas bloquer l'arrêt de la JVM)
+	private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new DaemonThreadFactory("envo-page-"));
 
 	// La requète
 	private SubtitlesRequest request;
@@ -145,11 +168,62 @@ public abstract class AbstractSubtitlesSource implements SubtitlesSource {
 		List<URL> results = getResultsURLs(queryResultDocument);
 		
 		// Pour chaque page résultat, création d'un objet résultat
-		// TODO Rendre cette action multithread
-		for ( URL resultURL : results ) {
-			subtitlesResults.add(createResult(getJsoupDocument(resultURL)));
+		// Les pages sont récupérées en parallèle sur le pool partagé, dans la limite de pages en cours configurée pour la source
+		int nbThreads = Math.max(1, getSourceConfiguration(PAGES_THREADS_KEY, DEFAULT_PAGES_THREADS));
+		CompletionService<SubtitlesResult> completionService = new ExecutorCompletionService<SubtitlesResult>(EXECUTOR);
+		Map<Future<SubtitlesResult>,Integer> futures = new HashMap<Future<SubtitlesResult>,Integer>();
+		SubtitlesResult[] pageResults = new SubtitlesResult[results.size()];
+		EnVOException[] pageExceptions = new EnVOException[results.size()];
+		int submitted = 0;
+		try {
+			while ( submitted < results.size() || ! futures.isEmpty() ) {
+				
+				// Une nouvelle page est soumise dès qu'une place se libère
+				while ( submitted < results.size() && futures.size() < nbThreads ) {
+					final URL resultURL = results.get(submitted);
+					futures.put(completionService.submit(new Callable<SubtitlesResult>() {
+						@Override
+						public SubtitlesResult call() throws EnVOException {
+							return createResult(getJsoupDocument(resultURL));
+						}
+					}), submitted++);
+				}
+				Future<SubtitlesResult> future = completionService.take();
+				int index = futures.remove(future);
+				try {
+					pageResults[index] = future.get();
+				} catch (ExecutionException e) {
+					pageExceptions[index] = new EnVOException("Erreur pendant la récupération de la page résultat : "+results.get(index), e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EnVOException("Interruption pendant la récupération des pages résultat", e);
+		} finally {
+			for ( Future<SubtitlesResult> future : futures.keySet() ) {
+				future.cancel(true);
+			}
+		}
+		
+		// Récupération des résultats dans l'ordre des pages, une page en erreur n'invalide pas les autres
+		List<EnVOException> exceptions = new ArrayList<EnVOException>();
+		for ( int i = 0; i < results.size(); i++ ) {
+			if ( pageExceptions[i] == null ) {
+				subtitlesResults.add(pageResults[i]);
+			} else {
+				EnVO.LOGGER.warn(pageExceptions[i].getMessage());
+				exceptions.add(pageExceptions[i]);
+			}
+		}
+		
+		// Erreur uniquement si aucune page n'a pu être récupérée
+		if ( subtitlesResults.isEmpty() && ! exceptions.isEmpty() ) {
+			throw new EnVOException(exceptions);
 		}
 		
+		// Scoring sur l'ensemble des résultats
+		new SubtitlesResultsScorer().doScoring(request, subtitlesResults);
+		
 		return subtitlesResults;
 	}
 
@@ -171,6 +245,17 @@ public abstract class AbstractSubtitlesSource implements SubtitlesSource {
 		}
 	}
 	
+	/**
+	 * Retourne la valeur de configuration spécifique à la source (clé préfixée par l'id de la source)
+	 * ou à défaut la valeur commune à toutes les sources
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 */
+	protected int getSourceConfiguration(String key, int defaultValue) {
+		return Configuration.getInt(getSourceId()+"."+key, Configuration.getInt(key, defaultValue));
+	}
+	
 	/**
 	 * Retourne l'id Spring de la source à partir de l'annotation @Service
 	 * @return
@@ -199,7 +284,7 @@ public abstract class AbstractSubtitlesSource implements SubtitlesSource {
 		// Choix du meilleur scoring (le plus petit)
 		SubtitlesResult bestResult = null;
 		for ( SubtitlesResult result : results ) {
-			if ( bestResult == null || result.getScoring() < bestResult.getScoring() ) {
+			if ( bestResult == null || result.getScoringValue() < bestResult.getScoringValue() ) {
 				bestResult = result;
 			}
 		}
@@ -221,50 +306,32 @@ public abstract class AbstractSubtitlesSource implements SubtitlesSource {
 	 * @throws EnVOException 
 	 */
 	public static void download(SubtitlesRequest request, SubtitlesResult bestResult) throws EnVOException {
-		String fileName = request.getFolder() + File.separator + request.getFilename().substring(
+		download(bestResult.getDownloadURL(), getSubtitlesFile(request).getPath());
+	}
+	
+	/**
+	 * Retourne le fichier de sous-titres correspondant à la requète (même nom que la vidéo, extension SRT)
+	 * @param request
+	 * @return
+	 */
+	public static File getSubtitlesFile(SubtitlesRequest request) {
+		return new File(request.getFolder() + File.separator + request.getFilename().substring(
 				request.getFilename().lastIndexOf(File.separator) + 1,
-				request.getFilename().lastIndexOf(".")) + "." + SRT_EXTENSION;
-		download(bestResult.getDownloadURL(), fileName);
+				request.getFilename().lastIndexOf(".")) + "." + SRT_EXTENSION);
 	}
 	
 	/**
 	 * Télécharge le SRT présent dans un ZIP passé en paramètre dans un fichier précis
+	 * Le ZIP est lu directement depuis la réponse HTTP, sans fichier temporaire
 	 * @param url
 	 * @param destinationFile
 	 * @throws EnVOException 
 	 */
 	public static void download(URL url, String destinationFile) throws EnVOException {
+		URLResponse response = URLFetchers.getHttpFetcher().fetch(url);
 		try {
-			// Enregistrement du zip dans un fichier temporaire
-			File file = File.createTempFile("opensubtitle", ".zip");
-			IOUtils.saveURL(url, file);
-			
-			// Extraction du fichier SRT
-			ZipFile zip = new ZipFile(file);
-			ZipEntry toExtract = null;
-			ZipEntry noNFO = null;
-			Enumeration<? extends ZipEntry> entries = zip.entries();
-			while ( entries.hasMoreElements() ) {
-				ZipEntry entry = entries.nextElement();
-				if ( entry.getName().endsWith(SRT_EXTENSION) ) {
-					toExtract = entry;
-					break;
-				}
-				if ( noNFO == null && ! entry.getName().endsWith(NFO_EXTENSION) ) {
-					noNFO = entry;
-				}
-			}
-
-			// Si on n'a pas trouvé de fichier avec la bonne extension
-			if ( toExtract == null ) {
-				// On prend le premier qui ne se termine pas en NFO
-				toExtract = noNFO;
-			}
-
 			// Extraction du fichier et conversion dans un encoding que la Freebox accepte
-			if ( toExtract != null ) {
-				IOUtils.encodeInputStream(zip.getInputStream(toExtract), new File(destinationFile), EnVO.DEFAULT_TARGET_ENCODING);
-				
+			if ( extract(response.getInputStream(), new File(destinationFile)) ) {
 				EnVO.LOGGER.info("#####################################################################");
 				EnVO.LOGGER.info("# Sous-titre sauvegardé : "+url);
 				EnVO.LOGGER.info("# Fichier : "+destinationFile);
@@ -274,19 +341,94 @@ public abstract class AbstractSubtitlesSource implements SubtitlesSource {
 				EnVO.LOGGER.info("# Aucun fichier de sous-titre trouvé.");
 				EnVO.LOGGER.info("#####################################################################");
 			}
-		} catch (IOException e) {
+		} catch (EnVOException e) {
 			throw new EnVOException("Erreur pendant la sauvegarde de l'URL '"+url+"'", e);
+		} finally {
+			try {
+				response.close();
+			} catch (IOException e) {
+				EnVO.LOGGER.warn("Erreur pendant la fermeture de la connexion : "+url);
+			}
 		}
 	}
 	
 	/**
-	 * Retourne un document Jsoup à partir de HTML
-	 * @param content
+	 * Extrait le SRT d'un ZIP lu en flux dans un fichier, en le convertissant dans l'encoding cible
+	 * Les entrées sont lues dans l'ordre de l'archive : le premier SRT est extrait et termine la lecture,
+	 * à défaut c'est le premier fichier qui ne se termine pas en NFO (écrasé si un SRT apparaît ensuite)
+	 * @param zipStream
+	 * @param destinationFile
+	 * @return true si un fichier a été extrait
+	 * @throws EnVOException
+	 */
+	public static boolean extract(InputStream zipStream, File destinationFile) throws EnVOException {
+		ZipInputStream zip = new ZipInputStream(new BufferedInputStream(zipStream));
+		try {
+			boolean extracted = false;
+			ZipEntry entry;
+			while ( (entry = zip.getNextEntry()) != null ) {
+				if ( entry.isDirectory() ) {
+					continue;
+				}
+				boolean srt = entry.getName().endsWith(SRT_EXTENSION);
+				if ( srt || ( ! extracted && ! entry.getName().endsWith(NFO_EXTENSION) ) ) {
+					IOUtils.encodeInputStream(new CloseShieldInputStream(zip), destinationFile, EnVO.DEFAULT_TARGET_ENCODING);
+					extracted = true;
+					if ( srt ) {
+						break;
+					}
+				}
+			}
+			return extracted;
+		} catch (IOException e) {
+			throw new EnVOException("Erreur pendant l'extraction du ZIP dans le fichier : "+destinationFile, e);
+		} finally {
+			try {
+				zip.close();
+			} catch (IOException e) {
+				EnVO.LOGGER.warn("Erreur pendant la fermeture du ZIP");
+			}
+		}
+	}
+	
+	/**
+	 * Retourne un document Jsoup à partir du contenu d'une URL
+	 * Les demandes simultanées d'une même URL (épisodes d'une même série traités par lot...) partagent
+	 * une seule récupération et une seule analyse de la page : le document retourné ne doit pas être modifié
+	 * @param url
 	 * @return
 	 * @throws EnVOException 
 	 */
-	public static Document getJsoupDocument(URL url) throws EnVOException {
-		return Jsoup.parse(IOUtils.getURLContent(url));
+	public static Document getJsoupDocument(final URL url) throws EnVOException {
+		return PAGES.execute(url.toExternalForm(), new Callable<Document>() {
+			@Override
+			public Document call() throws EnVOException {
+				return parseDocument(url);
+			}
+		});
+	}
+	
+	/**
+	 * Récupère et analyse le contenu d'une URL
+	 * Le flux de la réponse est passé directement au parser avec l'encoding déclaré par la réponse
+	 * (à défaut, Jsoup utilise la balise meta de la page ou UTF-8)
+	 * @param url
+	 * @return
+	 * @throws EnVOException
+	 */
+	private static Document parseDocument(URL url) throws EnVOException {
+		URLResponse response = URLFetchers.getPageFetcher().fetch(url);
+		try {
+			return Jsoup.parse(response.getInputStream(), response.getCharset(), url.toExternalForm());
+		} catch (IOException e) {
+			throw new EnVOException("Erreur pendant l'exécution de la requète : "+url, e);
+		} finally {
+			try {
+				response.close();
+			} catch (IOException e) {
+				EnVO.LOGGER.warn("Erreur pendant la fermeture de la connexion : "+url);
+			}
+		}
 	}
 	
 	/*
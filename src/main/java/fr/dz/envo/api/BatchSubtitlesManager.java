@@ -0,0 +1,251 @@
+package fr.dz.envo.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+
+import fr.dz.envo.EnVO;
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.util.Configuration;
+import fr.dz.envo.util.thread.GenericThreadManager.DaemonThreadFactory;
+
+
+/**
+ * Classe gérant la recherche de sous-titres pour un ensemble de fichiers vidéo
+ * Les requètes sont traitées par un même pool de threads et partagent le contexte Spring
+ * Une recherche restée sans résultat sur une source n'y est relancée qu'à sa date de nouvelle vérification
+ * Les épisodes d'une même saison sont recherchés par une seule recherche par source sur toute la saison
+ */
+public class BatchSubtitlesManager {
+	
+	// Constantes
+	private static final String THREADS_KEY = "batch.threads";
+	private static final int DEFAULT_THREADS = 4;
+	private static final String EXTENSIONS_KEY = "batch.extensions";
+	private static final String DEFAULT_EXTENSIONS = "avi,mkv,mp4,m4v,mpg,mpeg,wmv,mov,divx,ogm,ts";
+	private static final String PREFETCH_MIN_EPISODES_KEY = "batch.prefetch.minEpisodes";
+	private static final int DEFAULT_PREFETCH_MIN_EPISODES = 3;
+	
+	// Attributs
+	private String lang;
+	private List<String> files;
+	private int nbThreads = Configuration.getInt(THREADS_KEY, DEFAULT_THREADS);
+	private int prefetchMinEpisodes = Configuration.getInt(PREFETCH_MIN_EPISODES_KEY, DEFAULT_PREFETCH_MIN_EPISODES);
+	private Map<String,SeasonPrefetch> prefetches = new HashMap<String,SeasonPrefetch>();
+	
+	// Compteurs
+	private int downloaded;
+	private int notFound;
+	private int skipped;
+	private int errors;
+	
+	/**
+	 * Constructeur
+	 * @param lang La langue
+	 * @param files Les fichiers vidéo pour lesquels il faut chercher des sous-titres
+	 */
+	public BatchSubtitlesManager(String lang, List<String> files) {
+		this.lang = lang;
+		this.files = files;
+	}
+	
+	/**
+	 * Recherche et téléchargement des sous-titres de tous les fichiers
+	 * Une erreur sur un fichier n'interrompt pas le traitement des autres
+	 * @throws EnVOException
+	 */
+	public void doRequests() throws EnVOException {
+		long start = System.currentTimeMillis();
+		prefetches = SeasonPrefetch.plan(lang, files, prefetchMinEpisodes);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, nbThreads), new DaemonThreadFactory("envo-batch-"));
+		try {
+			// Soumission d'une tâche par fichier
+			List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(files.size());
+			for ( final String file : files ) {
+				futures.add(executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws EnVOException {
+						return doRequest(file);
+					}
+				}));
+			}
+			
+			// Attente des résultats
+			for ( int i = 0; i < futures.size(); i++ ) {
+				try {
+					Boolean result = futures.get(i).get();
+					if ( result == null ) {
+						skipped++;
+					} else if ( result ) {
+						downloaded++;
+					} else {
+						notFound++;
+					}
+				} catch (ExecutionException e) {
+					errors++;
+					EnVO.LOGGER.error("Erreur pendant la recherche de sous-titres pour "+files.get(i));
+					EnVO.LOGGER.debug(e.getCause().getMessage(), e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EnVOException("Interruption pendant le traitement par lot", e);
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		// Bilan
+		EnVO.LOGGER.info("#####################################################################");
+		EnVO.LOGGER.info("# Traitement par lot terminé en "+(System.currentTimeMillis() - start)+" ms");
+		EnVO.LOGGER.info("# Fichiers : "+files.size()+", sous-titres téléchargés : "+downloaded
+				+", non trouvés : "+notFound+", déjà présents : "+skipped+", erreurs : "+errors);
+		EnVO.LOGGER.info("#####################################################################");
+	}
+	
+	/**
+	 * Recherche et téléchargement des sous-titres d'un fichier
+	 * @param file
+	 * @return true si des sous-titres ont été téléchargés, false sinon, null si le fichier en a déjà
+	 * @throws EnVOException
+	 */
+	protected Boolean doRequest(String file) throws EnVOException {
+		SubtitlesRequest request = new SubtitlesRequest(lang, file);
+		if ( AbstractSubtitlesSource.getSubtitlesFile(request).exists() ) {
+			EnVO.LOGGER.debug("Sous-titres déjà présents pour "+file);
+			return null;
+		}
+		SearchSubtitlesManager manager = new SearchSubtitlesManager(request, true, prefetches.get(SeasonPrefetch.getKey(request)));
+		manager.doTasks();
+		return manager.isDownloaded();
+	}
+	
+	/**
+	 * Retourne la liste des fichiers vidéo à traiter à partir d'un dossier (parcouru récursivement)
+	 * ou d'un fichier texte listant un fichier vidéo par ligne
+	 * @param file
+	 * @return
+	 * @throws EnVOException
+	 */
+	public static List<String> findVideoFiles(File file) throws EnVOException {
+		List<String> result = new ArrayList<String>();
+		if ( file.isDirectory() ) {
+			Set<String> extensions = getVideoExtensions();
+			for ( File videoFile : FileUtils.listFiles(file, null, true) ) {
+				if ( isVideoFile(videoFile.getName(), extensions) ) {
+					result.add(videoFile.getPath());
+				}
+			}
+			Collections.sort(result);
+		} else if ( file.isFile() ) {
+			try {
+				for ( String line : FileUtils.readLines(file) ) {
+					if ( ! line.trim().isEmpty() ) {
+						result.add(line.trim());
+					}
+				}
+			} catch (IOException e) {
+				throw new EnVOException("Erreur pendant la lecture de la liste de fichiers "+file, e);
+			}
+		} else {
+			throw new EnVOException("Dossier ou liste de fichiers introuvable : "+file);
+		}
+		return result;
+	}
+	
+	/**
+	 * Retourne true si le nom de fichier a l'une des extensions de fichiers vidéo
+	 * @param filename
+	 * @param extensions Les extensions, en minuscules (voir getVideoExtensions)
+	 * @return
+	 */
+	public static boolean isVideoFile(String filename, Set<String> extensions) {
+		return extensions.contains(FilenameUtils.getExtension(filename).toLowerCase());
+	}
+	
+	/**
+	 * Retourne les extensions de fichiers vidéo configurées
+	 * @return
+	 */
+	public static Set<String> getVideoExtensions() {
+		Set<String> extensions = new HashSet<String>();
+		for ( String extension : Arrays.asList(Configuration.getString(EXTENSIONS_KEY, DEFAULT_EXTENSIONS).split(",")) ) {
+			extensions.add(extension.trim().toLowerCase());
+		}
+		return extensions;
+	}
+	
+	/*
+	 * GETTERS & SETTERS
+	 */
+	
+	/**
+	 * @return the number of requests processed in parallel
+	 */
+	public int getNbThreads() {
+		return nbThreads;
+	}
+	
+	/**
+	 * @param nbThreads the number of requests processed in parallel
+	 */
+	public void setNbThreads(int nbThreads) {
+		this.nbThreads = nbThreads;
+	}
+	
+	/**
+	 * @return the minimum number of episodes of a season to search the whole season at once (0 to disable)
+	 */
+	public int getPrefetchMinEpisodes() {
+		return prefetchMinEpisodes;
+	}
+	
+	/**
+	 * @param prefetchMinEpisodes the minimum number of episodes of a season to search the whole season at once (0 to disable)
+	 */
+	public void setPrefetchMinEpisodes(int prefetchMinEpisodes) {
+		this.prefetchMinEpisodes = prefetchMinEpisodes;
+	}
+	
+	/**
+	 * @return the number of files for which subtitles have been downloaded
+	 */
+	public int getDownloaded() {
+		return downloaded;
+	}
+	
+	/**
+	 * @return the number of files without subtitles found
+	 */
+	public int getNotFound() {
+		return notFound;
+	}
+	
+	/**
+	 * @return the number of files skipped because subtitles already exist
+	 */
+	public int getSkipped() {
+		return skipped;
+	}
+	
+	/**
+	 * @return the number of files in error
+	 */
+	public int getErrors() {
+		return errors;
+	}
+}
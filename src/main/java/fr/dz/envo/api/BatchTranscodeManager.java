@@ -0,0 +1,264 @@
+package fr.dz.envo.api;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang.StringUtils;
+
+import fr.dz.envo.EnVO;
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.util.Configuration;
+import fr.dz.envo.util.IOUtils;
+
+/**
+ * Classe gérant le changement d'encoding de tous les fichiers de sous-titres d'une arborescence
+ * Les dossiers sont parcourus en parallèle par un pool fork/join, les fichiers déjà dans l'encoding cible
+ * sont ignorés
+ */
+public class BatchTranscodeManager {
+	
+	// Constantes
+	private static final String THREADS_KEY = "transcode.threads";
+	private static final String EXTENSIONS_KEY = "transcode.extensions";
+	private static final String DEFAULT_EXTENSIONS = "srt";
+	private static final int FILES_THRESHOLD = 16;
+	
+	// Attributs
+	private File directory;
+	private String targetEncoding;
+	private Set<String> extensions;
+	private int nbThreads = Configuration.getInt(THREADS_KEY, Runtime.getRuntime().availableProcessors());
+	
+	// Compteurs
+	private AtomicInteger files = new AtomicInteger();
+	private AtomicInteger transcoded = new AtomicInteger();
+	private AtomicInteger skipped = new AtomicInteger();
+	private AtomicInteger undetected = new AtomicInteger();
+	private AtomicLong transcodedBytes = new AtomicLong();
+	private List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+	private long duration;
+	
+	/**
+	 * Constructeur
+	 * @param directory Le dossier parcouru récursivement
+	 * @param targetEncoding L'encoding cible
+	 */
+	public BatchTranscodeManager(File directory, String targetEncoding) {
+		this.directory = directory;
+		this.targetEncoding = targetEncoding;
+		this.extensions = new HashSet<String>();
+		for ( String extension : Arrays.asList(Configuration.getString(EXTENSIONS_KEY, DEFAULT_EXTENSIONS).split(",")) ) {
+			extensions.add(extension.trim().toLowerCase());
+		}
+	}
+	
+	/**
+	 * Change l'encoding de tous les fichiers de sous-titres du dossier
+	 * Une erreur sur un fichier n'interrompt pas le traitement des autres
+	 * @throws EnVOException
+	 */
+	public void doTranscode() throws EnVOException {
+		if ( ! directory.isDirectory() ) {
+			throw new EnVOException("Dossier introuvable : "+directory);
+		}
+		long start = System.currentTimeMillis();
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, nbThreads));
+		try {
+			pool.invoke(new DirectoryTask(directory));
+		} finally {
+			pool.shutdown();
+		}
+		duration = System.currentTimeMillis() - start;
+		
+		// Bilan
+		EnVO.LOGGER.info("#####################################################################");
+		EnVO.LOGGER.info("# Transcodage terminé en "+duration+" ms");
+		EnVO.LOGGER.info("# Fichiers : "+files+", convertis : "+transcoded+" ("+transcodedBytes+" octets)"
+				+", déjà en "+targetEncoding+" : "+skipped+", encoding inconnu : "+undetected+", erreurs : "+failures.size());
+		synchronized (failures) {
+			for ( String failure : failures ) {
+				EnVO.LOGGER.info("# Erreur : "+failure);
+			}
+		}
+		EnVO.LOGGER.info("#####################################################################");
+	}
+	
+	/**
+	 * Change l'encoding d'un fichier si nécessaire
+	 * @param file
+	 */
+	protected void transcode(File file) {
+		files.incrementAndGet();
+		try {
+			String actualEncoding = IOUtils.detectEncoding(file);
+			if ( StringUtils.isEmpty(actualEncoding) ) {
+				undetected.incrementAndGet();
+				EnVO.LOGGER.debug("Impossible de détecter l'encoding du fichier "+file);
+			} else if ( actualEncoding.equalsIgnoreCase(targetEncoding) ) {
+				skipped.incrementAndGet();
+			} else {
+				long length = file.length();
+				IOUtils.changeEncoding(file, actualEncoding, targetEncoding);
+				transcoded.incrementAndGet();
+				transcodedBytes.addAndGet(length);
+				EnVO.LOGGER.debug("Fichier "+file+" converti de "+actualEncoding+" en "+targetEncoding);
+			}
+		} catch (EnVOException e) {
+			failures.add(file.getPath());
+			EnVO.LOGGER.error(e.getMessage());
+			EnVO.LOGGER.debug(e.getMessage(), e);
+		} catch (RuntimeException e) {
+			failures.add(file.getPath());
+			EnVO.LOGGER.error("Erreur pendant la conversion du fichier "+file, e);
+		}
+	}
+	
+	/**
+	 * Tâche de parcours d'un dossier : un sous-dossier donne une sous-tâche, les fichiers sont répartis
+	 * entre plusieurs tâches
+	 */
+	private class DirectoryTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private File directory;
+		
+		public DirectoryTask(File directory) {
+			this.directory = directory;
+		}
+		
+		@Override
+		protected void compute() {
+			File[] children = directory.listFiles();
+			if ( children == null ) {
+				failures.add(directory.getPath());
+				EnVO.LOGGER.error("Impossible de lire le dossier "+directory);
+				return;
+			}
+			List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+			List<File> subtitles = new ArrayList<File>();
+			for ( File child : children ) {
+				// Les liens ne sont pas suivis : un lien vers un dossier parent ferait boucler le parcours
+				if ( Files.isSymbolicLink(child.toPath()) ) {
+					EnVO.LOGGER.debug("Lien ignoré : "+child);
+				} else if ( child.isDirectory() ) {
+					tasks.add(new DirectoryTask(child));
+				} else if ( extensions.contains(FilenameUtils.getExtension(child.getName()).toLowerCase()) ) {
+					subtitles.add(child);
+				}
+			}
+			if ( ! subtitles.isEmpty() ) {
+				tasks.add(new FilesTask(subtitles, 0, subtitles.size()));
+			}
+			invokeAll(tasks);
+		}
+	}
+	
+	/**
+	 * Tâche de conversion d'une partie des fichiers d'un dossier, découpée en deux tant qu'elle est trop grosse
+	 */
+	private class FilesTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private List<File> files;
+		private int from;
+		private int to;
+		
+		public FilesTask(List<File> files, int from, int to) {
+			this.files = files;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if ( to - from <= FILES_THRESHOLD ) {
+				for ( int i = from; i < to; i++ ) {
+					transcode(files.get(i));
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new FilesTask(files, from, middle), new FilesTask(files, middle, to));
+			}
+		}
+	}
+	
+	/*
+	 * GETTERS & SETTERS
+	 */
+	
+	/**
+	 * @return the parallelism of the fork/join pool
+	 */
+	public int getNbThreads() {
+		return nbThreads;
+	}
+	
+	/**
+	 * @param nbThreads the parallelism of the fork/join pool
+	 */
+	public void setNbThreads(int nbThreads) {
+		this.nbThreads = nbThreads;
+	}
+	
+	/**
+	 * @return the number of subtitles files found
+	 */
+	public int getFiles() {
+		return files.get();
+	}
+	
+	/**
+	 * @return the number of files converted
+	 */
+	public int getTranscoded() {
+		return transcoded.get();
+	}
+	
+	/**
+	 * @return the number of bytes of the files converted
+	 */
+	public long getTranscodedBytes() {
+		return transcodedBytes.get();
+	}
+	
+	/**
+	 * @return the number of files skipped because already in the target encoding
+	 */
+	public int getSkipped() {
+		return skipped.get();
+	}
+	
+	/**
+	 * @return the number of files skipped because their encoding could not be detected
+	 */
+	public int getUndetected() {
+		return undetected.get();
+	}
+	
+	/**
+	 * @return the files in error
+	 */
+	public List<String> getFailures() {
+		return failures;
+	}
+	
+	/**
+	 * @return the duration of the last run, in ms
+	 */
+	public long getDuration() {
+		return duration;
+	}
+}
@@ -0,0 +1,261 @@
+package fr.dz.envo.api;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import fr.dz.envo.EnVO;
+import fr.dz.envo.util.Configuration;
+import fr.dz.envo.util.IOUtils;
+
+
+/**
+ * Mémorisation sur disque des recherches sans résultat, par source et par (langue, requète, saison, épisode)
+ * Une recherche sans résultat n'est relancée qu'après un délai croissant avec le nombre d'échecs successifs
+ * (par défaut 1h, 6h, 24h puis une semaine), le temps que des sous-titres soient publiés pour un épisode récent.
+ * Un résultat trouvé efface l'entrée.
+ */
+public class NegativeResultCache {
+	
+	// Constantes de configuration
+	public static final String ENABLED_KEY = "misses.enabled";
+	private static final String FILE_KEY = "misses.file";
+	private static final String INTERVALS_KEY = "misses.intervals";
+	private static final String DEFAULT_INTERVALS = "3600,21600,86400,604800";
+	
+	// Constantes
+	private static final String KEY_SEPARATOR = "|";
+	private static final String VALUE_SEPARATOR = ",";
+	private static final String TEMP_EXTENSION = ".tmp";
+	
+	// Le cache partagé, construit à partir de la configuration
+	private static NegativeResultCache instance;
+	
+	// Attributs
+	private File file;
+	private long[] intervals;
+	private Properties misses = new Properties();
+	
+	/**
+	 * Constructeur à partir de la configuration
+	 */
+	public NegativeResultCache() {
+		this(Configuration.getFile(FILE_KEY, "misses.properties"),
+				parseIntervals(Configuration.getString(INTERVALS_KEY, DEFAULT_INTERVALS)));
+	}
+	
+	/**
+	 * Constructeur, charge les recherches sans résultat déjà enregistrées
+	 * @param file Le fichier d'enregistrement
+	 * @param intervals Les délais successifs avant de relancer une recherche sans résultat, en millisecondes
+	 * (le dernier est utilisé pour tous les échecs suivants)
+	 */
+	public NegativeResultCache(File file, long... intervals) {
+		this.file = file;
+		this.intervals = intervals;
+		if ( file.exists() ) {
+			InputStream in = null;
+			try {
+				in = new FileInputStream(file);
+				misses.load(in);
+			} catch (IOException e) {
+				EnVO.LOGGER.warn("Impossible de lire les recherches sans résultat "+file+" : "+e.getMessage());
+			} finally {
+				if ( in != null ) {
+					try {
+						in.close();
+					} catch (IOException e) {
+						// Rien à faire
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Retourne le cache partagé, null s'il est désactivé
+	 * @return
+	 */
+	public static synchronized NegativeResultCache getInstance() {
+		if ( instance == null && Configuration.getBoolean(ENABLED_KEY, true) ) {
+			instance = new NegativeResultCache();
+		}
+		return instance;
+	}
+	
+	/**
+	 * Remplace le cache partagé (null pour revenir à celui de la configuration)
+	 * @param cache
+	 */
+	public static synchronized void setInstance(NegativeResultCache cache) {
+		instance = cache;
+	}
+	
+	/**
+	 * Retourne true si la recherche doit être exécutée : jamais restée sans résultat, ou délai de nouvelle vérification écoulé
+	 * @param sourceId
+	 * @param request
+	 * @param now
+	 * @return
+	 */
+	public synchronized boolean isDue(String sourceId, SubtitlesRequest request, long now) {
+		long[] miss = getMiss(getKey(sourceId, request));
+		return miss == null || now >= getNextCheck(miss[0], miss[1]);
+	}
+	
+	/**
+	 * Retourne la date de la prochaine vérification d'une recherche sans résultat (0 si elle n'en est pas une)
+	 * @param sourceId
+	 * @param request
+	 * @return
+	 */
+	public synchronized long getNextCheck(String sourceId, SubtitlesRequest request) {
+		long[] miss = getMiss(getKey(sourceId, request));
+		return miss == null ? 0 : getNextCheck(miss[0], miss[1]);
+	}
+	
+	/**
+	 * Enregistre une recherche sans résultat
+	 * @param sourceId
+	 * @param request
+	 * @param now
+	 */
+	public synchronized void recordMiss(String sourceId, SubtitlesRequest request, long now) {
+		String key = getKey(sourceId, request);
+		long[] miss = getMiss(key);
+		long count = miss == null ? 1 : miss[0] + 1;
+		misses.setProperty(key, count + VALUE_SEPARATOR + now);
+		save();
+	}
+	
+	/**
+	 * Efface une recherche sans résultat, des sous-titres ayant été trouvés
+	 * @param sourceId
+	 * @param request
+	 */
+	public synchronized void recordHit(String sourceId, SubtitlesRequest request) {
+		if ( misses.remove(getKey(sourceId, request)) != null ) {
+			save();
+		}
+	}
+	
+	/**
+	 * Retourne le nombre de recherches sans résultat enregistrées
+	 * @return
+	 */
+	public synchronized int size() {
+		return misses.size();
+	}
+	
+	/**
+	 * Retourne la date de la prochaine vérification après un nombre d'échecs successifs
+	 * @param count
+	 * @param lastCheck
+	 * @return
+	 */
+	private long getNextCheck(long count, long lastCheck) {
+		if ( intervals.length == 0 ) {
+			return lastCheck;
+		}
+		return lastCheck + intervals[(int) Math.min(count, intervals.length) - 1];
+	}
+	
+	/**
+	 * Retourne le nombre d'échecs et la date du dernier, null si la recherche n'est pas enregistrée
+	 * @param key
+	 * @return
+	 */
+	private long[] getMiss(String key) {
+		String value = misses.getProperty(key);
+		if ( value != null ) {
+			String[] parts = value.split(VALUE_SEPARATOR);
+			try {
+				if ( parts.length == 2 ) {
+					return new long[] {Math.max(1, Long.parseLong(parts[0])), Long.parseLong(parts[1])};
+				}
+			} catch (NumberFormatException e) {
+				// Entrée invalide, ignorée
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Retourne la clé d'une recherche : source, langue, requète, saison et épisode
+	 * @param sourceId
+	 * @param request
+	 * @return
+	 */
+	private static String getKey(String sourceId, SubtitlesRequest request) {
+		return sourceId + KEY_SEPARATOR + request.getLang() + KEY_SEPARATOR + request.getQuery()
+				+ KEY_SEPARATOR + (request.getSeason() != null ? request.getSeason() : "")
+				+ KEY_SEPARATOR + (request.getEpisode() != null ? request.getEpisode() : "");
+	}
+	
+	/**
+	 * Enregistre les recherches sans résultat, via un fichier temporaire pour ne jamais laisser un fichier incomplet
+	 * Une erreur d'écriture n'interrompt pas la recherche
+	 */
+	private void save() {
+		File temp = new File(file.getPath() + TEMP_EXTENSION);
+		OutputStream out = null;
+		try {
+			if ( file.getAbsoluteFile().getParentFile() != null ) {
+				file.getAbsoluteFile().getParentFile().mkdirs();
+			}
+			out = new FileOutputStream(temp);
+			misses.store(out, null);
+			out.close();
+			out = null;
+			IOUtils.replaceFile(temp, file);
+		} catch (IOException e) {
+			EnVO.LOGGER.warn("Impossible d'enregistrer les recherches sans résultat "+file+" : "+e.getMessage());
+		} finally {
+			if ( out != null ) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// Rien à faire
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Convertit une liste de délais en secondes séparés par des virgules en millisecondes
+	 * @param value
+	 * @return
+	 */
+	private static long[] parseIntervals(String value) {
+		List<Long> result = new ArrayList<Long>();
+		for ( String interval : value.split(VALUE_SEPARATOR) ) {
+			try {
+				result.add(Long.parseLong(interval.trim()) * 1000);
+			} catch (NumberFormatException e) {
+				EnVO.LOGGER.warn("Délai invalide ignoré dans "+INTERVALS_KEY+" : "+interval);
+			}
+		}
+		long[] intervals = new long[result.size()];
+		for ( int i = 0; i < intervals.length; i++ ) {
+			intervals[i] = result.get(i);
+		}
+		return intervals;
+	}
+	
+	/*
+	 * GETTERS & SETTERS
+	 */
+	
+	/**
+	 * @return the file where the misses are saved
+	 */
+	public File getFile() {
+		return file;
+	}
+}
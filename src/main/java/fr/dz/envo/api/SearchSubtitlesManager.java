@@ -8,6 +8,7 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 
 import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.util.Configuration;
 import fr.dz.envo.util.thread.GenericTaskThread;
 import fr.dz.envo.util.thread.GenericThreadManager;
 
@@ -17,35 +18,114 @@ import fr.dz.envo.util.thread.GenericThreadManager;
  */
 public class SearchSubtitlesManager extends GenericThreadManager<SubtitlesResult> {
 	
+	// Constantes
+	private static final String SUFFICIENT_SCORING_KEY = "search.sufficientScoring";
+	private static final int DEFAULT_SUFFICIENT_SCORING = 1;
+	
+	// Le contexte Spring, initialisé une seule fois et partagé par toutes les requètes
+	private static ApplicationContext context;
+	
 	// Attributs
 	private SubtitlesRequest request;
 	private Map<String,SubtitlesSource> sources;
+	private int sufficientScoring = Configuration.getInt(SUFFICIENT_SCORING_KEY, DEFAULT_SUFFICIENT_SCORING);
+	private boolean downloaded;
 
 	/**
 	 * Constructeur
 	 * @param request
 	 */
 	public SearchSubtitlesManager(SubtitlesRequest request) {
+		this(request, false);
+	}
+	
+	/**
+	 * Constructeur
+	 * @param request
+	 * @param skipKnownMisses true pour ne pas relancer sur une source une recherche restée sans résultat
+	 * avant son délai de nouvelle vérification (voir NegativeResultCache)
+	 */
+	public SearchSubtitlesManager(SubtitlesRequest request, boolean skipKnownMisses) {
+		this(request, skipKnownMisses, null);
+	}
+	
+	/**
+	 * Constructeur
+	 * @param request
+	 * @param skipKnownMisses true pour ne pas relancer sur une source une recherche restée sans résultat
+	 * avant son délai de nouvelle vérification (voir NegativeResultCache)
+	 * @param prefetch La recherche sur toute la saison de l'épisode, partagée par les épisodes d'un traitement
+	 * par lot (null pour rechercher l'épisode seul)
+	 */
+	public SearchSubtitlesManager(SubtitlesRequest request, boolean skipKnownMisses, SeasonPrefetch prefetch) {
 		super();
 		this.request = request;
 		
-		// Initialisation du contexte Spring pour récupérer les downloaders
-		ApplicationContext context = new ClassPathXmlApplicationContext("applicationContext.xml");
-		this.sources = context.getBeansOfType(SubtitlesSource.class);
+		// Récupération des downloaders depuis le contexte Spring (nouvelles instances à chaque requète)
+		this.sources = getApplicationContext().getBeansOfType(SubtitlesSource.class);
 		
 		// Création d'un thread par source
 		List<GenericTaskThread<SubtitlesResult>> threads = new ArrayList<GenericTaskThread<SubtitlesResult>>(sources.size());
-		for ( SubtitlesSource source : sources.values() ) {
-			threads.add(new SearchSubtitlesTask(request, source));
+		for ( Map.Entry<String,SubtitlesSource> source : sources.entrySet() ) {
+			SearchSubtitlesTask task = new SearchSubtitlesTask(request, source.getValue(), source.getKey());
+			task.setSkipKnownMisses(skipKnownMisses);
+			task.setPrefetch(prefetch);
+			threads.add(task);
 		}
 		init(threads);
 	}
+	
+	/**
+	 * Retourne le contexte Spring, initialisé au premier appel
+	 * @return
+	 */
+	public static synchronized ApplicationContext getApplicationContext() {
+		if ( context == null ) {
+			context = new ClassPathXmlApplicationContext("applicationContext.xml");
+		}
+		return context;
+	}
 
+	/**
+	 * Un résultat dont le scoring est inférieur au seuil configuré est suffisamment bon
+	 * pour télécharger sans attendre les autres sources
+	 * @see fr.dz.envo.util.thread.GenericThreadManager#isSufficient(java.lang.Object)
+	 */
+	@Override
+	protected boolean isSufficient(SubtitlesResult result) {
+		return result.isScored() && result.getScoringValue() < sufficientScoring;
+	}
+	
 	/* (non-Javadoc)
 	 * @see fr.dz.envo.util.GenericThreadManager#postOperation(java.util.List)
 	 */
 	@Override
 	public void postOperation(List<SubtitlesResult> results) throws EnVOException {
-		AbstractSubtitlesSource.downloadBestSubtitles(request, results);
+		this.downloaded = AbstractSubtitlesSource.downloadBestSubtitles(request, results);
+	}
+	
+	/*
+	 * GETTERS & SETTERS
+	 */
+	
+	/**
+	 * @return true if subtitles have been downloaded
+	 */
+	public boolean isDownloaded() {
+		return downloaded;
+	}
+	
+	/**
+	 * @return the scoring under which a result stops the search (0 to always wait for every source)
+	 */
+	public int getSufficientScoring() {
+		return sufficientScoring;
+	}
+	
+	/**
+	 * @param sufficientScoring the scoring under which a result stops the search (0 to always wait for every source)
+	 */
+	public void setSufficientScoring(int sufficientScoring) {
+		this.sufficientScoring = sufficientScoring;
 	}
 }
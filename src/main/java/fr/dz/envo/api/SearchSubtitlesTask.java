@@ -1,10 +1,18 @@
 package fr.dz.envo.api;
 
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
 
+import fr.dz.envo.EnVO;
 import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.util.Configuration;
 import fr.dz.envo.util.thread.GenericTaskThread;
+import fr.dz.envo.util.thread.SingleFlight;
 
 
 /**
@@ -12,9 +20,22 @@ import fr.dz.envo.util.thread.GenericTaskThread;
  */
 public class SearchSubtitlesTask extends GenericTaskThread<SubtitlesResult> {
 	
+	// Constantes
+	private static final String SEARCHES_THREADS_KEY = "searches.threads";
+	private static final int DEFAULT_SEARCHES_THREADS = 0;
+	
+	// Nombre de recherches simultanées autorisées par source, partagé par toutes les requètes
+	private static final Map<String,Semaphore> SOURCE_LIMITS = new HashMap<String,Semaphore>();
+	
+	// Les recherches en cours, partagées par les requètes identiques (copies d'un même fichier vidéo traitées par lot)
+	private static final SingleFlight<String,List<SubtitlesResult>> SEARCHES = new SingleFlight<String,List<SubtitlesResult>>();
+	
 	// Attributs
 	private SubtitlesRequest request;
 	private SubtitlesSource source;
+	private String sourceId;
+	private boolean skipKnownMisses;
+	private SeasonPrefetch prefetch;
 	
 	/**
 	 * Constructeur
@@ -22,22 +43,139 @@ public class SearchSubtitlesTask extends GenericTaskThread<SubtitlesResult> {
 	 * @param source 
 	 */
 	public SearchSubtitlesTask(SubtitlesRequest request, SubtitlesSource source) {
+		this(request, source, null);
+	}
+	
+	/**
+	 * Constructeur
+	 * @param request
+	 * @param source
+	 * @param sourceId L'id de la source, utilisé pour limiter le nombre de recherches simultanées sur celle-ci
+	 */
+	public SearchSubtitlesTask(SubtitlesRequest request, SubtitlesSource source, String sourceId) {
 		this.request = request;
 		this.source = source;
+		this.sourceId = sourceId;
 	}
 	
 	@Override
 	public List<SubtitlesResult> doTask() throws EnVOException {
-		List<SubtitlesResult> results = new ArrayList<SubtitlesResult>();
-		source.init(request);
-		if ( source.hasSubtitles() ) {
-			results.addAll(source.findSubtitles());
+		
+		// Recherche déjà restée sans résultat sur cette source et pas encore à revérifier
+		NegativeResultCache misses = sourceId != null ? NegativeResultCache.getInstance() : null;
+		if ( skipKnownMisses && misses != null && ! misses.isDue(sourceId, request, System.currentTimeMillis()) ) {
+			EnVO.LOGGER.debug("Recherche sans résultat sur "+sourceId+", prochaine vérification le "+new Date(misses.getNextCheck(sourceId, request)));
+			return new ArrayList<SubtitlesResult>();
 		}
-		return results;
+		
+		// Une requète identique déjà en cours sur cette source partage ses résultats
+		if ( sourceId == null ) {
+			return search(misses);
+		}
+		final NegativeResultCache searchMisses = misses;
+		return new ArrayList<SubtitlesResult>(SEARCHES.execute(getSearchKey(), new Callable<List<SubtitlesResult>>() {
+			@Override
+			public List<SubtitlesResult> call() throws EnVOException {
+				return search(searchMisses);
+			}
+		}));
 	}
-
+	
+	/**
+	 * Exécute la recherche sur la source, dans la limite de recherches simultanées de celle-ci
+	 * @param misses Le cache des recherches sans résultat à mettre à jour (null si désactivé)
+	 * @return
+	 * @throws EnVOException
+	 */
+	private List<SubtitlesResult> search(NegativeResultCache misses) throws EnVOException {
+		Semaphore limit = getSourceLimit(sourceId);
+		if ( limit != null ) {
+			try {
+				limit.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new EnVOException("Interruption pendant l'attente de la source "+sourceId, e);
+			}
+		}
+		try {
+			// Résultats de l'épisode issus de la recherche sur toute la saison, à défaut recherche de l'épisode
+			List<SubtitlesResult> results = null;
+			if ( prefetch != null && sourceId != null ) {
+				try {
+					results = prefetch.getResults(sourceId, source, request);
+				} catch (EnVOException e) {
+					// Tâche annulée : la recherche sur la saison peut encore utiliser la source
+					if ( Thread.currentThread().isInterrupted() ) {
+						throw e;
+					}
+					EnVO.LOGGER.debug(e.getMessage()+", recherche de l'épisode", e);
+				}
+			}
+			if ( results == null ) {
+				results = new ArrayList<SubtitlesResult>();
+				source.init(request);
+				if ( source.hasSubtitles() ) {
+					results.addAll(source.findSubtitles());
+				}
+			}
+			if ( misses != null ) {
+				if ( results.isEmpty() ) {
+					misses.recordMiss(sourceId, request, System.currentTimeMillis());
+				} else {
+					misses.recordHit(sourceId, request);
+				}
+			}
+			return results;
+		} finally {
+			if ( limit != null ) {
+				limit.release();
+			}
+		}
+	}
+	
+	/**
+	 * Retourne la clé identifiant la recherche : la source, la langue et le nom de fichier (dont sont déduits
+	 * la requète, la saison, l'épisode et le scoring des résultats)
+	 * @return
+	 */
+	private String getSearchKey() {
+		return sourceId + "|" + request.getLang() + "|" + request.getFilename();
+	}
+	
 	@Override
 	public String getDescription() {
 		return "Recherche de sous-titres";
 	}
+	
+	/**
+	 * @param skipKnownMisses true to skip the search when it had no result on this source and is not due for a new check
+	 */
+	public void setSkipKnownMisses(boolean skipKnownMisses) {
+		this.skipKnownMisses = skipKnownMisses;
+	}
+	
+	/**
+	 * @param prefetch the search on the whole season of the episode, shared by the episodes of a batch
+	 */
+	public void setPrefetch(SeasonPrefetch prefetch) {
+		this.prefetch = prefetch;
+	}
+	
+	/**
+	 * Retourne la limite de recherches simultanées de la source (null si pas de limite)
+	 * @param sourceId
+	 * @return
+	 */
+	private static Semaphore getSourceLimit(String sourceId) {
+		if ( sourceId == null ) {
+			return null;
+		}
+		synchronized (SOURCE_LIMITS) {
+			if ( ! SOURCE_LIMITS.containsKey(sourceId) ) {
+				int nbThreads = Configuration.getInt(sourceId+"."+SEARCHES_THREADS_KEY, Configuration.getInt(SEARCHES_THREADS_KEY, DEFAULT_SEARCHES_THREADS));
+				SOURCE_LIMITS.put(sourceId, nbThreads > 0 ? new Semaphore(nbThreads, true) : null);
+			}
+			return SOURCE_LIMITS.get(sourceId);
+		}
+	}
 }
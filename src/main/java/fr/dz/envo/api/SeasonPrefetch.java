@@ -0,0 +1,179 @@
+package fr.dz.envo.api;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import fr.dz.envo.EnVO;
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.util.thread.SingleFlight;
+
+
+/**
+ * Recherche unique sur chaque source pour tous les épisodes d'une même saison traités par lot
+ * Les épisodes sont regroupés par (langue, série, saison) : le premier épisode d'un groupe qui interroge une source
+ * y lance la recherche sur toute la saison, les résultats sont ensuite répartis par épisode d'après les noms
+ * de fichiers des sous-titres, sans nouvelle requète.
+ * Un épisode absent des résultats de la saison (liste de résultats tronquée par la source...) est recherché
+ * normalement, de même que l'épisode dont la recherche sur la saison est en erreur : seul un résultat est conservé,
+ * l'épisode suivant relance la recherche sur la saison. Celle-ci va à son terme même si la tâche de l'épisode qui
+ * l'a lancée est annulée.
+ */
+public class SeasonPrefetch {
+	
+	// Constantes
+	private static final String KEY_SEPARATOR = "|";
+	
+	// Attributs
+	private SubtitlesRequest seasonRequest;
+	private SingleFlight<String,List<SubtitlesResult>> searches = new SingleFlight<String,List<SubtitlesResult>>(true);
+	
+	/**
+	 * Constructeur
+	 * @param seasonRequest La requète sur toute la saison (voir SubtitlesRequest.getSeasonRequest)
+	 */
+	public SeasonPrefetch(SubtitlesRequest seasonRequest) {
+		this.seasonRequest = seasonRequest;
+	}
+	
+	/**
+	 * Regroupe par saison les épisodes à traiter (sans sous-titres) et crée une recherche par saison
+	 * pour les groupes d'au moins minEpisodes épisodes
+	 * @param lang
+	 * @param files
+	 * @param minEpisodes
+	 * @return Les recherches par saison, par clé de regroupement (voir getKey)
+	 */
+	public static Map<String,SeasonPrefetch> plan(String lang, List<String> files, int minEpisodes) {
+		Map<String,SeasonPrefetch> result = new HashMap<String,SeasonPrefetch>();
+		if ( minEpisodes <= 0 ) {
+			return result;
+		}
+		Map<String,List<SubtitlesRequest>> groups = new HashMap<String,List<SubtitlesRequest>>();
+		for ( String file : files ) {
+			SubtitlesRequest request = new SubtitlesRequest(lang, file);
+			String key = getKey(request);
+			if ( key != null && ! AbstractSubtitlesSource.getSubtitlesFile(request).exists() ) {
+				List<SubtitlesRequest> group = groups.get(key);
+				if ( group == null ) {
+					group = new ArrayList<SubtitlesRequest>();
+					groups.put(key, group);
+				}
+				group.add(request);
+			}
+		}
+		for ( Map.Entry<String,List<SubtitlesRequest>> group : groups.entrySet() ) {
+			if ( group.getValue().size() >= minEpisodes ) {
+				result.put(group.getKey(), new SeasonPrefetch(group.getValue().get(0).getSeasonRequest()));
+				EnVO.LOGGER.debug("Recherche sur la saison pour "+group.getValue().size()+" épisodes : "+group.getKey());
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Retourne la clé de regroupement d'une requète : langue, série et saison
+	 * @param request
+	 * @return null si la requète ne porte pas sur un épisode
+	 */
+	public static String getKey(SubtitlesRequest request) {
+		if ( request.getSeason() == null || request.getEpisode() == null ) {
+			return null;
+		}
+		return request.getLang() + KEY_SEPARATOR + request.getQuery() + KEY_SEPARATOR + request.getSeason();
+	}
+	
+	/**
+	 * Retourne les résultats d'un épisode sur une source, à partir de la recherche sur la saison
+	 * (lancée au premier appel pour cette source, les appels simultanés attendent son résultat et les suivants
+	 * le réutilisent)
+	 * @param sourceId
+	 * @param source Une instance de la source, utilisée pour la recherche sur la saison
+	 * @param request La requète de l'épisode
+	 * @return Les résultats notés de l'épisode, vide si la saison n'a aucun résultat,
+	 * null si l'épisode n'est pas dans les résultats de la saison
+	 * @throws EnVOException Si la recherche sur la saison est en erreur ou si son attente est interrompue
+	 */
+	public List<SubtitlesResult> getResults(String sourceId, final SubtitlesSource source, SubtitlesRequest request) throws EnVOException {
+		List<SubtitlesResult> seasonResults;
+		try {
+			seasonResults = searches.execute(sourceId, new Callable<List<SubtitlesResult>>() {
+				@Override
+				public List<SubtitlesResult> call() throws EnVOException {
+					source.init(seasonRequest);
+					return source.hasSubtitles() ? source.findSubtitles() : new ArrayList<SubtitlesResult>();
+				}
+			});
+		} catch (EnVOException e) {
+			throw new EnVOException("Erreur pendant la recherche sur la saison sur "+sourceId, e);
+		}
+		if ( seasonResults.isEmpty() ) {
+			return seasonResults;
+		}
+		List<SubtitlesResult> results = split(seasonResults, request);
+		return results.isEmpty() ? null : results;
+	}
+	
+	/**
+	 * Retourne des copies des résultats d'une saison correspondant à un épisode, notées pour la requète de l'épisode
+	 * Un résultat correspond si l'un de ses noms de fichiers désigne la même saison et un épisode commun
+	 * (S05E22, ou S05E21E22 pour un fichier double)
+	 * @param seasonResults
+	 * @param request
+	 * @return
+	 */
+	public static List<SubtitlesResult> split(List<SubtitlesResult> seasonResults, SubtitlesRequest request) {
+		List<SubtitlesResult> results = new ArrayList<SubtitlesResult>();
+		int first = request.getEpisode();
+		int last = request.getLastEpisode() != null ? request.getLastEpisode() : first;
+		SubtitlesRequest parsed = new SubtitlesRequest(request.getLang(), null);
+		for ( SubtitlesResult result : seasonResults ) {
+			if ( matches(result, parsed, request.getSeason(), first, last) ) {
+				results.add(result.copy());
+			}
+		}
+		if ( ! results.isEmpty() ) {
+			new SubtitlesResultsScorer().doScoring(request, results);
+		}
+		return results;
+	}
+	
+	/**
+	 * Retourne true si l'un des noms de fichiers du résultat désigne la saison et l'un des épisodes demandés
+	 * @param result
+	 * @param parsed La requète utilisée pour analyser les noms de fichiers
+	 * @param season
+	 * @param first
+	 * @param last
+	 * @return
+	 */
+	private static boolean matches(SubtitlesResult result, SubtitlesRequest parsed, int season, int first, int last) {
+		if ( result.getFiles() != null ) {
+			for ( SubtitlesResultFile file : result.getFiles() ) {
+				if ( file.getFileNames() != null ) {
+					for ( String name : file.getFileNames() ) {
+						parsed.parseFilename(name);
+						if ( parsed.getEpisode() != null && parsed.getSeason() == season
+								&& parsed.getEpisode() <= last && parsed.getLastEpisode() >= first ) {
+							return true;
+						}
+					}
+				}
+			}
+		}
+		return false;
+	}
+	
+	/*
+	 * GETTERS & SETTERS
+	 */
+	
+	/**
+	 * @return the request for the whole season
+	 */
+	public SubtitlesRequest getSeasonRequest() {
+		return seasonRequest;
+	}
+}
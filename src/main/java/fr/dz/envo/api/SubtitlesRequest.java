@@ -2,8 +2,6 @@ package fr.dz.envo.api;
 
 import java.io.File;
 import java.io.Serializable;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import fr.dz.envo.EnVO;
 import fr.dz.envo.exception.EnVOException;
@@ -12,12 +10,6 @@ public class SubtitlesRequest implements Serializable {
 	
 	private static final long serialVersionUID = 1039194045321136919L;
 
-	// Les expressions régulières utilisées
-	private static final String SERIE_REG_EXP = "^([A-Za-z0-9 .]*)[Ss]([0-9]{1,2})[EeXx]([0-9]{1,2}).*$";
-	private static final int QUERY_GROUP = 1;
-	private static final int SEASON_GROUP = 2;
-	private static final int EPISODE_GROUP = 3;
-	
 	// Champs du bean
 	private String lang;
 	private String folder;
@@ -25,6 +17,8 @@ public class SubtitlesRequest implements Serializable {
 	private String query;
 	private Integer season;
 	private Integer episode;
+	private Integer lastEpisode;
+	private Integer year;
 	private Long filesize;
 	
 	/**
@@ -45,36 +39,14 @@ public class SubtitlesRequest implements Serializable {
 	public void init(String file) {
 		if ( file != null ) {
 			
-			// Récupération du fichier
+			// Récupération du fichier et analyse de son nom
 			int folderIndex = file.lastIndexOf(File.separator);
 			if ( folderIndex != -1 ) {
 				this.folder = file.substring(0, folderIndex);
-				this.filename = file.substring(folderIndex + File.separator.length());
+				parseFilename(file.substring(folderIndex + File.separator.length()));
 			} else {
 				this.folder = ".";
-				this.filename = file;
-			}
-			
-			// Utilisation d'un expression régulière pour récupérer les infos à partir du nom de fichier
-			Pattern pattern = Pattern.compile(SERIE_REG_EXP);
-			Matcher matcher = pattern.matcher(filename);
-			if ( matcher.find() ) {
-				if ( matcher.group(QUERY_GROUP) != null ) {
-					this.query = matcher.group(QUERY_GROUP).replaceAll("\\.", " ").trim().toLowerCase();
-				}
-				if ( matcher.group(SEASON_GROUP) != null ) {
-					this.season = Integer.parseInt(matcher.group(SEASON_GROUP));
-				}
-				if ( matcher.group(EPISODE_GROUP) != null ) {
-					this.episode = Integer.parseInt(matcher.group(EPISODE_GROUP));
-				}
-			} else {
-				if ( filename.lastIndexOf(".") != -1 ) {
-					query = filename.substring(0, filename.lastIndexOf(".")); 
-				} else {
-					query = filename;
-				}
-				query = query.replaceAll("\\.", " ").trim().toLowerCase();
+				parseFilename(file);
 			}
 			
 			// Récupération de la taille du fichier
@@ -88,6 +60,176 @@ public class SubtitlesRequest implements Serializable {
 		debug(file);
 	}
 
+	/**
+	 * Retourne la requète portant sur toute la saison de l'épisode demandé : même langue, même série,
+	 * sans épisode (les sources construisent alors une URL de recherche sur la saison)
+	 * @return null si la requète ne porte pas sur un épisode
+	 */
+	public SubtitlesRequest getSeasonRequest() {
+		if ( season == null || episode == null ) {
+			return null;
+		}
+		SubtitlesRequest seasonRequest = new SubtitlesRequest(lang, null);
+		seasonRequest.folder = folder;
+		seasonRequest.filename = filename;
+		seasonRequest.query = query;
+		seasonRequest.season = season;
+		seasonRequest.filesize = filesize;
+		return seasonRequest;
+	}
+	
+	/**
+	 * Récupère les infos à partir du nom de fichier, en un seul parcours :
+	 *  - série : le titre précède le marqueur d'épisode (S05E23, s5x23, S01E01E02 ou 1x02)
+	 *  - film : le nom sans extension, jusqu'à l'année s'il y en a une (Wild.Wild.West.1999.DVDRip.avi)
+	 * Un groupe entre crochets en tête du nom ([LOL] The.Big.Bang.Theory...) est ignoré
+	 * @param filename Le nom de fichier, sans dossier
+	 */
+	public void parseFilename(String filename) {
+		this.filename = filename;
+		this.query = null;
+		this.season = null;
+		this.episode = null;
+		this.lastEpisode = null;
+		this.year = null;
+		int length = filename.length();
+		int start = 0;
+		if ( length > 0 && filename.charAt(0) == '[' ) {
+			int end = filename.indexOf(']');
+			if ( end > 0 ) {
+				start = end + 1;
+			}
+		}
+		
+		// Recherche du marqueur d'épisode et de l'année au début de chaque mot
+		int yearStart = -1;
+		for ( int i = start; i < length; i++ ) {
+			if ( i == start || ! Character.isLetterOrDigit(filename.charAt(i - 1)) ) {
+				if ( parseEpisode(i) ) {
+					this.query = normalize(start, i);
+					return;
+				}
+				if ( yearStart < 0 && i > start && isYear(i) ) {
+					yearStart = i;
+				}
+			}
+		}
+		
+		// Pas d'épisode : film
+		int end = filename.lastIndexOf('.');
+		if ( end < start ) {
+			end = length;
+		}
+		if ( yearStart >= 0 && yearStart < end ) {
+			this.year = Integer.parseInt(filename.substring(yearStart, yearStart + 4));
+			end = yearStart;
+		}
+		this.query = normalize(start, end);
+	}
+	
+	/**
+	 * Reconnaît un marqueur d'épisode à partir d'une position et renseigne saison et épisode(s)
+	 * @param index
+	 * @return true si un marqueur d'épisode commence à cette position
+	 */
+	private boolean parseEpisode(int index) {
+		int length = filename.length();
+		int i = index;
+		char c = filename.charAt(i);
+		
+		// S05E23, s5x23, S01E01E02 ou 1x02
+		boolean prefixed = c == 'S' || c == 's';
+		if ( prefixed ) {
+			i++;
+		}
+		int seasonStart = i;
+		int parsedSeason = 0;
+		while ( i < length && i - seasonStart < 2 && isDigit(filename.charAt(i)) ) {
+			parsedSeason = parsedSeason * 10 + filename.charAt(i++) - '0';
+		}
+		if ( i == seasonStart || i >= length ) {
+			return false;
+		}
+		c = filename.charAt(i);
+		if ( ! (c == 'x' || c == 'X' || ( prefixed && (c == 'e' || c == 'E') )) ) {
+			return false;
+		}
+		int episodeStart = ++i;
+		int parsedEpisode = 0;
+		while ( i < length && i - episodeStart < 3 && isDigit(filename.charAt(i)) ) {
+			parsedEpisode = parsedEpisode * 10 + filename.charAt(i++) - '0';
+		}
+		if ( i == episodeStart || (i < length && isDigit(filename.charAt(i))) ) {
+			return false;
+		}
+		
+		// Episodes multiples
+		int parsedLastEpisode = parsedEpisode;
+		while ( prefixed && i + 1 < length && (filename.charAt(i) == 'e' || filename.charAt(i) == 'E') && isDigit(filename.charAt(i + 1)) ) {
+			parsedLastEpisode = 0;
+			int lastEpisodeStart = ++i;
+			while ( i < length && i - lastEpisodeStart < 3 && isDigit(filename.charAt(i)) ) {
+				parsedLastEpisode = parsedLastEpisode * 10 + filename.charAt(i++) - '0';
+			}
+			if ( i < length && isDigit(filename.charAt(i)) ) {
+				return false;
+			}
+		}
+		
+		// Sans préfixe, le marqueur doit être un mot entier (1920x1080 n'est pas un épisode)
+		if ( ! prefixed && i < length && Character.isLetterOrDigit(filename.charAt(i)) ) {
+			return false;
+		}
+		this.season = parsedSeason;
+		this.episode = parsedEpisode;
+		this.lastEpisode = parsedLastEpisode;
+		return true;
+	}
+	
+	/**
+	 * @param index
+	 * @return true si un mot de 4 chiffres commençant par 19 ou 20 commence à cette position
+	 */
+	private boolean isYear(int index) {
+		if ( index + 4 > filename.length() || (index + 4 < filename.length() && Character.isLetterOrDigit(filename.charAt(index + 4))) ) {
+			return false;
+		}
+		char first = filename.charAt(index);
+		char second = filename.charAt(index + 1);
+		return ( (first == '1' && second == '9') || (first == '2' && second == '0') )
+				&& isDigit(filename.charAt(index + 2)) && isDigit(filename.charAt(index + 3));
+	}
+	
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+	
+	/**
+	 * Construit la requète à partir d'une partie du nom de fichier : minuscules, points et underscores remplacés
+	 * par des espaces, sans séparateur en début ni en fin
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	private String normalize(int start, int end) {
+		while ( start < end && isTrimmed(filename.charAt(start)) ) {
+			start++;
+		}
+		while ( end > start && isTrimmed(filename.charAt(end - 1)) ) {
+			end--;
+		}
+		StringBuilder result = new StringBuilder(end - start);
+		for ( int i = start; i < end; i++ ) {
+			char c = filename.charAt(i);
+			result.append(c == '.' || c == '_' ? ' ' : Character.toLowerCase(c));
+		}
+		return result.toString();
+	}
+	
+	private static boolean isTrimmed(char c) {
+		return c <= ' ' || c == '.' || c == '_' || c == '-' || c == '(' || c == '[';
+	}
+	
 	/**
 	 * Affichage des infos de debug
 	 */
@@ -101,6 +243,8 @@ public class SubtitlesRequest implements Serializable {
 		EnVO.LOGGER.debug(" - query : " + query);
 		EnVO.LOGGER.debug(" - season : " + season);
 		EnVO.LOGGER.debug(" - episode : " + episode);
+		EnVO.LOGGER.debug(" - lastEpisode : " + lastEpisode);
+		EnVO.LOGGER.debug(" - year : " + year);
 		EnVO.LOGGER.debug(" - filesize : " + filesize);
 	}
 
@@ -150,6 +294,20 @@ public class SubtitlesRequest implements Serializable {
 		return episode;
 	}
 
+	/**
+	 * @return the last episode of the file (same as the episode unless the file contains several episodes)
+	 */
+	public Integer getLastEpisode() {
+		return lastEpisode;
+	}
+
+	/**
+	 * @return the year of a movie
+	 */
+	public Integer getYear() {
+		return year;
+	}
+
 	/**
 	 * @return the filesize
 	 */
@@ -6,22 +6,22 @@ import java.util.ArrayList;
 import java.util.List;
 
 import fr.dz.envo.EnVO;
-import fr.dz.envo.util.Levenshtein;
 
 public class SubtitlesResult implements Serializable {
 
 	private static final long serialVersionUID = 5630975519309879850L;
 	
 	// Constantes
-	private static final Integer DEFAULT_SCORING = 100;
-	private static final Integer TRUSTED_COEFFICIENT = 95;
+	private static final int DEFAULT_SCORING = 100;
+	private static final int TRUSTED_COEFFICIENT = 95;
 	
 	// Champs
 	private String id;
 	private URL downloadURL;
 	private List<SubtitlesResultFile> files = new ArrayList<SubtitlesResultFile>();
 	private Boolean trusted;
-	private Integer scoring;
+	private int scoring;
+	private boolean scored;
 
 	/**
 	 * Constructeur par défaut 
@@ -30,18 +30,41 @@ public class SubtitlesResult implements Serializable {
 		
 	}
 	
+	/**
+	 * Ajoute un fichier correspondant dans la liste
+	 * Le scoring du fichier est fait avec celui du résultat
+	 * @param file
+	 */
+	public void addFile(SubtitlesResultFile file) {
+		this.files.add(file);
+	}
+	
 	/**
 	 * Ajoute un fichier correspondant dans la liste
 	 * @param request
 	 * @param file
+	 * @deprecated la requète n'est pas utilisée, utiliser {@link #addFile(SubtitlesResultFile)}
 	 */
+	@Deprecated
 	public void addFile(SubtitlesRequest request, SubtitlesResultFile file) {
-		
-		// Ajout dans la liste
-		this.files.add(file);
-		
-		// Scoring
-		file.doScoring(request);
+		addFile(file);
+	}
+	
+	/**
+	 * Retourne une copie non notée du résultat et de ses fichiers, pour la noter en fonction d'une autre requète
+	 * @return
+	 */
+	public SubtitlesResult copy() {
+		SubtitlesResult copy = new SubtitlesResult();
+		copy.id = id;
+		copy.downloadURL = downloadURL;
+		copy.trusted = trusted;
+		if ( files != null ) {
+			for ( SubtitlesResultFile file : files ) {
+				copy.files.add(file.copy());
+			}
+		}
+		return copy;
 	}
 	
 	/**
@@ -51,22 +74,28 @@ public class SubtitlesResult implements Serializable {
 	 */
 	public void doScoring(SubtitlesRequest request) {
 		
-		// On prend le score minimum des fichiers
-		List<Integer> scorings = new ArrayList<Integer>();
+		// On prend le score minimum des fichiers, en notant ceux qui ne l'ont pas encore été
+		int result = DEFAULT_SCORING;
+		boolean found = false;
 		if ( getFiles() != null ) {
-			for ( SubtitlesResultFile file : getFiles() ) {
-				scorings.add(file.getScoring());
+			for ( int i = 0; i < files.size(); i++ ) {
+				SubtitlesResultFile file = files.get(i);
+				if ( ! file.isScored() ) {
+					file.doScoring(request);
+				}
+				if ( ! found || file.getScoringValue() < result ) {
+					result = file.getScoringValue();
+					found = true;
+				}
 			}
-			this.scoring = Levenshtein.min(scorings.toArray(new Integer[0]));
-		}
-		if ( this.scoring == null ) {
-			this.scoring = DEFAULT_SCORING;
 		}
 		
 		// Si le fichier est trusted, on accorde 5% de bonus
-		if ( trusted ) {
-			this.scoring = this.scoring * TRUSTED_COEFFICIENT / 100;
+		if ( Boolean.TRUE.equals(trusted) ) {
+			result = result * TRUSTED_COEFFICIENT / 100;
 		}
+		this.scoring = result;
+		this.scored = true;
 		
 		// Debug
 		debug();
@@ -86,7 +115,7 @@ public class SubtitlesResult implements Serializable {
 			file.debug();
 		}
 		EnVO.LOGGER.debug(" - trusted : " + trusted);
-		EnVO.LOGGER.debug(" - scoring : " + scoring);
+		EnVO.LOGGER.debug(" - scoring : " + getScoring());
 	}
 	
 	/*
@@ -126,10 +155,25 @@ public class SubtitlesResult implements Serializable {
 	}
 
 	public Integer getScoring() {
-		return scoring;
+		return scored ? scoring : null;
 	}
 
 	public void setScoring(Integer scoring) {
-		this.scoring = scoring;
+		this.scored = scoring != null;
+		this.scoring = scored ? scoring : 0;
+	}
+
+	/**
+	 * @return true once the scoring has been computed or set
+	 */
+	public boolean isScored() {
+		return scored;
+	}
+
+	/**
+	 * @return the scoring without boxing, only meaningful when {@link #isScored()}
+	 */
+	public int getScoringValue() {
+		return scoring;
 	}
 }
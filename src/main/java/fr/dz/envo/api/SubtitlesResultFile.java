@@ -12,16 +12,17 @@ public class SubtitlesResultFile implements Serializable {
 	private static final long serialVersionUID = 6726463780614990623L;
 	
 	// Constantes
-	private static final Integer DEFAULT_FILENAME_SCORING = 100;
-	private static final Integer DEFAULT_FILESIZE_SCORING = 50;
-	private static final Integer FILENAME_COEFFICIENT = 5;
-	private static final Integer FILESIZE_COEFFICIENT = 2;
+	private static final int DEFAULT_FILENAME_SCORING = 100;
+	private static final int DEFAULT_FILESIZE_SCORING = 50;
+	private static final int FILENAME_COEFFICIENT = 5;
+	private static final int FILESIZE_COEFFICIENT = 2;
 	
 	// Champs
 	private String id;
 	private Long size;
 	private List<String> fileNames = new ArrayList<String>();
-	private Integer scoring;
+	private int scoring;
+	private boolean scored;
 	
 	/**
 	 * Constructeur par défaut
@@ -30,6 +31,18 @@ public class SubtitlesResultFile implements Serializable {
 		
 	}
 	
+	/**
+	 * Retourne une copie non notée du fichier
+	 * @return
+	 */
+	public SubtitlesResultFile copy() {
+		SubtitlesResultFile copy = new SubtitlesResultFile();
+		copy.id = id;
+		copy.size = size;
+		copy.fileNames = fileNames;
+		return copy;
+	}
+	
 	/**
 	 * Effectue le scoring
 	 * @param request
@@ -37,29 +50,48 @@ public class SubtitlesResultFile implements Serializable {
 	public void doScoring(SubtitlesRequest request) {
 		
 		// Nom de fichier : on prend le minimum de la distance entre le fichier cherché et ceux trouvés
-		// Et on essaye d'obtenir un pourcentage par rapport au nombre de caractères de la chaîne de base
-		List<Integer> distances = new ArrayList<Integer>();
-		Integer fileNameScoring = DEFAULT_FILENAME_SCORING;
+		// Seule une distance inférieure à la meilleure déjà trouvée est intéressante, le calcul est donc borné
+		int minDistance = -1;
 		if ( getFileNames() != null ) {
 			for ( String filename : getFileNames() ) {
-				distances.add(Levenshtein.distance(request.getFilename(), filename));
+				int limit = minDistance < 0 ? Integer.MAX_VALUE : minDistance - 1;
+				if ( limit < 0 ) {
+					break;
+				}
+				int distance = Levenshtein.distanceAtMost(request.getFilename(), filename, limit);
+				if ( distance <= limit ) {
+					minDistance = distance;
+				}
 			}
 		}
-		if ( ! distances.isEmpty() ) {
-			Integer minDistance = Levenshtein.min(distances.toArray(new Integer[0]));
+		doScoring(request, minDistance);
+	}
+	
+	/**
+	 * Effectue le scoring à partir de la distance minimum déjà calculée entre le fichier cherché et ceux trouvés
+	 * @param request
+	 * @param minDistance La distance minimum, négative si aucun nom de fichier n'a été comparé
+	 */
+	public void doScoring(SubtitlesRequest request, int minDistance) {
+		
+		// Nom de fichier : on essaye d'obtenir un pourcentage par rapport au nombre de caractères de la chaîne de base
+		int fileNameScoring = DEFAULT_FILENAME_SCORING;
+		if ( minDistance >= 0 ) {
 			fileNameScoring = minDistance * 100 / request.getFilename().length();
 		}
 		
 		// Taille de fichier : on fait la différence en valeur absolue
-		Integer fileSizeScoring = DEFAULT_FILESIZE_SCORING;
-		if ( request.getFilesize() != null && getSize() != null ) {
-			Long minDifference = Math.abs(request.getFilesize() - getSize());
-			fileSizeScoring = minDifference.intValue() * 100 / request.getFilesize().intValue();
+		int fileSizeScoring = DEFAULT_FILESIZE_SCORING;
+		if ( request.getFilesize() != null && size != null ) {
+			long requestSize = request.getFilesize();
+			long minDifference = Math.abs(requestSize - size);
+			fileSizeScoring = (int) minDifference * 100 / (int) requestSize;
 		}
 		
 		// Application des coefficients pour avoir le score final
 		this.scoring = (fileNameScoring * FILENAME_COEFFICIENT + fileSizeScoring * FILESIZE_COEFFICIENT)
 				/ (FILENAME_COEFFICIENT + FILESIZE_COEFFICIENT);
+		this.scored = true;
 	}
 	
 	/**
@@ -69,7 +101,7 @@ public class SubtitlesResultFile implements Serializable {
 		EnVO.LOGGER.debug("   * Fichier concerné :");
 		EnVO.LOGGER.debug("     o id : "+id);
 		EnVO.LOGGER.debug("     o size : "+size);
-		EnVO.LOGGER.debug("     o scoring : "+scoring);
+		EnVO.LOGGER.debug("     o scoring : "+getScoring());
 		EnVO.LOGGER.debug("     o fileNames : ");
 		for ( String filename : getFileNames() ) {
 			EnVO.LOGGER.debug("         "+filename);
@@ -147,10 +179,25 @@ public class SubtitlesResultFile implements Serializable {
 	}
 
 	public Integer getScoring() {
-		return scoring;
+		return scored ? scoring : null;
 	}
 
 	public void setScoring(Integer scoring) {
-		this.scoring = scoring;
+		this.scored = scoring != null;
+		this.scoring = scored ? scoring : 0;
+	}
+
+	/**
+	 * @return true once the scoring has been computed or set
+	 */
+	public boolean isScored() {
+		return scored;
+	}
+
+	/**
+	 * @return the scoring without boxing, only meaningful when {@link #isScored()}
+	 */
+	public int getScoringValue() {
+		return scoring;
 	}
 }
\ No newline at end of file
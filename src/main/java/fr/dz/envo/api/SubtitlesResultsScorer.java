@@ -0,0 +1,97 @@
+package fr.dz.envo.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import fr.dz.envo.util.Configuration;
+import fr.dz.envo.util.Levenshtein;
+import fr.dz.envo.util.ReleaseNameIndex;
+
+/**
+ * Scoring de l'ensemble des résultats d'une recherche
+ * Tous les noms de fichiers des résultats sont indexés par tokens (titre, épisode, groupe, résolution...),
+ * seuls les plus proches du fichier cherché par recouvrement pondéré de tokens sont comparés par distance
+ * de Levenshtein. Les autres fichiers reçoivent le scoring par défaut d'un nom de fichier inconnu.
+ */
+public class SubtitlesResultsScorer {
+	
+	// Constantes
+	private static final String TOP_K_KEY = "scoring.topK";
+	private static final int DEFAULT_TOP_K = 10;
+	
+	// Attributs
+	private int topK = Configuration.getInt(TOP_K_KEY, DEFAULT_TOP_K);
+	
+	/**
+	 * Effectue le scoring de tous les fichiers et de tous les résultats
+	 * @param request
+	 * @param results
+	 */
+	public void doScoring(SubtitlesRequest request, List<SubtitlesResult> results) {
+		
+		// Indexation des noms de fichiers, chaque nom renvoie à l'index de son fichier
+		List<SubtitlesResultFile> files = new ArrayList<SubtitlesResultFile>();
+		List<String> names = new ArrayList<String>();
+		int[] nameFiles = new int[16];
+		ReleaseNameIndex index = new ReleaseNameIndex();
+		for ( SubtitlesResult result : results ) {
+			if ( result.getFiles() != null ) {
+				for ( SubtitlesResultFile file : result.getFiles() ) {
+					if ( file.getFileNames() != null ) {
+						for ( String name : file.getFileNames() ) {
+							int id = index.add(name);
+							if ( id == nameFiles.length ) {
+								nameFiles = Arrays.copyOf(nameFiles, id * 2);
+							}
+							nameFiles[id] = files.size();
+							names.add(name);
+						}
+					}
+					files.add(file);
+				}
+			}
+		}
+		
+		// Distance uniquement pour les noms les plus proches (tous si la sélection est désactivée)
+		int[] candidates = index.search(request.getFilename(), topK > 0 ? topK : index.size());
+		int[] minDistances = new int[files.size()];
+		Arrays.fill(minDistances, -1);
+		for ( int candidate : candidates ) {
+			int file = nameFiles[candidate];
+			int limit = minDistances[file] < 0 ? Integer.MAX_VALUE : minDistances[file] - 1;
+			if ( limit >= 0 ) {
+				int distance = Levenshtein.distanceAtMost(request.getFilename(), names.get(candidate), limit);
+				if ( distance <= limit ) {
+					minDistances[file] = distance;
+				}
+			}
+		}
+		
+		// Scoring des fichiers puis des résultats
+		for ( int i = 0; i < files.size(); i++ ) {
+			files.get(i).doScoring(request, minDistances[i]);
+		}
+		for ( SubtitlesResult result : results ) {
+			result.doScoring(request);
+		}
+	}
+	
+	/*
+	 * GETTERS & SETTERS
+	 */
+	
+	/**
+	 * @return the number of file names compared by edit distance (0 for all)
+	 */
+	public int getTopK() {
+		return topK;
+	}
+	
+	/**
+	 * @param topK the number of file names compared by edit distance (0 for all)
+	 */
+	public void setTopK(int topK) {
+		this.topK = topK;
+	}
+}
@@ -0,0 +1,415 @@
+package fr.dz.envo.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import fr.dz.envo.EnVO;
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.util.Configuration;
+import fr.dz.envo.util.WorkQueue;
+import fr.dz.envo.util.thread.GenericThreadManager.DaemonThreadFactory;
+
+
+/**
+ * Surveillance d'une arborescence de fichiers vidéo : les sous-titres sont recherchés pour les fichiers vidéo
+ * créés, copiés ou renommés, sans parcourir toute la bibliothèque
+ *  - un fichier n'est pris en compte qu'une fois sa taille stable pendant le délai de stabilisation
+ *    (fichier en cours de copie ou de téléchargement)
+ *  - un fichier qui a déjà ses sous-titres (même nom, extension SRT) est ignoré
+ *  - les fichiers retenus passent par une file de travail enregistrée sur disque (une par langue et par dossier surveillé),
+ *    reprise au démarrage suivant
+ *  - un fichier sans sous-titres trouvés ou en erreur reste dans la file : il est revérifié périodiquement, les recherches
+ *    sans résultat n'étant relancées sur une source qu'à leur date de nouvelle vérification (voir NegativeResultCache)
+ * Les requètes sont traitées par le même pool de threads, comme en traitement par lot.
+ */
+public class WatchSubtitlesManager {
+	
+	// Constantes de configuration
+	private static final String DEBOUNCE_KEY = "watch.debounce";
+	private static final long DEFAULT_DEBOUNCE = 30000;
+	private static final String RECHECK_KEY = "watch.recheck";
+	private static final long DEFAULT_RECHECK = 600000;
+	private static final String QUEUE_KEY = "watch.queue";
+	
+	// Constantes
+	private static final long POLL_INTERVAL = 1000;
+	
+	// Attributs
+	private String lang;
+	private Path root;
+	private long debounce;
+	private Set<String> extensions = BatchSubtitlesManager.getVideoExtensions();
+	private BatchSubtitlesManager batchManager;
+	private WorkQueue queue;
+	private WatchService watchService;
+	private Map<WatchKey,Path> directories = new HashMap<WatchKey,Path>();
+	private Map<Path,PendingFile> pendingFiles = new LinkedHashMap<Path,PendingFile>();
+	private Set<String> inProgress = Collections.synchronizedSet(new HashSet<String>());
+	private ExecutorService executor;
+	private long recheck = Configuration.getLong(RECHECK_KEY, DEFAULT_RECHECK);
+	private long lastRecheck;
+	private volatile boolean running;
+	
+	/**
+	 * Fichier vidéo en attente de stabilisation
+	 */
+	private static class PendingFile {
+		private long lastChange;
+		private long size;
+		
+		private PendingFile(long lastChange, long size) {
+			this.lastChange = lastChange;
+			this.size = size;
+		}
+	}
+	
+	/**
+	 * Constructeur à partir de la configuration
+	 * @param lang La langue
+	 * @param directory Le dossier surveillé, avec ses sous-dossiers
+	 * @throws EnVOException
+	 */
+	public WatchSubtitlesManager(String lang, File directory) throws EnVOException {
+		this(lang, directory, Configuration.getLong(DEBOUNCE_KEY, DEFAULT_DEBOUNCE), getQueueFile(lang, directory));
+	}
+	
+	/**
+	 * Constructeur
+	 * @param lang La langue
+	 * @param directory Le dossier surveillé, avec ses sous-dossiers
+	 * @param debounce Le délai en millisecondes pendant lequel la taille d'un fichier doit rester stable
+	 * @param queueFile Le fichier de la file de travail
+	 * @throws EnVOException
+	 */
+	public WatchSubtitlesManager(String lang, File directory, long debounce, File queueFile) throws EnVOException {
+		if ( ! directory.isDirectory() ) {
+			throw new EnVOException("Dossier introuvable : "+directory);
+		}
+		this.lang = lang;
+		this.root = directory.toPath();
+		this.debounce = debounce;
+		this.batchManager = new BatchSubtitlesManager(lang, Collections.<String>emptyList());
+		this.queue = new WorkQueue(queueFile);
+	}
+	
+	/**
+	 * Retourne le fichier de la file de travail d'une surveillance, dans le dossier configuré
+	 * Chaque langue et chaque dossier surveillé a sa propre file : un fichier n'est repris qu'avec la langue
+	 * de sa surveillance, et deux surveillances simultanées n'écrivent pas dans le même fichier.
+	 * @param lang La langue
+	 * @param directory Le dossier surveillé
+	 * @return
+	 */
+	public static File getQueueFile(String lang, File directory) {
+		String root = directory.getAbsoluteFile().toPath().normalize().toString();
+		return new File(Configuration.getFile(QUEUE_KEY, "queue"), lang + "-" + Integer.toHexString(root.hashCode()) + ".txt");
+	}
+	
+	/**
+	 * Démarre la surveillance de l'arborescence et reprend les fichiers restés dans la file de travail
+	 * @throws EnVOException
+	 */
+	public void start() throws EnVOException {
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+			register(root, false);
+		} catch (IOException e) {
+			throw new EnVOException("Impossible de surveiller le dossier "+root, e);
+		}
+		executor = Executors.newFixedThreadPool(Math.max(1, batchManager.getNbThreads()), new DaemonThreadFactory("envo-watch-"));
+		running = true;
+		lastRecheck = System.currentTimeMillis();
+		List<String> resumed = queue.getItems();
+		if ( ! resumed.isEmpty() ) {
+			EnVO.LOGGER.info("Reprise de "+resumed.size()+" fichier(s) de la file de travail");
+		}
+		for ( String file : resumed ) {
+			submit(file);
+		}
+		EnVO.LOGGER.info("Surveillance du dossier "+root+" (délai de stabilisation : "+debounce+" ms)");
+	}
+	
+	/**
+	 * Traite les événements de l'arborescence jusqu'à l'arrêt de la surveillance
+	 */
+	public void watch() {
+		while ( running ) {
+			try {
+				WatchKey key = watchService.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				while ( key != null ) {
+					handleEvents(key);
+					key = watchService.poll();
+				}
+				long now = System.currentTimeMillis();
+				flushPendingFiles(now);
+				
+				// Nouvelle vérification des fichiers restés sans sous-titres
+				if ( now - lastRecheck >= recheck ) {
+					lastRecheck = now;
+					for ( String file : queue.getItems() ) {
+						submit(file);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				running = false;
+			} catch (ClosedWatchServiceException e) {
+				running = false;
+			}
+		}
+	}
+	
+	/**
+	 * Arrête la surveillance et les requètes en cours, les fichiers non traités restent dans la file de travail
+	 */
+	public void stop() {
+		running = false;
+		if ( executor != null ) {
+			executor.shutdownNow();
+		}
+		if ( watchService != null ) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				// Rien à faire
+			}
+		}
+	}
+	
+	/**
+	 * Enregistre un dossier et ses sous-dossiers auprès du service de surveillance
+	 * @param directory
+	 * @param created true pour un dossier apparu pendant la surveillance : ses fichiers vidéo sont pris en compte
+	 * @throws IOException
+	 */
+	private void register(Path directory, final boolean created) throws IOException {
+		final long now = System.currentTimeMillis();
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+				directories.put(key, dir);
+				return FileVisitResult.CONTINUE;
+			}
+			
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if ( created ) {
+					changed(file, now);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+	
+	/**
+	 * Traite les événements d'un dossier surveillé
+	 * @param key
+	 */
+	private void handleEvents(WatchKey key) {
+		Path directory = directories.get(key);
+		long now = System.currentTimeMillis();
+		for ( WatchEvent<?> event : key.pollEvents() ) {
+			
+			// Trop d'événements : tous les fichiers vidéo de l'arborescence sont revérifiés
+			if ( event.kind() == StandardWatchEventKinds.OVERFLOW ) {
+				EnVO.LOGGER.warn("Evénements perdus, vérification de tout le dossier "+root);
+				rescan();
+				continue;
+			}
+			if ( directory == null ) {
+				continue;
+			}
+			Path path = directory.resolve((Path) event.context());
+			if ( event.kind() == StandardWatchEventKinds.ENTRY_DELETE ) {
+				pendingFiles.remove(path);
+			} else if ( event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path) ) {
+				try {
+					register(path, true);
+				} catch (IOException e) {
+					EnVO.LOGGER.warn("Impossible de surveiller le dossier "+path+" : "+e.getMessage());
+				}
+			} else {
+				changed(path, now);
+			}
+		}
+		if ( ! key.reset() ) {
+			directories.remove(key);
+		}
+	}
+	
+	/**
+	 * Vérifie à nouveau tous les fichiers vidéo de l'arborescence (après une perte d'événements)
+	 */
+	private void rescan() {
+		for ( WatchKey key : directories.keySet() ) {
+			key.cancel();
+		}
+		directories.clear();
+		try {
+			register(root, true);
+		} catch (IOException e) {
+			EnVO.LOGGER.warn("Impossible de surveiller le dossier "+root+" : "+e.getMessage());
+		}
+	}
+	
+	/**
+	 * Prend en compte la création ou la modification d'un fichier : un fichier vidéo est mis en attente
+	 * de stabilisation, ou son délai est relancé s'il l'était déjà
+	 * @param path
+	 * @param now
+	 */
+	private void changed(Path path, long now) {
+		if ( BatchSubtitlesManager.isVideoFile(path.getFileName().toString(), extensions) ) {
+			File file = path.toFile();
+			PendingFile pending = pendingFiles.get(path);
+			if ( pending == null ) {
+				pendingFiles.put(path, new PendingFile(now, file.length()));
+			} else {
+				pending.lastChange = now;
+				pending.size = file.length();
+			}
+		}
+	}
+	
+	/**
+	 * Ajoute à la file de travail les fichiers en attente dont la taille n'a pas changé depuis le délai de stabilisation
+	 * @param now
+	 */
+	private void flushPendingFiles(long now) {
+		List<String> ready = new ArrayList<String>();
+		Iterator<Map.Entry<Path,PendingFile>> iterator = pendingFiles.entrySet().iterator();
+		while ( iterator.hasNext() ) {
+			Map.Entry<Path,PendingFile> entry = iterator.next();
+			File file = entry.getKey().toFile();
+			PendingFile pending = entry.getValue();
+			if ( ! file.isFile() ) {
+				iterator.remove();
+			} else if ( file.length() != pending.size ) {
+				pending.lastChange = now;
+				pending.size = file.length();
+			} else if ( now - pending.lastChange >= debounce ) {
+				iterator.remove();
+				String path = file.getPath();
+				if ( AbstractSubtitlesSource.getSubtitlesFile(new SubtitlesRequest(lang, path)).exists() ) {
+					EnVO.LOGGER.debug("Sous-titres déjà présents pour "+path);
+				} else {
+					ready.add(path);
+				}
+			}
+		}
+		
+		// Un seul enregistrement de la file pour tous les fichiers prêts (nombreux après une vérification complète)
+		for ( String path : queue.addAll(ready) ) {
+			submit(path);
+		}
+	}
+	
+	/**
+	 * Soumet la requète d'un fichier de la file de travail au pool de threads
+	 * Le fichier est retiré de la file une fois ses sous-titres trouvés ou s'il n'existe plus, sauf en cas d'arrêt
+	 * de la surveillance. En cas d'erreur, il reste dans la file pour la vérification suivante.
+	 * @param file
+	 */
+	private void submit(final String file) {
+		if ( ! inProgress.add(file) ) {
+			return;
+		}
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				boolean done = true;
+				try {
+					if ( ! new File(file).exists() ) {
+						EnVO.LOGGER.debug("Fichier supprimé : "+file);
+						return;
+					}
+					Boolean result = process(file);
+					if ( result == null ) {
+						EnVO.LOGGER.info("Sous-titres déjà présents : "+file);
+					} else if ( result ) {
+						EnVO.LOGGER.info("Sous-titres téléchargés : "+file);
+					} else {
+						EnVO.LOGGER.info("Aucun sous-titre trouvé : "+file);
+						done = NegativeResultCache.getInstance() == null;
+					}
+				} catch (EnVOException e) {
+					EnVO.LOGGER.error("Erreur pendant la recherche de sous-titres pour "+file);
+					EnVO.LOGGER.debug(e.getMessage(), e);
+					done = false;
+				} finally {
+					inProgress.remove(file);
+					if ( done && running && ! Thread.currentThread().isInterrupted() ) {
+						queue.remove(file);
+					}
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Recherche et téléchargement des sous-titres d'un fichier de la file de travail
+	 * @param file
+	 * @return true si des sous-titres ont été téléchargés, false sinon, null si le fichier en a déjà
+	 * @throws EnVOException
+	 */
+	protected Boolean process(String file) throws EnVOException {
+		return batchManager.doRequest(file);
+	}
+	
+	/*
+	 * GETTERS & SETTERS
+	 */
+	
+	/**
+	 * @return the persistent work queue
+	 */
+	public WorkQueue getQueue() {
+		return queue;
+	}
+	
+	/**
+	 * @return the delay in milliseconds between two checks of the files still without subtitles
+	 */
+	public long getRecheck() {
+		return recheck;
+	}
+	
+	/**
+	 * @param recheck the delay in milliseconds between two checks of the files still without subtitles
+	 */
+	public void setRecheck(long recheck) {
+		this.recheck = recheck;
+	}
+	
+	/**
+	 * @return true if the directory is being watched
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+}
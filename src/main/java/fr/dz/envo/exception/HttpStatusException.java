@@ -0,0 +1,51 @@
+package fr.dz.envo.exception;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Erreur HTTP retournée par un site (statut 4xx ou 5xx)
+ */
+public class HttpStatusException extends EnVOException {
+	
+	private static final long serialVersionUID = 4205785946359024521L;
+	
+	// Constantes
+	public static final int TOO_MANY_REQUESTS = 429;
+	
+	private URL url;
+	private int status;
+	
+	/**
+	 * Constructeur
+	 * @param url
+	 * @param status
+	 */
+	public HttpStatusException(URL url, int status) {
+		super("Erreur HTTP "+status+" pour la requète : "+url);
+		this.url = url;
+		this.status = status;
+	}
+	
+	/**
+	 * Retourne true si le site indique qu'il est surchargé ou qu'il limite les requètes (429, 503)
+	 * @return
+	 */
+	public boolean isOverloaded() {
+		return status == TOO_MANY_REQUESTS || status == HttpURLConnection.HTTP_UNAVAILABLE;
+	}
+	
+	/**
+	 * @return the requested URL
+	 */
+	public URL getURL() {
+		return url;
+	}
+	
+	/**
+	 * @return the HTTP status
+	 */
+	public int getStatus() {
+		return status;
+	}
+}
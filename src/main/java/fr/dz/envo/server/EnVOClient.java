@@ -0,0 +1,153 @@
+package fr.dz.envo.server;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.List;
+
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.util.Configuration;
+
+
+/**
+ * Client du démon EnVO : envoie une requète (arguments de la ligne de commande) et retourne son bilan
+ * Chaque requète commence par le secret du démon, lu dans le fichier créé par celui-ci.
+ * Les arguments désignant un fichier ou un dossier existant sont envoyés en chemin absolu,
+ * le démon ne partageant pas le dossier courant du client.
+ */
+public class EnVOClient {
+	
+	// Constantes
+	private static final int CONNECT_TIMEOUT = 1000;
+	private static final String TIMEOUT_KEY = "server.clientTimeout";
+	private static final int DEFAULT_TIMEOUT = 600000;
+	
+	// Attributs
+	private int port;
+	private File secretFile;
+	private int timeout;
+	
+	/**
+	 * Constructeur à partir de la configuration
+	 */
+	public EnVOClient() {
+		this(Configuration.getInt(EnVOServer.PORT_KEY, EnVOServer.DEFAULT_PORT),
+				Configuration.getFile(EnVOServer.SECRET_FILE_KEY, EnVOServer.DEFAULT_SECRET_FILE),
+				Configuration.getInt(TIMEOUT_KEY, DEFAULT_TIMEOUT));
+	}
+	
+	/**
+	 * Constructeur
+	 * @param port Le port local du démon
+	 * @param secretFile Le fichier du secret du démon
+	 * @param timeout Le temps d'attente maximum de la réponse en millisecondes
+	 */
+	public EnVOClient(int port, File secretFile, int timeout) {
+		this.port = port;
+		this.secretFile = secretFile;
+		this.timeout = timeout;
+	}
+	
+	/**
+	 * Retourne true si le démon accepte les connexions
+	 * @return
+	 */
+	public boolean isAvailable() {
+		try {
+			connect().close();
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Envoie une requète au démon et retourne son bilan
+	 * @param options Les arguments de la requète
+	 * @return
+	 * @throws EnVOException Si la requète est en erreur ou si le démon n'est pas joignable
+	 */
+	public String send(List<String> options) throws EnVOException {
+		StringBuilder line = new StringBuilder();
+		for ( String option : options ) {
+			if ( line.length() > 0 ) {
+				line.append(EnVOServer.SEPARATOR);
+			}
+			File file = new File(option);
+			line.append(file.exists() ? file.getAbsolutePath() : option);
+		}
+		return sendLine(line.toString());
+	}
+	
+	/**
+	 * Arrête le démon
+	 * @throws EnVOException
+	 */
+	public void stop() throws EnVOException {
+		sendLine(EnVOServer.STOP_COMMAND);
+	}
+	
+	/**
+	 * Envoie une ligne au démon et retourne le bilan de sa réponse
+	 * @param line
+	 * @return
+	 * @throws EnVOException
+	 */
+	private String sendLine(String line) throws EnVOException {
+		String secret = EnVOServer.readSecret(secretFile);
+		Socket socket = null;
+		try {
+			socket = connect();
+			socket.setSoTimeout(timeout);
+			Writer writer = new OutputStreamWriter(socket.getOutputStream(), EnVOServer.ENCODING);
+			writer.write(secret + EnVOServer.SEPARATOR + line + "\n");
+			writer.flush();
+			String response = new BufferedReader(new InputStreamReader(socket.getInputStream(), EnVOServer.ENCODING)).readLine();
+			if ( response == null ) {
+				throw new EnVOException("Pas de réponse du démon");
+			}
+			int index = response.indexOf(EnVOServer.SEPARATOR);
+			String status = index < 0 ? response : response.substring(0, index);
+			String message = index < 0 ? "" : response.substring(index + 1);
+			if ( ! EnVOServer.OK.equals(status) ) {
+				throw new EnVOException(message);
+			}
+			return message;
+		} catch (SocketTimeoutException e) {
+			throw new EnVOException("Pas de réponse du démon après "+timeout+" ms", e);
+		} catch (IOException e) {
+			throw new EnVOException("Impossible de joindre le démon sur le port "+port, e);
+		} finally {
+			if ( socket != null ) {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// Rien à faire
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Ouvre une connexion vers le démon
+	 * @return
+	 * @throws IOException
+	 */
+	private Socket connect() throws IOException {
+		Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(InetAddress.getByName(null), port), CONNECT_TIMEOUT);
+			return socket;
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+}
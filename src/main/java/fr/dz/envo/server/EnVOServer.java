@@ -0,0 +1,334 @@
+package fr.dz.envo.server;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import fr.dz.envo.EnVO;
+import fr.dz.envo.api.SearchSubtitlesManager;
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.util.Configuration;
+import fr.dz.envo.util.http.URLFetchers;
+import fr.dz.envo.util.thread.GenericThreadManager.DaemonThreadFactory;
+
+
+/**
+ * Démon EnVO : le contexte Spring, le cache et les connexions HTTP restent prêts entre les requètes,
+ * reçues sur un port local (127.0.0.1 uniquement)
+ * Protocole texte en UTF-8, une requète par connexion :
+ *  - requète : le secret du démon puis les arguments de la ligne de commande séparés par des tabulations,
+ *    sur une ligne (ou le secret puis STOP pour arrêter le démon)
+ *  - réponse : une ligne "OK<tab><bilan>" ou "ERREUR<tab><message>"
+ * Le secret est généré au premier démarrage dans un fichier lisible uniquement par son propriétaire,
+ * seuls les clients de cet utilisateur peuvent donc envoyer des requètes.
+ */
+public class EnVOServer {
+	
+	// Constantes de configuration
+	public static final String PORT_KEY = "server.port";
+	public static final int DEFAULT_PORT = 7417;
+	private static final String THREADS_KEY = "server.threads";
+	private static final int DEFAULT_THREADS = 4;
+	public static final String SECRET_FILE_KEY = "server.secretFile";
+	public static final String DEFAULT_SECRET_FILE = "server.secret";
+	private static final String READ_TIMEOUT_KEY = "server.readTimeout";
+	private static final int DEFAULT_READ_TIMEOUT = 10000;
+	
+	// Constantes du secret
+	private static final int SECRET_LENGTH = 32;
+	private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+	
+	// Constantes du protocole
+	public static final String ENCODING = "UTF-8";
+	public static final String SEPARATOR = "\t";
+	public static final String STOP_COMMAND = "STOP";
+	public static final String OK = "OK";
+	public static final String ERROR = "ERREUR";
+	
+	// Attributs
+	private int port;
+	private int nbThreads;
+	private File secretFile;
+	private byte[] secret;
+	private int readTimeout = Configuration.getInt(READ_TIMEOUT_KEY, DEFAULT_READ_TIMEOUT);
+	private ServerSocket serverSocket;
+	private ExecutorService executor;
+	private volatile boolean running;
+	
+	/**
+	 * Constructeur à partir de la configuration
+	 */
+	public EnVOServer() {
+		this(Configuration.getInt(PORT_KEY, DEFAULT_PORT), Configuration.getInt(THREADS_KEY, DEFAULT_THREADS),
+				Configuration.getFile(SECRET_FILE_KEY, DEFAULT_SECRET_FILE));
+	}
+	
+	/**
+	 * Constructeur
+	 * @param port Le port local d'écoute (0 pour un port libre quelconque)
+	 * @param nbThreads Le nombre de requètes traitées simultanément
+	 * @param secretFile Le fichier du secret attendu en tête de chaque requète (créé s'il n'existe pas)
+	 */
+	public EnVOServer(int port, int nbThreads, File secretFile) {
+		this.port = port;
+		this.nbThreads = Math.max(1, nbThreads);
+		this.secretFile = secretFile;
+	}
+	
+	/**
+	 * Ouvre le port d'écoute et initialise le contexte Spring et les accès HTTP
+	 * @throws EnVOException
+	 */
+	public void start() throws EnVOException {
+		try {
+			secret = createSecret(secretFile).getBytes(ENCODING);
+		} catch (IOException e) {
+			throw new EnVOException("Impossible de lire le secret du démon : "+secretFile, e);
+		}
+		try {
+			serverSocket = new ServerSocket();
+			serverSocket.bind(new InetSocketAddress(InetAddress.getByName(null), port));
+			port = serverSocket.getLocalPort();
+		} catch (IOException e) {
+			throw new EnVOException("Impossible d'écouter sur le port "+port, e);
+		}
+		long start = System.currentTimeMillis();
+		SearchSubtitlesManager.getApplicationContext();
+		URLFetchers.getPageFetcher();
+		executor = Executors.newFixedThreadPool(nbThreads, new DaemonThreadFactory("envo-server-"));
+		running = true;
+		EnVO.LOGGER.info("Démon EnVO prêt en "+(System.currentTimeMillis() - start)+" ms sur le port "+port);
+	}
+	
+	/**
+	 * Traite les requètes jusqu'à l'arrêt du démon
+	 * @throws EnVOException
+	 */
+	public void serve() throws EnVOException {
+		try {
+			while ( running ) {
+				final Socket socket;
+				try {
+					socket = serverSocket.accept();
+				} catch (SocketException e) {
+					// Port fermé par stop()
+					break;
+				}
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						handle(socket);
+					}
+				});
+			}
+		} catch (IOException e) {
+			throw new EnVOException("Erreur pendant l'attente des requètes", e);
+		} finally {
+			stop();
+		}
+		EnVO.LOGGER.info("Démon EnVO arrêté");
+	}
+	
+	/**
+	 * Arrête le démon : plus aucune requète n'est acceptée, celles en cours sont interrompues
+	 */
+	public void stop() {
+		running = false;
+		try {
+			if ( serverSocket != null ) {
+				serverSocket.close();
+			}
+		} catch (IOException e) {
+			// Rien à faire
+		}
+		if ( executor != null ) {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Traite une requète
+	 * @param socket
+	 */
+	protected void handle(Socket socket) {
+		try {
+			// Un client qui n'envoie pas sa requète ne doit pas bloquer un thread du démon
+			socket.setSoTimeout(readTimeout);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), ENCODING));
+			Writer writer = new OutputStreamWriter(socket.getOutputStream(), ENCODING);
+			String line = reader.readLine();
+			String response;
+			if ( line == null ) {
+				// Simple test de connexion du client
+				return;
+			}
+			int index = line.indexOf(SEPARATOR);
+			String request = index < 0 ? "" : line.substring(index + 1);
+			if ( ! MessageDigest.isEqual(secret, (index < 0 ? line : line.substring(0, index)).getBytes(ENCODING)) ) {
+				EnVO.LOGGER.warn("Requète refusée : secret invalide");
+				response = ERROR + SEPARATOR + "Requète non autorisée";
+			} else if ( STOP_COMMAND.equals(request.trim()) ) {
+				response = OK + SEPARATOR + "Arrêt du démon";
+				stop();
+			} else {
+				response = execute(request);
+			}
+			writer.write(response + "\n");
+			writer.flush();
+		} catch (SocketTimeoutException e) {
+			EnVO.LOGGER.warn("Requète abandonnée : aucune requète reçue en "+readTimeout+" ms");
+		} catch (IOException e) {
+			EnVO.LOGGER.warn("Erreur pendant le traitement d'une requète : "+e.getMessage());
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Rien à faire
+			}
+		}
+	}
+	
+	/**
+	 * Exécute une requète et retourne la ligne de réponse
+	 * @param line
+	 * @return
+	 */
+	private String execute(String line) {
+		List<String> options = EnVO.prepareOptions(line.split(SEPARATOR));
+		options.remove(EnVO.VERBOSE_OPTION);
+		if ( containsAny(options, EnVO.DAEMON_OPTION, EnVO.CLIENT_OPTION, EnVO.STOP_OPTION) ) {
+			return ERROR + SEPARATOR + "Option non disponible dans une requète au démon";
+		}
+		EnVO.LOGGER.info("Requète : "+options);
+		try {
+			return OK + SEPARATOR + singleLine(EnVO.execute(options));
+		} catch (EnVOException e) {
+			EnVO.LOGGER.error("Requète en erreur : "+e.getMessage());
+			return ERROR + SEPARATOR + singleLine(e.getMessage());
+		} catch (RuntimeException e) {
+			EnVO.LOGGER.error("Requète en erreur : "+e, e);
+			return ERROR + SEPARATOR + singleLine(e.toString());
+		}
+	}
+	
+	/**
+	 * Lit le secret du démon
+	 * @param file
+	 * @return
+	 * @throws EnVOException Si le fichier est absent, vide ou lisible par d'autres utilisateurs
+	 */
+	public static String readSecret(File file) throws EnVOException {
+		if ( ! file.exists() ) {
+			throw new EnVOException("Secret du démon introuvable : "+file);
+		}
+		try {
+			Path path = file.toPath();
+			if ( isPosix() && ! OWNER_ONLY.containsAll(Files.getPosixFilePermissions(path)) ) {
+				throw new EnVOException("Le secret du démon doit être lisible uniquement par son propriétaire (chmod 600 "+file+")");
+			}
+			String secret = new String(Files.readAllBytes(path), ENCODING).trim();
+			if ( secret.isEmpty() ) {
+				throw new EnVOException("Secret du démon vide : "+file);
+			}
+			return secret;
+		} catch (IOException e) {
+			throw new EnVOException("Impossible de lire le secret du démon : "+file, e);
+		}
+	}
+	
+	/**
+	 * Lit le secret du démon, en le générant s'il n'existe pas encore
+	 * @param file
+	 * @return
+	 * @throws EnVOException
+	 */
+	private static String createSecret(File file) throws EnVOException {
+		if ( ! file.exists() ) {
+			byte[] random = new byte[SECRET_LENGTH];
+			new SecureRandom().nextBytes(random);
+			StringBuilder secret = new StringBuilder();
+			for ( byte b : random ) {
+				secret.append(String.format("%02x", b));
+			}
+			file.getAbsoluteFile().getParentFile().mkdirs();
+			Path path = file.toPath();
+			try {
+				if ( isPosix() ) {
+					Files.createFile(path, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+				} else {
+					Files.createFile(path);
+				}
+				Files.write(path, secret.toString().getBytes(ENCODING));
+				EnVO.LOGGER.info("Secret du démon généré : "+file);
+			} catch (FileAlreadyExistsException e) {
+				// Généré entre temps par un autre démon
+			} catch (IOException e) {
+				throw new EnVOException("Impossible de générer le secret du démon : "+file, e);
+			}
+		}
+		return readSecret(file);
+	}
+	
+	private static boolean isPosix() {
+		return FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+	}
+	
+	private static boolean containsAny(List<String> options, String... values) {
+		for ( String value : values ) {
+			if ( options.contains(value) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static String singleLine(String message) {
+		return message == null ? "" : message.replace('\n', ' ').replace('\r', ' ');
+	}
+	
+	/*
+	 * GETTERS & SETTERS
+	 */
+	
+	/**
+	 * @return the listening port
+	 */
+	public int getPort() {
+		return port;
+	}
+	
+	/**
+	 * @return true while the server accepts requests
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+	
+	/**
+	 * @param readTimeout the maximum time to wait for a request line on a connection, in ms (0 for no limit)
+	 */
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+}
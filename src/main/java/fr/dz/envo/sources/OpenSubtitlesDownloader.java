@@ -12,6 +12,7 @@ import java.util.regex.Pattern;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Service;
 
 import fr.dz.envo.api.AbstractSubtitlesSource;
@@ -21,9 +22,11 @@ import fr.dz.envo.exception.EnVOException;
 
 /**
  * Recherche sur opensubtitles.org
+ * Une instance par requète (scope prototype) car la source conserve l'état de la recherche
  * FIXME Ne fonctionne pas pour les films : "Blood.Diamond.avi"
  */
 @Service("opensubtitles")
+@Scope("prototype")
 public class OpenSubtitlesDownloader extends AbstractSubtitlesSource {
 	
 	// Constantes pour construire l'URL de recherche
@@ -168,16 +171,14 @@ public class OpenSubtitlesDownloader extends AbstractSubtitlesSource {
 			file.setId(fileId);
 			file.setSize(size);
 			file.setFileNames(filenames);
-			result.addFile(getRequest(), file);
+			result.addFile(file);
 		}
 		
 		// Récupération de l'info "Posteur de confiance"
 		// FIXME Gérer les différents statuts d'OpenSubtitles
 		result.setTrusted(false);
 		
-		// Scoring
-		result.doScoring(getRequest());
-		
+		// Le scoring est fait sur l'ensemble des résultats de la source
 		return result;
 	}
 
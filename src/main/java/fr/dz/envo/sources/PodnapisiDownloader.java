@@ -10,6 +10,7 @@ import java.util.List;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Service;
 
 import fr.dz.envo.api.AbstractSubtitlesSource;
@@ -19,9 +20,11 @@ import fr.dz.envo.exception.EnVOException;
 
 /**
  * Recherche sur podnapisi.net
+ * Une instance par requète (scope prototype) car la source conserve l'état de la recherche
  * FIXME Ne fonctionne pas pour les films : "Blood.Diamond.avi"
  */
 @Service("podnapisi")
+@Scope("prototype")
 public class PodnapisiDownloader extends AbstractSubtitlesSource {
 	
 	// Constantes pour construire l'URL de recherche
@@ -132,16 +135,14 @@ public class PodnapisiDownloader extends AbstractSubtitlesSource {
 			file.setId(fileId);
 			file.setSize(size);
 			file.setFileNames(filenames);
-			result.addFile(getRequest(), file);
+			result.addFile(file);
 		}
 		
 		// Récupération de l'info "Posteur de confiance"
 		// FIXME Cette info n'est pas dispo dans Podnapisi, attention à l'effet sur le scoring => utiliser les votes
 		result.setTrusted(false);
 		
-		// Scoring
-		result.doScoring(getRequest());
-		
+		// Le scoring est fait sur l'ensemble des résultats de la source
 		return result;
 	}
 	
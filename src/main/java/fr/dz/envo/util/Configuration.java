@@ -0,0 +1,137 @@
+package fr.dz.envo.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import fr.dz.envo.EnVO;
+
+/**
+ * Accès à la configuration d'EnVO
+ * Les valeurs sont lues dans le fichier envo.properties du classpath et peuvent être surchargées
+ * par des propriétés système préfixées par "envo." (ex : -Denvo.pages.threads=8)
+ */
+public class Configuration {
+
+	// Constantes
+	private static final String CONFIGURATION_FILE = "/envo.properties";
+	private static final String SYSTEM_PROPERTY_PREFIX = "envo.";
+	private static final String USER_DIRECTORY = ".envo";
+
+	// Le contenu du fichier de configuration
+	private static Properties properties;
+
+	/**
+	 * Retourne la valeur d'une clé de configuration
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 */
+	public static String getString(String key, String defaultValue) {
+		String value = System.getProperty(SYSTEM_PROPERTY_PREFIX + key);
+		if ( value == null ) {
+			value = getProperties().getProperty(key);
+		}
+		return value != null ? value.trim() : defaultValue;
+	}
+
+	/**
+	 * Retourne la valeur entière d'une clé de configuration
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 */
+	public static int getInt(String key, int defaultValue) {
+		return (int) getLong(key, defaultValue);
+	}
+
+	/**
+	 * Retourne la valeur entière d'une clé de configuration
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 */
+	public static long getLong(String key, long defaultValue) {
+		String value = getString(key, null);
+		if ( value != null && ! value.isEmpty() ) {
+			try {
+				return Long.parseLong(value);
+			} catch (NumberFormatException e) {
+				EnVO.LOGGER.warn("Valeur invalide pour "+key+" : "+value+", utilisation de la valeur par défaut "+defaultValue);
+			}
+		}
+		return defaultValue;
+	}
+	
+	/**
+	 * Retourne la valeur décimale d'une clé de configuration
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 */
+	public static double getDouble(String key, double defaultValue) {
+		String value = getString(key, null);
+		if ( value != null && ! value.isEmpty() ) {
+			try {
+				return Double.parseDouble(value);
+			} catch (NumberFormatException e) {
+				EnVO.LOGGER.warn("Valeur invalide pour "+key+" : "+value+", utilisation de la valeur par défaut "+defaultValue);
+			}
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Retourne la valeur booléenne d'une clé de configuration
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 */
+	public static boolean getBoolean(String key, boolean defaultValue) {
+		String value = getString(key, null);
+		if ( value != null && ! value.isEmpty() ) {
+			return Boolean.parseBoolean(value);
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Retourne le fichier ou dossier d'une clé de configuration, par défaut dans le dossier ~/.envo de l'utilisateur
+	 * @param key
+	 * @param defaultName Le nom du fichier ou dossier par défaut dans ~/.envo
+	 * @return
+	 */
+	public static File getFile(String key, String defaultName) {
+		String value = getString(key, null);
+		if ( value != null && ! value.isEmpty() ) {
+			return new File(value);
+		}
+		return new File(System.getProperty("user.home") + File.separator + USER_DIRECTORY, defaultName);
+	}
+
+	/**
+	 * Chargement paresseux du fichier de configuration
+	 * @return
+	 */
+	private static synchronized Properties getProperties() {
+		if ( properties == null ) {
+			properties = new Properties();
+			InputStream in = Configuration.class.getResourceAsStream(CONFIGURATION_FILE);
+			if ( in != null ) {
+				try {
+					properties.load(in);
+				} catch (IOException e) {
+					EnVO.LOGGER.warn("Erreur pendant le chargement du fichier de configuration "+CONFIGURATION_FILE, e);
+				} finally {
+					try {
+						in.close();
+					} catch (IOException e) {
+						EnVO.LOGGER.warn("Erreur pendant le chargement du fichier de configuration "+CONFIGURATION_FILE, e);
+					}
+				}
+			}
+		}
+		return properties;
+	}
+}
@@ -0,0 +1,129 @@
+package fr.dz.envo.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.universalchardet.UniversalDetector;
+
+import fr.dz.envo.EnVO;
+
+/**
+ * Détection d'encoding bornée : les données ne sont plus passées au détecteur dès qu'il a atteint
+ * son seuil de confiance (BOM ou probabilité suffisante) ou que le nombre maximum d'octets a été examiné
+ */
+public class EncodingDetector {
+	
+	// Constantes
+	private static final String DETECTION_BYTES_KEY = "encoding.detection.bytes";
+	private static final int DEFAULT_DETECTION_BYTES = 64 * 1024;
+	
+	// Statistiques globales : nombre de détections et d'octets examinés
+	private static final AtomicLong TOTAL_DETECTIONS = new AtomicLong();
+	private static final AtomicLong TOTAL_EXAMINED_BYTES = new AtomicLong();
+	
+	// Attributs
+	private UniversalDetector detector = new UniversalDetector(null);
+	private long maxBytes;
+	private long examinedBytes;
+	private boolean done;
+	private String encoding;
+	
+	/**
+	 * Constructeur utilisant le nombre maximum d'octets configuré
+	 */
+	public EncodingDetector() {
+		this(getDefaultMaxBytes());
+	}
+	
+	/**
+	 * Constructeur
+	 * @param maxBytes Le nombre maximum d'octets examinés
+	 */
+	public EncodingDetector(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+	
+	/**
+	 * Passe des données au détecteur, seule la partie nécessaire à la détection est examinée
+	 * @param buffer
+	 * @param offset
+	 * @param length
+	 * @return true si le détecteur a encore besoin de données
+	 */
+	public boolean handleData(byte[] buffer, int offset, int length) {
+		if ( ! done ) {
+			int examined = (int) Math.min(length, maxBytes - examinedBytes);
+			detector.handleData(buffer, offset, examined);
+			examinedBytes += examined;
+			if ( detector.isDone() || examinedBytes >= maxBytes ) {
+				end();
+			}
+		}
+		return ! done;
+	}
+	
+	/**
+	 * Termine la détection (si ce n'est déjà fait) et retourne l'encoding détecté
+	 * @return L'encoding détecté, null si pas de détection possible
+	 */
+	public String end() {
+		if ( ! done ) {
+			done = true;
+			detector.dataEnd();
+			encoding = detector.getDetectedCharset();
+			detector.reset();
+			
+			// Statistiques
+			TOTAL_DETECTIONS.incrementAndGet();
+			TOTAL_EXAMINED_BYTES.addAndGet(examinedBytes);
+			EnVO.LOGGER.debug("Encoding détecté : "+encoding+" ("+examinedBytes+" octets examinés)");
+		}
+		return encoding;
+	}
+	
+	/**
+	 * Retourne le nombre maximum d'octets examinés configuré
+	 * @return
+	 */
+	public static int getDefaultMaxBytes() {
+		return Configuration.getInt(DETECTION_BYTES_KEY, DEFAULT_DETECTION_BYTES);
+	}
+	
+	/*
+	 * GETTERS
+	 */
+	
+	/**
+	 * @return true when the detection is over
+	 */
+	public boolean isDone() {
+		return done;
+	}
+	
+	/**
+	 * @return the detected encoding (null until the detection is over)
+	 */
+	public String getEncoding() {
+		return encoding;
+	}
+	
+	/**
+	 * @return the number of bytes examined by this detector
+	 */
+	public long getExaminedBytes() {
+		return examinedBytes;
+	}
+	
+	/**
+	 * @return the number of detections done since the start
+	 */
+	public static long getTotalDetections() {
+		return TOTAL_DETECTIONS.get();
+	}
+	
+	/**
+	 * @return the number of bytes examined by every detection since the start
+	 */
+	public static long getTotalExaminedBytes() {
+		return TOTAL_EXAMINED_BYTES.get();
+	}
+}
@@ -13,55 +13,70 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.net.URL;
-import java.net.URLConnection;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
-import org.mozilla.universalchardet.UniversalDetector;
 
 import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.util.http.URLFetchers;
+import fr.dz.envo.util.http.URLResponse;
 
 public class IOUtils {
 	
 	// Constantes
-	private static final String USER_AGENT = "Mozilla/5.0 (X11; Ubuntu; Linux i686; rv:12.0) Gecko/20100101 Firefox/12.0";
 	private static final String DEFAULT_ENCODING = "UTF-8";
 
 	/**
 	 * Sauvegarde un input stream dans un fichier en utilisant l'encoding donné
+	 * L'encoding source est détecté sur le début du flux, puis le flux est converti à la volée en une seule passe
 	 * @param file
 	 * @param srcEncoding
 	 * @param targetEncoding
 	 * @throws EnVOException 
 	 */
 	public static void encodeInputStream(InputStream in, File file, String targetEncoding) throws EnVOException {
-		String sourceEncoding = IOUtils.detectEncodingAndSave(in, file);
+		int detectionBytes = EncodingDetector.getDefaultMaxBytes();
+		BufferedInputStream buffered = new BufferedInputStream(in, detectionBytes);
+		String sourceEncoding;
+		try {
+			// Détection sur le début du flux, qui est ensuite relu depuis le buffer
+			buffered.mark(detectionBytes);
+			sourceEncoding = detectEncoding(buffered, detectionBytes);
+			buffered.reset();
+		} catch (IOException e) {
+			throw new EnVOException("Erreur pendant la sauvegarde dans le fichier : "+file, e);
+		}
 		if ( ! StringUtils.isEmpty(sourceEncoding) && ! sourceEncoding.equals(targetEncoding) ) {
-			IOUtils.changeEncoding(file, sourceEncoding, targetEncoding);
+			transcodeInputStream(buffered, file, sourceEncoding, targetEncoding);
+		} else {
+			saveInputStream(buffered, file);
 		}
 	}
 	
 	/**
-	 * Change l'encoding d'un fichier
+	 * Convertit à la volée un input stream d'un encoding vers un autre dans un fichier
+	 * Le BOM éventuel est supprimé, les caractères non représentables sont traités selon la configuration
+	 * @param in
+	 * @param file
+	 * @param srcEncoding
+	 * @param targetEncoding
+	 * @throws EnVOException
+	 */
+	public static void transcodeInputStream(InputStream in, File file, String srcEncoding, String targetEncoding) throws EnVOException {
+		new Transcoder(srcEncoding, targetEncoding).transcode(in, file);
+	}
+	
+	/**
+	 * Change l'encoding d'un fichier, en flux et sans jamais laisser le fichier à moitié écrit
 	 * @param file
 	 * @param srcEncoding
 	 * @param targetEncoding
 	 * @throws EnVOException 
 	 */
 	public static void changeEncoding(File file, String srcEncoding, String targetEncoding) throws EnVOException {
-		try {
-			String content = FileUtils.readFileToString(file, srcEncoding);
-			
-			// Hack pour supprimer le ? en début de fichier qui apparaît dans certains cas
-			String targetContent = new String(content.getBytes(targetEncoding), targetEncoding);
-			if ( targetContent.startsWith("?") ) {
-				targetContent = targetContent.substring(1);
-			}
-			
-	        FileUtils.write(file, targetContent, targetEncoding);
-		} catch(IOException e) {
-			throw new EnVOException("Erreur pendant la conversion du fichier "+file+" en "+targetEncoding, e);
-		}
+		new Transcoder(srcEncoding, targetEncoding).transcode(file);
 	}
 
 	/**
@@ -115,13 +130,11 @@ public class IOUtils {
 		BufferedInputStream in = null;
 		BufferedOutputStream out = null;
 	    try {
-	    	// Création de la connexion
-			URLConnection connection = url.openConnection();
-	        connection.setRequestProperty("User-Agent", USER_AGENT);
-	        connection.connect();
+	    	// Création de la connexion (les fichiers téléchargés ne passent pas par le cache)
+			URLResponse response = URLFetchers.getHttpFetcher().fetch(url);
 	    	
 	        // Enregistrement du fichier
-			saveInputStream(connection.getInputStream(), file);
+			saveInputStream(response.getInputStream(), file);
 		} catch (Exception e) {
 			throw new EnVOException("Erreur pendant la sauvegarde de l'URL '"+url+"' dans le fichier : "+file, e);
 		} finally {
@@ -144,6 +157,7 @@ public class IOUtils {
 	
 	/**
 	 * Retourne le contenu correspondant à une URL et stocke le résultat dans un fichier à des fins de logs
+	 * Les pages sont récupérées via le cache disque si celui-ci est activé
 	 * @param url
 	 * @param resultFile
 	 * @return
@@ -154,23 +168,22 @@ public class IOUtils {
 		BufferedWriter writer = null;
 		try {
 			// Création de la connexion
-			URLConnection connection = url.openConnection();
-	        connection.setRequestProperty("User-Agent", USER_AGENT);
-	        connection.connect();
+			URLResponse response = URLFetchers.getPageFetcher().fetch(url);
 	        
-	        // Récupération de la page de résultat de la requète
-	        reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), DEFAULT_ENCODING));
+	        // Récupération de la page de résultat de la requète, dans l'encoding déclaré par la réponse
+	        String encoding = response.getCharset() != null ? response.getCharset() : DEFAULT_ENCODING;
+	        reader = new BufferedReader(new InputStreamReader(response.getInputStream(), encoding));
 	        if ( resultFile != null ) {
-	        	writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(resultFile), DEFAULT_ENCODING));
+	        	writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(resultFile), encoding));
 	        }
 	        String line = null;
-	        StringBuffer pageBuffer = new StringBuffer();
+	        StringBuilder pageBuffer = new StringBuilder();
 	        while ( (line=reader.readLine()) != null ) {
 	        	if ( writer != null ) {
 		        	writer.write(line);
 		        	writer.newLine();
 	        	}
-	        	pageBuffer.append(line+"\n");
+	        	pageBuffer.append(line).append('\n');
 	        }
 	        
 	        return pageBuffer.toString();
@@ -217,20 +230,17 @@ public class IOUtils {
 			// Création du flux d'entrée
 			in = new BufferedInputStream(new FileInputStream(file)); 
 		
-			// Lecture du fichier via un detecteur d'encoding
-			UniversalDetector detector = new UniversalDetector(null);
+			// Lecture du début du fichier via un detecteur d'encoding
+			EncodingDetector detector = new EncodingDetector();
 		    int nread;
-		    while ((nread = in.read(buffer)) > 0 && ! detector.isDone()) {
+		    while ( ! detector.isDone() && (nread = in.read(buffer)) > 0 ) {
 		    	
 		    	// Passage des données au détecteur
 		    	detector.handleData(buffer, 0, nread);
 		    }
 		    
 		    // Retour de l'encoding détecté
-		    detector.dataEnd();
-		    String encoding = detector.getDetectedCharset();
-		    detector.reset();
-		    return encoding;
+		    return detector.end();
 		} catch(IOException e) {
 			throw new EnVOException("Erreur pendant la lecture du fichier : "+file, e);
 		} finally {
@@ -244,8 +254,43 @@ public class IOUtils {
 		}
 	}
 	
+	/**
+	 * Détecte l'encoding du début d'un InputStream, en lisant au plus maxBytes octets
+	 * @param in
+	 * @param maxBytes
+	 * @return L'encoding détecté, null si pas de détection possible
+	 * @throws IOException
+	 */
+	private static String detectEncoding(InputStream in, int maxBytes) throws IOException {
+		byte[] buffer = new byte[4096];
+		EncodingDetector detector = new EncodingDetector(maxBytes);
+		int total = 0;
+		int nread;
+		while ( ! detector.isDone() && (nread = in.read(buffer, 0, Math.min(buffer.length, maxBytes - total))) > 0 ) {
+			detector.handleData(buffer, 0, nread);
+			total += nread;
+		}
+		return detector.end();
+	}
+	
+	/**
+	 * Remplace un fichier par un fichier temporaire, de façon atomique si le système le permet :
+	 * le fichier n'est jamais laissé incomplet
+	 * @param temp
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void replaceFile(File temp, File file) throws IOException {
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
 	/**
 	 * Détecte l'encoding d'un InputStream et l'enregistre dans un fichier
+	 * Une fois l'encoding détecté, le reste du flux est recopié sans être examiné
 	 * @param in
 	 * @param file
 	 * @return L'encoding détecté
@@ -259,22 +304,21 @@ public class IOUtils {
 			out = new BufferedOutputStream(new FileOutputStream(file)); 
 		
 			// Lecture du fichier via un detecteur d'encoding
-			UniversalDetector detector = new UniversalDetector(null);
+			EncodingDetector detector = new EncodingDetector();
 		    int nread;
 		    while ((nread = in.read(buffer)) > 0) {
 		    	
-		    	// Passage des données au détecteur
-		    	detector.handleData(buffer, 0, nread);
+		    	// Passage des données au détecteur, tant qu'il en a besoin
+		    	if ( ! detector.isDone() ) {
+		    		detector.handleData(buffer, 0, nread);
+		    	}
 		    	
 		    	// Sauvegarde dans le fichier
 		    	out.write(buffer, 0, nread);
 		    }
 		    
 		    // Retour de l'encoding détecté
-		    detector.dataEnd();
-		    String encoding = detector.getDetectedCharset();
-		    detector.reset();
-		    return encoding;
+		    return detector.end();
 		} catch(IOException e) {
 			throw new EnVOException("Erreur pendant la sauvegarde dans le fichier : "+file, e);
 		} finally {
@@ -2,70 +2,312 @@ package fr.dz.envo.util;
 
 /**
  * Implémentation de la distance de Levenshtein
+ * Deux moteurs sont utilisés selon la taille des chaînes :
+ *  - l'algorithme bit-parallèle de Myers quand l'une des chaînes fait au plus 64 caractères
+ *  - une programmation dynamique limitée à une bande autour de la diagonale, élargie tant que la distance
+ *    dépasse la largeur de la bande, sinon
+ * Les deux donnent exactement la distance historique, y compris sa particularité : le premier caractère
+ * de s1 peut être sauté sans coût (la première colonne vaut j-1 et non j).
+ * Les buffers de travail sont réutilisés d'un appel à l'autre dans chaque thread.
  */
 public class Levenshtein {
-
+	
+	// Constantes
+	private static final int WORD_SIZE = 64;
+	private static final int MIN_BAND_WIDTH = 16;
+	
+	// Buffers de travail de chaque thread
+	private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<Buffers>() {
+		@Override
+		protected Buffers initialValue() {
+			return new Buffers();
+		}
+	};
+	
 	/**
 	 * @param s0 String 0
 	 * @param s1 String 1
 	 * @return La distance de Levenshtein
 	 */
 	public static int distance(String s0, String s1) {
-		int len0 = s0.length()+1;
-		int len1 = s1.length()+1;
-	 
-		// the array of distances
-		int[] cost = new int[len0];
-		int[] newcost = new int[len0];
-	 
-		// initial cost of skipping prefix in String s0
-		for(int i=0;i<len0;i++) cost[i]=i;
-	 
-		// dynamicaly computing the array of distances
-	 
-		// transformation cost for each letter in s1
-		for(int j=1;j<len1;j++) {
-	 
-			// initial cost of skipping prefix in String s1
-			newcost[0]=j-1;
-	 
-			// transformation cost for each letter in s0
-			for(int i=1;i<len0;i++) {
-	 
-				// matching current letters in both strings
-				int match = (s0.charAt(i-1)==s1.charAt(j-1))?0:1;
-	 
-				// computing cost for each transformation
-				int cost_replace = cost[i-1]+match;
-				int cost_insert  = cost[i]+1;
-				int cost_delete  = newcost[i-1]+1;
-	 
-				// keep minimum cost
-				newcost[i] = min(cost_insert, cost_delete, cost_replace);
+		int len0 = s0.length();
+		int len1 = s1.length();
+		if ( len0 == 0 || len1 == 0 ) {
+			return len1 == 0 ? len0 : len1 - 1;
+		}
+		
+		// Bit-parallèle, la chaîne courte sert de motif
+		Buffers buffers = BUFFERS.get();
+		if ( len0 <= WORD_SIZE ) {
+			return myers(s0, s1, false, Integer.MAX_VALUE, buffers);
+		} else if ( len1 <= WORD_SIZE ) {
+			return myers(s1, s0, true, Integer.MAX_VALUE, buffers);
+		}
+		
+		// Bande élargie jusqu'à contenir la distance
+		int maxDistance = Math.max(len0, len1);
+		int width = Math.max(lowerBound(len0, len1), MIN_BAND_WIDTH);
+		while ( width < maxDistance ) {
+			int distance = banded(s0, s1, width, buffers);
+			if ( distance <= width ) {
+				return distance;
 			}
-	 
-			// swap cost/newcost arrays
-			int[] swap=cost; cost=newcost; newcost=swap;
+			width *= 2;
 		}
-	 
-		// the distance is the cost for transforming all letters in both strings
-		return cost[len0-1];
+		return banded(s0, s1, maxDistance, buffers);
 	}
-
+	
+	/**
+	 * Distance bornée : le calcul s'arrête dès qu'il est certain que la distance dépasse la limite
+	 * Permet d'écarter à moindre coût les chaînes qui ne peuvent pas battre la meilleure trouvée
+	 * @param s0 String 0
+	 * @param s1 String 1
+	 * @param limit La distance maximum recherchée (positive ou nulle)
+	 * @return La distance de Levenshtein si elle est inférieure ou égale à limit, limit + 1 sinon
+	 */
+	public static int distanceAtMost(String s0, String s1, int limit) {
+		int len0 = s0.length();
+		int len1 = s1.length();
+		if ( limit >= Math.max(len0, len1) ) {
+			return distance(s0, s1);
+		}
+		
+		// La différence de longueur suffit souvent à écarter la chaîne
+		if ( lowerBound(len0, len1) > limit ) {
+			return limit + 1;
+		}
+		if ( len0 == 0 || len1 == 0 ) {
+			return len1 == 0 ? len0 : len1 - 1;
+		}
+		
+		Buffers buffers = BUFFERS.get();
+		if ( len0 <= WORD_SIZE ) {
+			return myers(s0, s1, false, limit, buffers);
+		} else if ( len1 <= WORD_SIZE ) {
+			return myers(s1, s0, true, limit, buffers);
+		} else {
+			return banded(s0, s1, limit, buffers);
+		}
+	}
+	
 	/**
-	 * 
-	 * @param values
+	 * Minorant de la distance entre deux chaînes à partir de leurs longueurs
+	 * @param len0
+	 * @param len1
 	 * @return
 	 */
-	public static Integer min(Integer... values) {
-		Integer result = null;
-		if ( values != null ) {
-			for ( Integer value : values ) {
-				if ( result == null || value.compareTo(result) < 0 ) {
-					result = value;
+	private static int lowerBound(int len0, int len1) {
+		return len1 > len0 ? len1 - len0 - 1 : len0 - len1;
+	}
+	
+	/**
+	 * Algorithme bit-parallèle de Myers : chaque colonne de la matrice de distances est codée par ses
+	 * différences verticales (+1 / -1) dans deux mots de 64 bits
+	 * @param pattern Le motif (64 caractères au plus, non vide)
+	 * @param text Le texte (non vide)
+	 * @param patternIsS1 true si le motif est s1, dont le premier caractère peut être sauté sans coût
+	 * @param limit
+	 * @param buffers
+	 * @return La distance si elle est inférieure ou égale à limit, limit + 1 sinon
+	 */
+	private static int myers(String pattern, String text, boolean patternIsS1, int limit, Buffers buffers) {
+		int m = pattern.length();
+		buffers.setPattern(pattern);
+		try {
+			long last = 1L << (m - 1);
+			
+			// Première colonne : 0, 1, 2... ou 0, 0, 1... si le motif est s1
+			long pv = patternIsS1 ? ~1L : ~0L;
+			long mv = 0;
+			int score = patternIsS1 ? m - 1 : m;
+			
+			for ( int j = 0; j < text.length(); j++ ) {
+				long eq = buffers.getMask(text.charAt(j));
+				long xv = eq | mv;
+				long xh = (((eq & pv) + pv) ^ pv) | eq;
+				long ph = mv | ~(xh | pv);
+				long mh = pv & xh;
+				if ( (ph & last) != 0 ) {
+					score++;
+				} else if ( (mh & last) != 0 ) {
+					score--;
 				}
+				
+				// Le score baisse au plus de 1 par caractère restant
+				if ( score - (text.length() - j - 1) > limit ) {
+					return limit + 1;
+				}
+				
+				// Différence horizontale de la première ligne : 0 pour le premier caractère de s1, 1 sinon
+				ph <<= 1;
+				mh <<= 1;
+				if ( patternIsS1 || j > 0 ) {
+					ph |= 1;
+				}
+				pv = mh | ~(xv | ph);
+				mv = ph & xv;
+			}
+			return score <= limit ? score : limit + 1;
+		} finally {
+			buffers.clearPattern(pattern);
+		}
+	}
+	
+	/**
+	 * Programmation dynamique limitée aux cellules à moins de limit + 1 de la diagonale, avec arrêt
+	 * dès qu'une ligne entière dépasse la limite
+	 * @param s0
+	 * @param s1
+	 * @param limit
+	 * @param buffers
+	 * @return La distance si elle est inférieure ou égale à limit, limit + 1 sinon
+	 */
+	private static int banded(String s0, String s1, int limit, Buffers buffers) {
+		int len0 = s0.length();
+		int len1 = s1.length();
+		if ( lowerBound(len0, len1) > limit ) {
+			return limit + 1;
+		}
+		
+		// Un chemin passant à plus de limit + 1 de la diagonale coûte plus que limit
+		int width = limit + 1;
+		int infinity = limit + 1;
+		int[] cost = buffers.getCost(len0 + 1);
+		int[] newcost = buffers.getNewCost(len0 + 1);
+		
+		// Coût initial pour sauter un préfixe de s0
+		int hi = Math.min(len0, width);
+		for ( int i = 0; i <= hi; i++ ) {
+			cost[i] = Math.min(i, infinity);
+		}
+		if ( hi < len0 ) {
+			cost[hi + 1] = infinity;
+		}
+		
+		for ( int j = 1; j <= len1; j++ ) {
+			int lo = Math.max(1, j - width);
+			hi = Math.min(len0, j + width);
+			
+			// Coût initial pour sauter un préfixe de s1
+			newcost[lo - 1] = lo == 1 && j <= width ? Math.min(j - 1, infinity) : infinity;
+			int rowMin = newcost[lo - 1];
+			
+			char c1 = s1.charAt(j - 1);
+			for ( int i = lo; i <= hi; i++ ) {
+				int value = cost[i - 1] + (s0.charAt(i - 1) == c1 ? 0 : 1);
+				int insert = cost[i] + 1;
+				if ( insert < value ) {
+					value = insert;
+				}
+				int delete = newcost[i - 1] + 1;
+				if ( delete < value ) {
+					value = delete;
+				}
+				if ( value > infinity ) {
+					value = infinity;
+				}
+				newcost[i] = value;
+				if ( value < rowMin ) {
+					rowMin = value;
+				}
+			}
+			if ( hi < len0 ) {
+				newcost[hi + 1] = infinity;
+			}
+			
+			// Toute la ligne dépasse la limite, la distance finale aussi
+			if ( rowMin > limit ) {
+				return limit + 1;
+			}
+			int[] swap = cost; cost = newcost; newcost = swap;
+		}
+		return Math.min(cost[len0], limit + 1);
+	}
+	
+	/**
+	 * Buffers de travail d'un thread
+	 */
+	private static class Buffers {
+		
+		// Masques des caractères du motif : tableau direct pour les caractères Latin-1, liste pour les autres
+		private long[] latinMasks = new long[256];
+		private char[] otherChars = new char[WORD_SIZE];
+		private long[] otherMasks = new long[WORD_SIZE];
+		private int otherCount;
+		
+		// Lignes de la programmation dynamique
+		private int[] cost = new int[0];
+		private int[] newcost = new int[0];
+		
+		/**
+		 * Calcule les masques de positions de chaque caractère du motif
+		 * @param pattern
+		 */
+		public void setPattern(String pattern) {
+			otherCount = 0;
+			for ( int i = 0; i < pattern.length(); i++ ) {
+				char c = pattern.charAt(i);
+				if ( c < 256 ) {
+					latinMasks[c] |= 1L << i;
+				} else {
+					int index = indexOf(c);
+					if ( index < 0 ) {
+						index = otherCount++;
+						otherChars[index] = c;
+						otherMasks[index] = 0;
+					}
+					otherMasks[index] |= 1L << i;
+				}
+			}
+		}
+		
+		/**
+		 * Remet à zéro les masques du motif
+		 * @param pattern
+		 */
+		public void clearPattern(String pattern) {
+			for ( int i = 0; i < pattern.length(); i++ ) {
+				char c = pattern.charAt(i);
+				if ( c < 256 ) {
+					latinMasks[c] = 0;
+				}
+			}
+			otherCount = 0;
+		}
+		
+		/**
+		 * @param c
+		 * @return Le masque des positions du caractère dans le motif
+		 */
+		public long getMask(char c) {
+			if ( c < 256 ) {
+				return latinMasks[c];
+			}
+			int index = indexOf(c);
+			return index < 0 ? 0 : otherMasks[index];
+		}
+		
+		private int indexOf(char c) {
+			for ( int i = 0; i < otherCount; i++ ) {
+				if ( otherChars[i] == c ) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		
+		public int[] getCost(int size) {
+			if ( cost.length < size ) {
+				cost = new int[size];
+			}
+			return cost;
+		}
+		
+		public int[] getNewCost(int size) {
+			if ( newcost.length < size ) {
+				newcost = new int[size];
 			}
+			return newcost;
 		}
-		return result;
 	}
 }
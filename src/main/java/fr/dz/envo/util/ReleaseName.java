@@ -0,0 +1,242 @@
+package fr.dz.envo.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Découpage d'un nom de release (ex : The.Big.Bang.Theory.S05E22.720p.HDTV.x264-[LOL].mkv) en tokens normalisés
+ * et typés : titre, épisode, année, groupe, résolution, source, codec
+ * Les séparateurs et la casse sont ignorés, les notations d'épisode (S05E22, 5x22) sont unifiées
+ */
+public class ReleaseName {
+	
+	// Constantes
+	private static final Set<String> EXTENSIONS = new HashSet<String>(Arrays.asList(
+			"avi", "mkv", "mp4", "m4v", "mpg", "mpeg", "wmv", "mov", "divx", "ogm", "ts", "srt", "sub", "zip"));
+	private static final Set<String> SOURCES = new HashSet<String>(Arrays.asList(
+			"hdtv", "pdtv", "sdtv", "dsr", "web", "webrip", "webdl", "dl", "bluray", "bdrip", "brrip", "dvdrip", "dvd",
+			"hdrip", "tvrip", "dvdscr", "cam", "hddvd", "remux"));
+	private static final Set<String> CODECS = new HashSet<String>(Arrays.asList(
+			"x264", "h264", "x265", "h265", "hevc", "xvid", "divx", "avc", "aac", "ac3", "dts", "mp3", "10bit"));
+	private static final int MAX_SEASON_DIGITS = 2;
+	private static final int MAX_EPISODE_DIGITS = 3;
+	
+	/**
+	 * Type de token et poids associé pour le calcul de similarité
+	 */
+	public enum Type {
+		TITLE(3), EPISODE(8), YEAR(2), GROUP(3), RESOLUTION(1), SOURCE(2), CODEC(1), OTHER(1);
+		
+		private int weight;
+		
+		private Type(int weight) {
+			this.weight = weight;
+		}
+		
+		public int getWeight() {
+			return weight;
+		}
+	}
+	
+	/**
+	 * Token d'un nom de release
+	 */
+	public static class Token {
+		
+		private Type type;
+		private String value;
+		
+		public Token(Type type, String value) {
+			this.type = type;
+			this.value = value;
+		}
+		
+		/**
+		 * @return the key identifying the token in an index (type and value)
+		 */
+		public String getKey() {
+			return type.name() + ':' + value;
+		}
+		
+		public Type getType() {
+			return type;
+		}
+		
+		public String getValue() {
+			return value;
+		}
+		
+		@Override
+		public String toString() {
+			return getKey();
+		}
+	}
+	
+	/**
+	 * Découpe un nom de fichier en tokens
+	 * Le titre est formé des mots précédant le premier marqueur technique (épisode, année, résolution...),
+	 * le groupe est le dernier mot précédé d'un tiret ou un mot entre crochets / parenthèses
+	 * @param fileName
+	 * @return
+	 */
+	public static List<Token> tokenize(String fileName) {
+		List<Token> tokens = new ArrayList<Token>();
+		String name = removeExtension(fileName.toLowerCase());
+		boolean inTitle = true;
+		int depth = 0;
+		int length = name.length();
+		int i = 0;
+		while ( i < length ) {
+			char c = name.charAt(i);
+			if ( c == '[' || c == '(' ) {
+				depth++;
+				i++;
+			} else if ( c == ']' || c == ')' ) {
+				depth = Math.max(0, depth - 1);
+				i++;
+			} else if ( ! Character.isLetterOrDigit(c) ) {
+				i++;
+			} else {
+				// Mot suivant
+				int start = i;
+				while ( i < length && Character.isLetterOrDigit(name.charAt(i)) ) {
+					i++;
+				}
+				String word = name.substring(start, i);
+				boolean lastAfterDash = ! inTitle && start > 0 && name.charAt(start - 1) == '-' && isLastWord(name, i);
+				
+				// Hors marqueur technique, un mot entre crochets est le groupe et ne termine pas le titre
+				if ( addTechnicalTokens(word, tokens) ) {
+					inTitle = false;
+				} else if ( depth > 0 || lastAfterDash ) {
+					tokens.add(new Token(Type.GROUP, word));
+				} else {
+					tokens.add(new Token(inTitle ? Type.TITLE : Type.OTHER, word));
+				}
+			}
+		}
+		return tokens;
+	}
+	
+	/**
+	 * Ajoute le ou les tokens d'un mot technique (épisode, année, résolution, source, codec)
+	 * @param word
+	 * @param tokens
+	 * @return true si le mot est un marqueur technique
+	 */
+	private static boolean addTechnicalTokens(String word, List<Token> tokens) {
+		int length = word.length();
+		
+		// S01E02, S01E02E03
+		if ( length >= 4 && word.charAt(0) == 's' && isDigit(word.charAt(1)) ) {
+			int index = 1;
+			int season = 0;
+			while ( index < length && index <= MAX_SEASON_DIGITS && isDigit(word.charAt(index)) ) {
+				season = season * 10 + (word.charAt(index++) - '0');
+			}
+			List<Token> episodes = new ArrayList<Token>(1);
+			while ( index < length && word.charAt(index) == 'e' ) {
+				int episodeStart = ++index;
+				int episode = 0;
+				while ( index < length && index - episodeStart < MAX_EPISODE_DIGITS && isDigit(word.charAt(index)) ) {
+					episode = episode * 10 + (word.charAt(index++) - '0');
+				}
+				if ( index == episodeStart ) {
+					return false;
+				}
+				episodes.add(new Token(Type.EPISODE, formatEpisode(season, episode)));
+			}
+			if ( index == length && ! episodes.isEmpty() ) {
+				tokens.addAll(episodes);
+				return true;
+			}
+			return false;
+		}
+		
+		// 1x02
+		int x = word.indexOf('x');
+		if ( x > 0 && x <= MAX_SEASON_DIGITS && x < length - 1 && length - x - 1 <= MAX_EPISODE_DIGITS
+				&& isDigits(word, 0, x) && isDigits(word, x + 1, length) ) {
+			tokens.add(new Token(Type.EPISODE, formatEpisode(parseDigits(word, 0, x), parseDigits(word, x + 1, length))));
+			return true;
+		}
+		
+		// Année
+		if ( length == 4 && isDigits(word, 0, 4) && (word.startsWith("19") || word.startsWith("20")) ) {
+			tokens.add(new Token(Type.YEAR, word));
+			return true;
+		}
+		
+		// 720p, 1080i
+		if ( length >= 4 && length <= 5 && (word.endsWith("p") || word.endsWith("i")) && isDigits(word, 0, length - 1) ) {
+			tokens.add(new Token(Type.RESOLUTION, word.substring(0, length - 1) + 'p'));
+			return true;
+		}
+		
+		if ( SOURCES.contains(word) ) {
+			tokens.add(new Token(Type.SOURCE, word));
+			return true;
+		}
+		if ( CODECS.contains(word) ) {
+			tokens.add(new Token(Type.CODEC, word.charAt(0) == 'h' && length == 4 ? "x" + word.substring(1) : word));
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Notation unique des épisodes : s01e02
+	 * @param season
+	 * @param episode
+	 * @return
+	 */
+	private static String formatEpisode(int season, int episode) {
+		return "s" + (season < 10 ? "0" : "") + season + "e" + (episode < 10 ? "0" : "") + episode;
+	}
+	
+	private static boolean isDigits(String word, int from, int to) {
+		for ( int i = from; i < to; i++ ) {
+			if ( ! isDigit(word.charAt(i)) ) {
+				return false;
+			}
+		}
+		return from < to;
+	}
+	
+	private static int parseDigits(String word, int from, int to) {
+		int value = 0;
+		for ( int i = from; i < to; i++ ) {
+			value = value * 10 + (word.charAt(i) - '0');
+		}
+		return value;
+	}
+	
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+	
+	private static boolean isLastWord(String name, int from) {
+		for ( int i = from; i < name.length(); i++ ) {
+			if ( Character.isLetterOrDigit(name.charAt(i)) ) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Supprime une extension de fichier vidéo ou de sous-titres connue
+	 * @param name
+	 * @return
+	 */
+	private static String removeExtension(String name) {
+		int dot = name.lastIndexOf('.');
+		if ( dot > 0 && EXTENSIONS.contains(name.substring(dot + 1)) ) {
+			return name.substring(0, dot);
+		}
+		return name;
+	}
+}
@@ -0,0 +1,114 @@
+package fr.dz.envo.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.dz.envo.util.ReleaseName.Token;
+
+/**
+ * Index inversé des tokens de noms de release
+ * Chaque nom ajouté reçoit un identifiant (son rang d'ajout), une recherche classe les noms par
+ * recouvrement pondéré de leurs tokens avec ceux du nom recherché
+ */
+public class ReleaseNameIndex {
+	
+	// Attributs
+	private Map<String, Postings> postings = new HashMap<String, Postings>();
+	private int size;
+	
+	/**
+	 * Ajoute un nom à l'index
+	 * @param fileName
+	 * @return L'identifiant du nom dans l'index
+	 */
+	public int add(String fileName) {
+		int id = size++;
+		for ( Token token : ReleaseName.tokenize(fileName) ) {
+			Postings tokenPostings = postings.get(token.getKey());
+			if ( tokenPostings == null ) {
+				tokenPostings = new Postings(token.getType().getWeight());
+				postings.put(token.getKey(), tokenPostings);
+			}
+			tokenPostings.add(id);
+		}
+		return id;
+	}
+	
+	/**
+	 * Recherche les noms les plus proches d'un nom donné
+	 * @param fileName
+	 * @param max Le nombre maximum de noms retournés
+	 * @return Les identifiants des noms, du plus proche au plus éloigné (à score égal, dans l'ordre d'ajout)
+	 */
+	public int[] search(String fileName, int max) {
+		
+		// Score de chaque nom : somme des poids des tokens communs
+		int[] scores = new int[size];
+		Set<String> keys = new HashSet<String>();
+		List<Token> tokens = ReleaseName.tokenize(fileName);
+		for ( Token token : tokens ) {
+			Postings tokenPostings = postings.get(token.getKey());
+			if ( tokenPostings != null && keys.add(token.getKey()) ) {
+				for ( int i = 0; i < tokenPostings.size; i++ ) {
+					scores[tokenPostings.ids[i]] += tokenPostings.weight;
+				}
+			}
+		}
+		
+		// Sélection des meilleurs par insertion dans un tableau trié
+		int count = Math.max(0, Math.min(max, size));
+		int[] result = new int[count];
+		if ( count == 0 ) {
+			return result;
+		}
+		int found = 0;
+		for ( int id = 0; id < size; id++ ) {
+			if ( found == count && scores[id] <= scores[result[count - 1]] ) {
+				continue;
+			}
+			int position = found < count ? found++ : count - 1;
+			while ( position > 0 && scores[result[position - 1]] < scores[id] ) {
+				result[position] = result[position - 1];
+				position--;
+			}
+			result[position] = id;
+		}
+		return result;
+	}
+	
+	/**
+	 * @return the number of names in the index
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Liste des identifiants des noms contenant un token
+	 */
+	private static class Postings {
+		
+		private int weight;
+		private int[] ids = new int[4];
+		private int size;
+		
+		public Postings(int weight) {
+			this.weight = weight;
+		}
+		
+		public void add(int id) {
+			// Un token répété dans un même nom ne compte qu'une fois
+			if ( size > 0 && ids[size - 1] == id ) {
+				return;
+			}
+			if ( size == ids.length ) {
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size++] = id;
+		}
+	}
+}
@@ -0,0 +1,247 @@
+package fr.dz.envo.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import fr.dz.envo.exception.EnVOException;
+
+/**
+ * Conversion en flux d'un encoding vers un autre
+ * Le BOM éventuel de la source est supprimé (et ajouté à la cible si configuré), les caractères
+ * non représentables dans l'encoding cible sont traités selon la politique configurée.
+ * Le résultat est écrit dans un fichier temporaire renommé à la fin, un fichier n'est donc jamais
+ * laissé à moitié écrit.
+ */
+public class Transcoder {
+	
+	// Constantes
+	private static final String UNMAPPABLE_KEY = "encoding.unmappable";
+	private static final String DEFAULT_UNMAPPABLE = "replace";
+	private static final String BOM_KEY = "encoding.bom";
+	private static final String TEMP_PREFIX = "envo";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final char BOM = '\uFEFF';
+	private static final int BUFFER_SIZE = 8192;
+	
+	// Attributs
+	private Charset sourceCharset;
+	private Charset targetCharset;
+	private CodingErrorAction unmappableAction;
+	private boolean writeBOM;
+	
+	/**
+	 * Constructeur utilisant la politique configurée pour les caractères non représentables
+	 * @param sourceEncoding
+	 * @param targetEncoding
+	 * @throws EnVOException
+	 */
+	public Transcoder(String sourceEncoding, String targetEncoding) throws EnVOException {
+		this(sourceEncoding, targetEncoding, getUnmappableAction(Configuration.getString(UNMAPPABLE_KEY, DEFAULT_UNMAPPABLE)),
+				Configuration.getBoolean(BOM_KEY, false));
+	}
+	
+	/**
+	 * Constructeur
+	 * @param sourceEncoding
+	 * @param targetEncoding
+	 * @param unmappableAction Traitement des caractères non représentables (remplacés par '?', ignorés ou en erreur)
+	 * @param writeBOM true pour écrire un BOM si l'encoding cible est un encoding Unicode
+	 * @throws EnVOException
+	 */
+	public Transcoder(String sourceEncoding, String targetEncoding, CodingErrorAction unmappableAction, boolean writeBOM) throws EnVOException {
+		try {
+			this.sourceCharset = Charset.forName(sourceEncoding);
+			this.targetCharset = Charset.forName(targetEncoding);
+		} catch (IllegalArgumentException e) {
+			throw new EnVOException("Encoding non supporté : "+sourceEncoding+" ou "+targetEncoding, e);
+		}
+		this.unmappableAction = unmappableAction;
+		this.writeBOM = writeBOM;
+	}
+	
+	/**
+	 * Convertit un fichier sur place
+	 * @param file
+	 * @throws EnVOException
+	 */
+	public void transcode(File file) throws EnVOException {
+		try {
+			transcode(new FileInputStream(file), file);
+		} catch (IOException e) {
+			throw new EnVOException("Erreur pendant la conversion du fichier "+file+" en "+targetCharset, e);
+		}
+	}
+	
+	/**
+	 * Convertit un flux dans un fichier, via un fichier temporaire renommé à la fin
+	 * Le flux est fermé à la fin de la conversion
+	 * @param in
+	 * @param destination
+	 * @throws EnVOException
+	 */
+	public void transcode(InputStream in, File destination) throws EnVOException {
+		File temp = null;
+		try {
+			temp = File.createTempFile(TEMP_PREFIX, TEMP_SUFFIX, destination.getAbsoluteFile().getParentFile());
+			OutputStream out = new FileOutputStream(temp);
+			try {
+				transcode(in, out);
+			} finally {
+				out.close();
+			}
+			IOUtils.replaceFile(temp, destination);
+		} catch (IOException e) {
+			throw new EnVOException("Erreur pendant la conversion du fichier "+destination+" en "+targetCharset, e);
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// Rien à faire, la conversion est terminée
+			}
+			if ( temp != null ) {
+				temp.delete();
+			}
+		}
+	}
+	
+	/**
+	 * Convertit un flux dans un autre
+	 * @param in
+	 * @param out
+	 * @throws IOException
+	 */
+	public void transcode(InputStream in, OutputStream out) throws IOException {
+		CharsetDecoder decoder = sourceCharset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharsetEncoder encoder = targetCharset.newEncoder()
+				.onMalformedInput(unmappableAction)
+				.onUnmappableCharacter(unmappableAction);
+		ByteBuffer inBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+		CharBuffer charBuffer = CharBuffer.allocate(BUFFER_SIZE);
+		ByteBuffer outBuffer = ByteBuffer.allocate((int) Math.ceil(BUFFER_SIZE * encoder.maxBytesPerChar()));
+		
+		// BOM de la cible
+		if ( writeBOM && targetCharset.name().startsWith("UTF") ) {
+			checkResult(encoder.encode(CharBuffer.wrap(new char[] { BOM }), outBuffer, false));
+		}
+		
+		// Décodage et encodage au fil de la lecture
+		boolean first = true;
+		boolean endOfInput = false;
+		while ( ! endOfInput ) {
+			int nbRead = in.read(inBuffer.array(), inBuffer.arrayOffset() + inBuffer.position(), inBuffer.remaining());
+			if ( nbRead == -1 ) {
+				endOfInput = true;
+			} else {
+				inBuffer.position(inBuffer.position() + nbRead);
+			}
+			inBuffer.flip();
+			CoderResult result;
+			do {
+				result = decoder.decode(inBuffer, charBuffer, endOfInput);
+				if ( result.isError() ) {
+					result.throwException();
+				}
+				first = encode(encoder, charBuffer, outBuffer, out, first);
+			} while ( result.isOverflow() );
+			inBuffer.compact();
+		}
+		while ( decoder.flush(charBuffer).isOverflow() ) {
+			first = encode(encoder, charBuffer, outBuffer, out, first);
+		}
+		encode(encoder, charBuffer, outBuffer, out, first);
+		
+		// Fin de l'encodage
+		charBuffer.flip();
+		checkResult(encoder.encode(charBuffer, outBuffer, true));
+		while ( encoder.flush(outBuffer).isOverflow() ) {
+			write(outBuffer, out);
+		}
+		write(outBuffer, out);
+	}
+	
+	/**
+	 * Encode les caractères décodés dans le flux de sortie
+	 * @param encoder
+	 * @param charBuffer Le buffer de caractères, en mode écriture
+	 * @param outBuffer
+	 * @param out
+	 * @param first true si aucun caractère n'a encore été lu depuis la source
+	 * @return true si aucun caractère n'a encore été lu depuis la source
+	 * @throws IOException
+	 */
+	private boolean encode(CharsetEncoder encoder, CharBuffer charBuffer, ByteBuffer outBuffer, OutputStream out, boolean first) throws IOException {
+		charBuffer.flip();
+		
+		// Suppression du BOM de la source
+		if ( first && charBuffer.hasRemaining() ) {
+			first = false;
+			if ( charBuffer.get(charBuffer.position()) == BOM ) {
+				charBuffer.get();
+			}
+		}
+		
+		CoderResult result;
+		do {
+			result = encoder.encode(charBuffer, outBuffer, false);
+			checkResult(result);
+			if ( result.isOverflow() ) {
+				write(outBuffer, out);
+			}
+		} while ( result.isOverflow() );
+		write(outBuffer, out);
+		charBuffer.compact();
+		return first;
+	}
+	
+	/**
+	 * Remonte une erreur d'encodage
+	 * @param result
+	 * @throws CharacterCodingException
+	 */
+	private void checkResult(CoderResult result) throws CharacterCodingException {
+		if ( result.isError() ) {
+			result.throwException();
+		}
+	}
+	
+	/**
+	 * Ecrit le contenu d'un buffer dans le flux de sortie
+	 * @param buffer
+	 * @param out
+	 * @throws IOException
+	 */
+	private void write(ByteBuffer buffer, OutputStream out) throws IOException {
+		buffer.flip();
+		out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		buffer.clear();
+	}
+	
+	/**
+	 * Retourne le traitement des caractères non représentables à partir de son nom
+	 * @param name replace, ignore ou report
+	 * @return
+	 */
+	public static CodingErrorAction getUnmappableAction(String name) {
+		if ( "ignore".equalsIgnoreCase(name) ) {
+			return CodingErrorAction.IGNORE;
+		} else if ( "report".equalsIgnoreCase(name) ) {
+			return CodingErrorAction.REPORT;
+		} else {
+			return CodingErrorAction.REPLACE;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package fr.dz.envo.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+
+import fr.dz.envo.EnVO;
+import fr.dz.envo.exception.EnVOException;
+
+
+/**
+ * File de travail persistante : liste ordonnée et sans doublon d'éléments, enregistrée dans un fichier texte
+ * (un élément par ligne) à chaque modification pour survivre à un arrêt du programme
+ * Le fichier est réécrit via un fichier temporaire renommé, il n'est jamais laissé à moitié écrit.
+ */
+public class WorkQueue {
+	
+	// Constantes
+	private static final String ENCODING = "UTF-8";
+	private static final String TEMP_SUFFIX = ".tmp";
+	
+	// Attributs
+	private File file;
+	private Set<String> items = new LinkedHashSet<String>();
+	
+	/**
+	 * Constructeur, charge les éléments déjà présents dans le fichier
+	 * @param file
+	 * @throws EnVOException
+	 */
+	public WorkQueue(File file) throws EnVOException {
+		this.file = file;
+		if ( file.exists() ) {
+			try {
+				for ( String line : FileUtils.readLines(file, ENCODING) ) {
+					if ( ! line.trim().isEmpty() ) {
+						items.add(line.trim());
+					}
+				}
+			} catch (IOException e) {
+				throw new EnVOException("Erreur pendant la lecture de la file de travail "+file, e);
+			}
+		}
+	}
+	
+	/**
+	 * Ajoute un élément en fin de file
+	 * @param item
+	 * @return false si l'élément était déjà présent
+	 */
+	public synchronized boolean add(String item) {
+		if ( items.add(item) ) {
+			save();
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Ajoute des éléments en fin de file, avec un seul enregistrement du fichier
+	 * @param newItems
+	 * @return les éléments qui n'étaient pas déjà présents, dans l'ordre d'ajout
+	 */
+	public synchronized List<String> addAll(Collection<String> newItems) {
+		List<String> added = new ArrayList<String>();
+		for ( String item : newItems ) {
+			if ( items.add(item) ) {
+				added.add(item);
+			}
+		}
+		if ( ! added.isEmpty() ) {
+			save();
+		}
+		return added;
+	}
+	
+	/**
+	 * Retire un élément de la file
+	 * @param item
+	 * @return false si l'élément n'était pas présent
+	 */
+	public synchronized boolean remove(String item) {
+		if ( items.remove(item) ) {
+			save();
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Retourne true si l'élément est dans la file
+	 * @param item
+	 * @return
+	 */
+	public synchronized boolean contains(String item) {
+		return items.contains(item);
+	}
+	
+	/**
+	 * Retourne une copie des éléments de la file, dans l'ordre d'ajout
+	 * @return
+	 */
+	public synchronized List<String> getItems() {
+		return new ArrayList<String>(items);
+	}
+	
+	public synchronized int size() {
+		return items.size();
+	}
+	
+	/**
+	 * Enregistre la file dans son fichier
+	 * Une erreur d'écriture n'interrompt pas le traitement, seule la reprise après arrêt est compromise
+	 */
+	private void save() {
+		File temp = new File(file.getPath() + TEMP_SUFFIX);
+		try {
+			if ( file.getAbsoluteFile().getParentFile() != null ) {
+				file.getAbsoluteFile().getParentFile().mkdirs();
+			}
+			FileUtils.writeLines(temp, ENCODING, items);
+			IOUtils.replaceFile(temp, file);
+		} catch (IOException e) {
+			EnVO.LOGGER.warn("Impossible d'enregistrer la file de travail "+file+" : "+e.getMessage());
+		}
+	}
+	
+	/*
+	 * GETTERS & SETTERS
+	 */
+	
+	/**
+	 * @return the file where the queue is saved
+	 */
+	public File getFile() {
+		return file;
+	}
+}
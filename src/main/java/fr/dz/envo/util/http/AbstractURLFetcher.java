@@ -0,0 +1,17 @@
+package fr.dz.envo.util.http;
+
+import java.net.URL;
+
+import fr.dz.envo.exception.EnVOException;
+
+
+/**
+ * Classe de base des URLFetcher
+ */
+public abstract class AbstractURLFetcher implements URLFetcher {
+	
+	@Override
+	public URLResponse fetch(URL url) throws EnVOException {
+		return fetch(url, null);
+	}
+}
@@ -0,0 +1,330 @@
+package fr.dz.envo.util.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+import fr.dz.envo.EnVO;
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.util.Configuration;
+
+
+/**
+ * Cache disque des pages récupérées par un autre URLFetcher
+ * Chaque page est stockée sous un nom dérivé de son URL (SHA-1), avec un fichier de méta-données.
+ * La durée de validité dépend de l'URL, une page expirée est revalidée par une requète conditionnelle
+ * (ETag / Last-Modified) et les pages les moins récemment utilisées sont supprimées au-delà de la taille maximum.
+ */
+public class CachingURLFetcher extends AbstractURLFetcher {
+	
+	// Constantes de configuration
+	private static final String DIRECTORY_KEY = "cache.directory";
+	private static final String MAX_SIZE_KEY = "cache.maxSize";
+	private static final long DEFAULT_MAX_SIZE = 100L * 1024 * 1024;
+	private static final String TTL_KEY = "cache.ttl";
+	private static final long DEFAULT_TTL = 3600;
+	private static final String TTL_RULE_PREFIX = "cache.ttl.";
+	private static final String TTL_RULE_PATTERN_SUFFIX = ".pattern";
+	private static final String TTL_RULE_SECONDS_SUFFIX = ".seconds";
+	
+	// Constantes du cache
+	private static final String URL_META = "url";
+	private static final String DATE_META = "date";
+	private static final String ETAG_HEADER = "ETag";
+	private static final String LAST_MODIFIED_HEADER = "Last-Modified";
+	private static final String[] CACHED_HEADERS = {URLResponse.CONTENT_TYPE_HEADER, ETAG_HEADER, LAST_MODIFIED_HEADER};
+	private static final double EVICTION_RATIO = 0.9;
+	
+	// Attributs
+	private URLFetcher delegate;
+	private URLResponseStore store;
+	private long maxSize;
+	private long defaultTTL;
+	private Map<Pattern,Long> ttlRules = new LinkedHashMap<Pattern,Long>();
+	private long size = -1;
+	
+	/**
+	 * Constructeur à partir de la configuration
+	 * @param delegate L'URLFetcher utilisé quand la page n'est pas en cache
+	 */
+	public CachingURLFetcher(URLFetcher delegate) {
+		this(delegate, Configuration.getFile(DIRECTORY_KEY, "cache"),
+				Configuration.getLong(MAX_SIZE_KEY, DEFAULT_MAX_SIZE), Configuration.getLong(TTL_KEY, DEFAULT_TTL));
+		
+		// Règles de durée de validité par motif d'URL : cache.ttl.<n>.pattern / cache.ttl.<n>.seconds
+		for ( int i = 1; Configuration.getString(TTL_RULE_PREFIX + i + TTL_RULE_PATTERN_SUFFIX, null) != null; i++ ) {
+			addTTLRule(Configuration.getString(TTL_RULE_PREFIX + i + TTL_RULE_PATTERN_SUFFIX, null),
+					Configuration.getLong(TTL_RULE_PREFIX + i + TTL_RULE_SECONDS_SUFFIX, defaultTTL));
+		}
+	}
+	
+	/**
+	 * Constructeur
+	 * @param delegate L'URLFetcher utilisé quand la page n'est pas en cache
+	 * @param directory Le dossier du cache
+	 * @param maxSize La taille maximum du cache en octets
+	 * @param defaultTTL La durée de validité par défaut en secondes (0 pour ne pas mettre en cache)
+	 */
+	public CachingURLFetcher(URLFetcher delegate, File directory, long maxSize, long defaultTTL) {
+		this.delegate = delegate;
+		this.store = new URLResponseStore(directory);
+		this.maxSize = maxSize;
+		this.defaultTTL = defaultTTL;
+	}
+	
+	/**
+	 * Ajoute une règle de durée de validité pour les URL correspondant à une expression régulière
+	 * @param pattern
+	 * @param seconds (0 pour ne pas mettre en cache)
+	 */
+	public void addTTLRule(String pattern, long seconds) {
+		ttlRules.put(Pattern.compile(pattern), seconds);
+	}
+	
+	@Override
+	public URLResponse fetch(URL url, Map<String,String> headers) throws EnVOException {
+		
+		// Pas de cache pour les URL non HTTP ou dont la durée de validité est nulle
+		long ttl = getTTL(url);
+		if ( ttl <= 0 || ! url.getProtocol().startsWith("http") ) {
+			return delegate.fetch(url, headers);
+		}
+		
+		// Page en cache et encore valide
+		String key = store.getKey(url);
+		Properties meta = readMeta(key);
+		if ( meta != null && System.currentTimeMillis() - getDate(meta) < ttl * 1000 ) {
+			EnVO.LOGGER.debug("Page en cache : "+url);
+			return createCachedResponse(url, key, meta);
+		}
+		
+		// Sinon, requète éventuellement conditionnelle
+		Map<String,String> requestHeaders = new HashMap<String,String>();
+		if ( headers != null ) {
+			requestHeaders.putAll(headers);
+		}
+		if ( meta != null ) {
+			if ( meta.getProperty(ETAG_HEADER) != null ) {
+				requestHeaders.put("If-None-Match", meta.getProperty(ETAG_HEADER));
+			}
+			if ( meta.getProperty(LAST_MODIFIED_HEADER) != null ) {
+				requestHeaders.put("If-Modified-Since", meta.getProperty(LAST_MODIFIED_HEADER));
+			}
+		}
+		URLResponse response;
+		try {
+			response = delegate.fetch(url, requestHeaders);
+		} catch (EnVOException e) {
+			// Une page expirée vaut mieux que pas de page du tout
+			if ( meta != null ) {
+				EnVO.LOGGER.warn("Utilisation de la page expirée en cache suite à une erreur : "+url);
+				return createCachedResponse(url, key, meta);
+			}
+			throw e;
+		}
+		
+		// Contenu inchangé : on prolonge la validité de la page en cache
+		if ( meta != null && response.isNotModified() ) {
+			close(response);
+			EnVO.LOGGER.debug("Page en cache revalidée : "+url);
+			meta.setProperty(DATE_META, String.valueOf(System.currentTimeMillis()));
+			writeMeta(key, meta);
+			return createCachedResponse(url, key, meta);
+		}
+		
+		// Nouveau contenu : mise en cache
+		if ( response.getStatus() == HttpURLConnection.HTTP_OK ) {
+			return store(url, key, response);
+		} else {
+			return response;
+		}
+	}
+	
+	/**
+	 * Retourne la durée de validité en secondes d'une URL
+	 * @param url
+	 * @return
+	 */
+	protected long getTTL(URL url) {
+		String externalForm = url.toExternalForm();
+		for ( Map.Entry<Pattern,Long> rule : ttlRules.entrySet() ) {
+			if ( rule.getKey().matcher(externalForm).find() ) {
+				return rule.getValue();
+			}
+		}
+		return defaultTTL;
+	}
+	
+	/**
+	 * Vide le cache
+	 */
+	public synchronized void clear() {
+		store.clear();
+		size = 0;
+	}
+	
+	/*
+	 * METHODES DE GESTION DU CACHE
+	 */
+	
+	/**
+	 * Enregistre le contenu de la réponse dans le cache et retourne la réponse lue depuis le cache
+	 * @param url
+	 * @param key
+	 * @param response
+	 * @return
+	 * @throws EnVOException
+	 */
+	private URLResponse store(URL url, String key, URLResponse response) throws EnVOException {
+		File temp = null;
+		try {
+			// Copie du contenu dans un fichier temporaire
+			temp = store.writeTemp(key, response.getInputStream());
+			
+			// Méta-données
+			Properties meta = new Properties();
+			meta.setProperty(URL_META, url.toExternalForm());
+			meta.setProperty(DATE_META, String.valueOf(System.currentTimeMillis()));
+			for ( String header : CACHED_HEADERS ) {
+				if ( response.getHeader(header) != null ) {
+					meta.setProperty(header, response.getHeader(header));
+				}
+			}
+			
+			// Remplacement de l'entrée du cache
+			synchronized (this) {
+				File data = store.getDataFile(key);
+				long previousSize = data.exists() ? data.length() : 0;
+				store.replaceData(key, temp);
+				writeMeta(key, meta);
+				addSize(data.length() - previousSize);
+			}
+			return createCachedResponse(url, key, meta);
+		} catch (IOException e) {
+			throw new EnVOException("Erreur pendant la mise en cache de : "+url, e);
+		} finally {
+			close(response);
+			if ( temp != null ) {
+				temp.delete();
+			}
+		}
+	}
+	
+	/**
+	 * Crée une réponse à partir d'une page en cache et la marque comme récemment utilisée
+	 * @param url
+	 * @param key
+	 * @param meta
+	 * @return
+	 * @throws EnVOException
+	 */
+	private URLResponse createCachedResponse(URL url, String key, Properties meta) throws EnVOException {
+		try {
+			store.getDataFile(key).setLastModified(System.currentTimeMillis());
+			URLResponse response = new URLResponse(url, HttpURLConnection.HTTP_OK, store.openData(key));
+			for ( String header : CACHED_HEADERS ) {
+				response.setHeader(header, meta.getProperty(header));
+			}
+			return response;
+		} catch (IOException e) {
+			throw new EnVOException("Erreur pendant la lecture du cache pour : "+url, e);
+		}
+	}
+	
+	/**
+	 * Ajoute la taille d'une nouvelle entrée et supprime les entrées les moins récemment utilisées si nécessaire
+	 * @param delta
+	 */
+	private synchronized void addSize(long delta) {
+		if ( size < 0 ) {
+			size = 0;
+			for ( File data : store.getDataFiles() ) {
+				size += data.length();
+			}
+		} else {
+			size += delta;
+		}
+		if ( size > maxSize ) {
+			List<File> files = store.getDataFiles();
+			Collections.sort(files, new Comparator<File>() {
+				@Override
+				public int compare(File file1, File file2) {
+					return Long.valueOf(file1.lastModified()).compareTo(file2.lastModified());
+				}
+			});
+			for ( File data : files ) {
+				if ( size <= maxSize * EVICTION_RATIO ) {
+					break;
+				}
+				long length = data.length();
+				if ( store.delete(store.getKey(data)) ) {
+					size -= length;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Lit les méta-données d'une entrée du cache, null si absente
+	 * @param key
+	 * @return
+	 */
+	private synchronized Properties readMeta(String key) {
+		if ( ! store.getDataFile(key).exists() ) {
+			return null;
+		}
+		try {
+			return store.readMeta(key);
+		} catch (IOException e) {
+			EnVO.LOGGER.warn("Entrée du cache illisible : "+store.getMetaFile(key));
+			return null;
+		}
+	}
+	
+	/**
+	 * Ecrit les méta-données d'une entrée du cache
+	 * @param key
+	 * @param meta
+	 */
+	private synchronized void writeMeta(String key, Properties meta) {
+		try {
+			store.writeMeta(key, meta);
+		} catch (IOException e) {
+			EnVO.LOGGER.warn("Impossible d'écrire l'entrée du cache : "+store.getMetaFile(key));
+		}
+	}
+	
+	/**
+	 * Retourne la date de récupération d'une entrée du cache
+	 * @param meta
+	 * @return
+	 */
+	private long getDate(Properties meta) {
+		try {
+			return Long.parseLong(meta.getProperty(DATE_META, "0"));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+	
+	/**
+	 * Ferme une réponse sans remonter d'erreur
+	 * @param response
+	 */
+	private void close(URLResponse response) {
+		try {
+			response.close();
+		} catch (IOException e) {
+			// Rien à faire
+		}
+	}
+}
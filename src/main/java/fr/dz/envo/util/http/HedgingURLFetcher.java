@@ -0,0 +1,222 @@
+package fr.dz.envo.util.http;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import fr.dz.envo.EnVO;
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.util.Configuration;
+import fr.dz.envo.util.thread.GenericThreadManager.DaemonThreadFactory;
+
+
+/**
+ * Requètes doublées d'un autre URLFetcher : quand une requète n'a pas répondu dans le délai correspondant au
+ * percentile configuré des temps de réponse récents du site (95 % par défaut), une seconde requète identique
+ * est envoyée et la première réponse reçue est retenue, l'autre est fermée à son arrivée.
+ * Tant que trop peu de temps de réponse ont été mesurés pour un site, les requètes ne sont pas doublées.
+ */
+public class HedgingURLFetcher extends AbstractURLFetcher {
+	
+	// Constantes de configuration
+	public static final String ENABLED_KEY = "hedge.enabled";
+	private static final String PERCENTILE_KEY = "hedge.percentile";
+	private static final int DEFAULT_PERCENTILE = 95;
+	private static final String MIN_SAMPLES_KEY = "hedge.minSamples";
+	private static final int DEFAULT_MIN_SAMPLES = 20;
+	private static final String MIN_DELAY_KEY = "hedge.minDelay";
+	private static final long DEFAULT_MIN_DELAY = 200;
+	
+	// Constantes
+	private static final int SAMPLES = 100;
+	
+	// Les threads exécutant les requètes, partagés par tous les URLFetcher
+	private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new DaemonThreadFactory("hedge-"));
+	
+	// Attributs
+	private URLFetcher delegate;
+	private int percentile;
+	private int minSamples;
+	private long minDelay;
+	private ConcurrentMap<String,Latencies> latencies = new ConcurrentHashMap<String,Latencies>();
+	
+	/**
+	 * Constructeur à partir de la configuration
+	 * @param delegate
+	 */
+	public HedgingURLFetcher(URLFetcher delegate) {
+		this(delegate, Configuration.getInt(PERCENTILE_KEY, DEFAULT_PERCENTILE), Configuration.getInt(MIN_SAMPLES_KEY, DEFAULT_MIN_SAMPLES),
+				Configuration.getLong(MIN_DELAY_KEY, DEFAULT_MIN_DELAY));
+	}
+	
+	/**
+	 * Constructeur
+	 * @param delegate
+	 * @param percentile Le percentile des temps de réponse au-delà duquel la requète est doublée
+	 * @param minSamples Le nombre de temps de réponse mesurés pour un site avant de doubler ses requètes
+	 * @param minDelay Le délai minimum en millisecondes avant de doubler une requète
+	 */
+	public HedgingURLFetcher(URLFetcher delegate, int percentile, int minSamples, long minDelay) {
+		this.delegate = delegate;
+		this.percentile = percentile;
+		this.minSamples = Math.min(minSamples, SAMPLES);
+		this.minDelay = minDelay;
+	}
+	
+	@Override
+	public URLResponse fetch(final URL url, final Map<String,String> headers) throws EnVOException {
+		final Latencies siteLatencies = getLatencies(url.getHost());
+		long threshold = siteLatencies.getPercentile(percentile, minSamples);
+		
+		// Pas assez de mesures : requète simple
+		if ( threshold < 0 ) {
+			long start = System.currentTimeMillis();
+			URLResponse response = delegate.fetch(url, headers);
+			siteLatencies.add(System.currentTimeMillis() - start);
+			return response;
+		}
+		
+		// La première requète terminée avec succès est retenue, la réponse de l'autre est fermée
+		final AtomicBoolean answered = new AtomicBoolean();
+		Callable<URLResponse> request = new Callable<URLResponse>() {
+			@Override
+			public URLResponse call() throws EnVOException {
+				long start = System.currentTimeMillis();
+				URLResponse response = delegate.fetch(url, headers);
+				siteLatencies.add(System.currentTimeMillis() - start);
+				if ( ! answered.compareAndSet(false, true) ) {
+					close(response);
+					return null;
+				}
+				return response;
+			}
+		};
+		CompletionService<URLResponse> completionService = new ExecutorCompletionService<URLResponse>(EXECUTOR);
+		Future<URLResponse> first = completionService.submit(request);
+		Future<URLResponse> second = null;
+		EnVOException error = null;
+		try {
+			Future<URLResponse> done = completionService.poll(Math.max(threshold, minDelay), TimeUnit.MILLISECONDS);
+			if ( done == null ) {
+				EnVO.LOGGER.debug("Pas de réponse après "+Math.max(threshold, minDelay)+" ms, requète doublée : "+url);
+				second = completionService.submit(request);
+			}
+			int pending = second == null ? 1 : 2;
+			while ( pending > 0 ) {
+				if ( done == null ) {
+					done = completionService.take();
+				}
+				pending--;
+				try {
+					URLResponse response = done.get();
+					if ( response != null ) {
+						return response;
+					}
+				} catch (ExecutionException e) {
+					if ( error == null ) {
+						error = e.getCause() instanceof EnVOException ? (EnVOException) e.getCause()
+								: new EnVOException("Erreur pendant l'exécution de la requète : "+url, e.getCause());
+					}
+				}
+				done = null;
+			}
+			throw error;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			answered.set(true);
+			cancel(first);
+			cancel(second);
+			throw new EnVOException("Requète interrompue : "+url, e);
+		}
+	}
+	
+	/**
+	 * Retourne les temps de réponse mesurés pour un site
+	 * @param host
+	 * @return
+	 */
+	private Latencies getLatencies(String host) {
+		Latencies result = latencies.get(host);
+		if ( result == null ) {
+			result = new Latencies();
+			Latencies existing = latencies.putIfAbsent(host, result);
+			if ( existing != null ) {
+				result = existing;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Annule une requète et ferme sa réponse si elle était déjà arrivée
+	 * @param future
+	 */
+	private static void cancel(Future<URLResponse> future) {
+		if ( future != null && ! future.cancel(true) ) {
+			try {
+				URLResponse response = future.get();
+				if ( response != null ) {
+					close(response);
+				}
+			} catch (Exception e) {
+				// Rien à faire, pas de réponse à fermer
+			}
+		}
+	}
+	
+	/**
+	 * Ferme une réponse sans remonter d'erreur
+	 * @param response
+	 */
+	private static void close(URLResponse response) {
+		try {
+			response.close();
+		} catch (IOException e) {
+			// Rien à faire
+		}
+	}
+	
+	/**
+	 * Les derniers temps de réponse d'un site
+	 */
+	private static class Latencies {
+		
+		private long[] samples = new long[SAMPLES];
+		private int count;
+		private int next;
+		
+		public synchronized void add(long latency) {
+			samples[next] = latency;
+			next = (next + 1) % SAMPLES;
+			count = Math.min(count + 1, SAMPLES);
+		}
+		
+		/**
+		 * Retourne le percentile des temps de réponse, -1 s'il n'y a pas assez de mesures
+		 * @param percentile
+		 * @param minSamples
+		 * @return
+		 */
+		public synchronized long getPercentile(int percentile, int minSamples) {
+			if ( count < Math.max(1, minSamples) ) {
+				return -1;
+			}
+			long[] sorted = Arrays.copyOf(samples, count);
+			Arrays.sort(sorted);
+			int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+			return sorted[Math.max(0, Math.min(count - 1, index))];
+		}
+	}
+}
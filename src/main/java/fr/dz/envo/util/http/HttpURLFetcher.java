@@ -0,0 +1,212 @@
+package fr.dz.envo.util.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.exception.HttpStatusException;
+import fr.dz.envo.util.Configuration;
+
+
+/**
+ * Récupération du contenu d'une URL via un client HTTP partagé
+ * Les connexions sont conservées dans un pool (keep-alive) pour être réutilisées par les requètes suivantes
+ * vers le même hôte, les connexions inutilisées sont fermées au bout d'un délai configurable.
+ * Les réponses compressées (gzip / deflate) sont décompressées à la lecture.
+ * Les URL non HTTP (fichiers locaux...) passent par une URLConnection.
+ */
+public class HttpURLFetcher extends AbstractURLFetcher implements Closeable {
+	
+	// Constantes
+	public static final String USER_AGENT = "Mozilla/5.0 (X11; Ubuntu; Linux i686; rv:12.0) Gecko/20100101 Firefox/12.0";
+	private static final int HTTP_ERROR = 400;
+	
+	// Constantes de configuration
+	private static final String CONNECT_TIMEOUT_KEY = "http.connectTimeout";
+	private static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+	private static final String READ_TIMEOUT_KEY = "http.readTimeout";
+	private static final int DEFAULT_READ_TIMEOUT = 30000;
+	private static final String MAX_CONNECTIONS_KEY = "http.pool.maxConnections";
+	private static final int DEFAULT_MAX_CONNECTIONS = 20;
+	private static final String MAX_CONNECTIONS_PER_HOST_KEY = "http.pool.maxConnectionsPerHost";
+	private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 6;
+	private static final String IDLE_TIMEOUT_KEY = "http.pool.idleTimeout";
+	private static final long DEFAULT_IDLE_TIMEOUT = 30000;
+	
+	// Attributs
+	private int connectTimeout;
+	private int readTimeout;
+	private PoolingHttpClientConnectionManager connectionManager;
+	private CloseableHttpClient client;
+	
+	/**
+	 * Constructeur à partir de la configuration
+	 */
+	public HttpURLFetcher() {
+		this(Configuration.getInt(CONNECT_TIMEOUT_KEY, DEFAULT_CONNECT_TIMEOUT), Configuration.getInt(READ_TIMEOUT_KEY, DEFAULT_READ_TIMEOUT),
+				Configuration.getInt(MAX_CONNECTIONS_KEY, DEFAULT_MAX_CONNECTIONS), Configuration.getInt(MAX_CONNECTIONS_PER_HOST_KEY, DEFAULT_MAX_CONNECTIONS_PER_HOST),
+				Configuration.getLong(IDLE_TIMEOUT_KEY, DEFAULT_IDLE_TIMEOUT));
+	}
+	
+	/**
+	 * Constructeur
+	 * @param connectTimeout Le délai maximum d'établissement d'une connexion en millisecondes (0 : pas de limite)
+	 * @param readTimeout Le délai maximum d'attente de données en millisecondes (0 : pas de limite)
+	 * @param maxConnections Le nombre maximum de connexions du pool, tous hôtes confondus
+	 * @param maxConnectionsPerHost Le nombre maximum de connexions du pool vers un même hôte
+	 * @param idleTimeout Le délai en millisecondes au bout duquel une connexion inutilisée est fermée
+	 */
+	public HttpURLFetcher(int connectTimeout, int readTimeout, int maxConnections, int maxConnectionsPerHost, long idleTimeout) {
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		this.connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(connectTimeout)
+				.setConnectionRequestTimeout(connectTimeout)
+				.setSocketTimeout(readTimeout)
+				.build();
+		this.client = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.setUserAgent(USER_AGENT)
+				.evictExpiredConnections()
+				.evictIdleConnections(idleTimeout, TimeUnit.MILLISECONDS)
+				.build();
+	}
+	
+	@Override
+	public URLResponse fetch(URL url, Map<String,String> headers) throws EnVOException {
+		if ( ! url.getProtocol().startsWith("http") ) {
+			return fetchConnection(url, headers);
+		}
+		CloseableHttpResponse httpResponse = null;
+		try {
+			// Création de la requète
+			HttpGet request = new HttpGet(toURI(url));
+			if ( headers != null ) {
+				for ( Map.Entry<String,String> header : headers.entrySet() ) {
+					request.setHeader(header.getKey(), header.getValue());
+				}
+			}
+			httpResponse = client.execute(request);
+			
+			// Statut de la réponse (le contenu d'une erreur est lu pour que la connexion retourne dans le pool)
+			int status = httpResponse.getStatusLine().getStatusCode();
+			HttpEntity entity = httpResponse.getEntity();
+			if ( status >= HTTP_ERROR ) {
+				EntityUtils.consumeQuietly(entity);
+				throw new HttpStatusException(url, status);
+			}
+			
+			// Construction de la réponse : la connexion est rendue au pool à la fermeture du flux
+			InputStream in;
+			if ( entity == null || status == HttpURLConnection.HTTP_NOT_MODIFIED ) {
+				EntityUtils.consumeQuietly(entity);
+				in = new ByteArrayInputStream(new byte[0]);
+			} else {
+				in = entity.getContent();
+			}
+			URLResponse response = new URLResponse(url, status, in);
+			for ( Header header : httpResponse.getAllHeaders() ) {
+				if ( response.getHeader(header.getName()) == null ) {
+					response.setHeader(header.getName(), header.getValue());
+				}
+			}
+			httpResponse = null;
+			return response;
+		} catch (URISyntaxException e) {
+			throw new EnVOException("URL invalide : "+url, e);
+		} catch (IOException e) {
+			throw new EnVOException("Erreur pendant l'exécution de la requète : "+url, e);
+		} finally {
+			if ( httpResponse != null ) {
+				try {
+					httpResponse.close();
+				} catch (IOException e) {
+					// Rien à faire, la connexion n'est pas réutilisée
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Convertit une URL en URI, en échappant les caractères interdits qu'une URLConnection aurait acceptés
+	 * (liens récupérés tels quels dans les pages des sources)
+	 * @param url
+	 * @return
+	 * @throws URISyntaxException
+	 */
+	private URI toURI(URL url) throws URISyntaxException {
+		try {
+			return url.toURI();
+		} catch (URISyntaxException e) {
+			return new URI(url.getProtocol(), url.getUserInfo(), url.getHost(), url.getPort(), url.getPath(), url.getQuery(), url.getRef());
+		}
+	}
+	
+	/**
+	 * Récupère le contenu d'une URL non HTTP via une URLConnection
+	 * @param url
+	 * @param headers
+	 * @return
+	 * @throws EnVOException
+	 */
+	private URLResponse fetchConnection(URL url, Map<String,String> headers) throws EnVOException {
+		try {
+			URLConnection connection = url.openConnection();
+			connection.setConnectTimeout(connectTimeout);
+			connection.setReadTimeout(readTimeout);
+			if ( headers != null ) {
+				for ( Map.Entry<String,String> header : headers.entrySet() ) {
+					connection.setRequestProperty(header.getKey(), header.getValue());
+				}
+			}
+			connection.connect();
+			URLResponse response = new URLResponse(url, HttpURLConnection.HTTP_OK, connection.getInputStream());
+			response.setHeader(URLResponse.CONTENT_TYPE_HEADER, connection.getContentType());
+			return response;
+		} catch (IOException e) {
+			throw new EnVOException("Erreur pendant l'exécution de la requète : "+url, e);
+		}
+	}
+	
+	/**
+	 * Ferme le client et toutes les connexions du pool
+	 */
+	@Override
+	public void close() throws IOException {
+		client.close();
+	}
+	
+	/*
+	 * GETTERS & SETTERS
+	 */
+	
+	/**
+	 * @return the connection pool (for statistics)
+	 */
+	public PoolingHttpClientConnectionManager getConnectionManager() {
+		return connectionManager;
+	}
+}
@@ -0,0 +1,163 @@
+package fr.dz.envo.util.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import fr.dz.envo.EnVO;
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.exception.HttpStatusException;
+import fr.dz.envo.util.Configuration;
+
+
+/**
+ * Limitation du débit et du nombre de requètes simultanées d'un autre URLFetcher, par site (voir RateLimiter)
+ * Une requète occupe sa place jusqu'à la fermeture de la réponse.
+ * La configuration d'un site utilise les clés "ratelimit.*", éventuellement préfixées par le nom du site
+ * (www.opensubtitles.org : opensubtitles, c'est-à-dire l'id de la source correspondante).
+ */
+public class RateLimitedURLFetcher extends AbstractURLFetcher {
+	
+	// Constantes de configuration
+	public static final String ENABLED_KEY = "ratelimit.enabled";
+	private static final String RATE_KEY = "ratelimit.rate";
+	private static final double DEFAULT_RATE = 4;
+	private static final String BURST_KEY = "ratelimit.burst";
+	private static final double DEFAULT_BURST = 8;
+	private static final String MIN_CONCURRENCY_KEY = "ratelimit.concurrency.min";
+	private static final int DEFAULT_MIN_CONCURRENCY = 1;
+	private static final String INITIAL_CONCURRENCY_KEY = "ratelimit.concurrency.initial";
+	private static final int DEFAULT_INITIAL_CONCURRENCY = 4;
+	private static final String MAX_CONCURRENCY_KEY = "ratelimit.concurrency.max";
+	private static final int DEFAULT_MAX_CONCURRENCY = 8;
+	private static final String SLOW_RESPONSE_KEY = "ratelimit.slowResponse";
+	private static final long DEFAULT_SLOW_RESPONSE = 5000;
+	private static final String BACKOFF_RATIO_KEY = "ratelimit.backoffRatio";
+	private static final double DEFAULT_BACKOFF_RATIO = 0.5;
+	private static final String PENALTY_KEY = "ratelimit.penalty";
+	private static final long DEFAULT_PENALTY = 10000;
+	
+	// Attributs
+	private URLFetcher delegate;
+	private ConcurrentMap<String,RateLimiter> limiters = new ConcurrentHashMap<String,RateLimiter>();
+	
+	/**
+	 * Constructeur
+	 * @param delegate L'URLFetcher dont les requètes sont limitées
+	 */
+	public RateLimitedURLFetcher(URLFetcher delegate) {
+		this.delegate = delegate;
+	}
+	
+	@Override
+	public URLResponse fetch(URL url, Map<String,String> headers) throws EnVOException {
+		RateLimiter limiter = getRateLimiter(url.getHost());
+		try {
+			limiter.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EnVOException("Requète interrompue : "+url, e);
+		}
+		long start = System.currentTimeMillis();
+		URLResponse response;
+		try {
+			response = delegate.fetch(url, headers);
+		} catch (HttpStatusException e) {
+			if ( e.isOverloaded() ) {
+				EnVO.LOGGER.warn("Site surchargé ("+e.getStatus()+"), ralentissement des requètes vers "+url.getHost());
+			}
+			limiter.release(e.isOverloaded(), System.currentTimeMillis() - start);
+			throw e;
+		} catch (EnVOException e) {
+			limiter.release(false, System.currentTimeMillis() - start);
+			throw e;
+		} catch (RuntimeException e) {
+			limiter.release(false, System.currentTimeMillis() - start);
+			throw e;
+		}
+		response.setInputStream(new ReleasingInputStream(response.getInputStream(), limiter, System.currentTimeMillis() - start));
+		return response;
+	}
+	
+	/**
+	 * Retourne le limiteur d'un site, créé à partir de la configuration au premier appel
+	 * @param host
+	 * @return
+	 */
+	public RateLimiter getRateLimiter(String host) {
+		RateLimiter limiter = limiters.get(host);
+		if ( limiter == null ) {
+			String prefix = getSiteName(host) + ".";
+			limiter = new RateLimiter(
+					Configuration.getDouble(prefix + RATE_KEY, Configuration.getDouble(RATE_KEY, DEFAULT_RATE)),
+					Configuration.getDouble(prefix + BURST_KEY, Configuration.getDouble(BURST_KEY, DEFAULT_BURST)),
+					Configuration.getInt(prefix + MIN_CONCURRENCY_KEY, Configuration.getInt(MIN_CONCURRENCY_KEY, DEFAULT_MIN_CONCURRENCY)),
+					Configuration.getInt(prefix + INITIAL_CONCURRENCY_KEY, Configuration.getInt(INITIAL_CONCURRENCY_KEY, DEFAULT_INITIAL_CONCURRENCY)),
+					Configuration.getInt(prefix + MAX_CONCURRENCY_KEY, Configuration.getInt(MAX_CONCURRENCY_KEY, DEFAULT_MAX_CONCURRENCY)),
+					Configuration.getLong(prefix + SLOW_RESPONSE_KEY, Configuration.getLong(SLOW_RESPONSE_KEY, DEFAULT_SLOW_RESPONSE)),
+					Configuration.getDouble(prefix + BACKOFF_RATIO_KEY, Configuration.getDouble(BACKOFF_RATIO_KEY, DEFAULT_BACKOFF_RATIO)),
+					Configuration.getLong(prefix + PENALTY_KEY, Configuration.getLong(PENALTY_KEY, DEFAULT_PENALTY)));
+			RateLimiter existing = limiters.putIfAbsent(host, limiter);
+			if ( existing != null ) {
+				limiter = existing;
+			}
+		}
+		return limiter;
+	}
+	
+	/**
+	 * Remplace le limiteur d'un site
+	 * @param host
+	 * @param limiter
+	 */
+	public void setRateLimiter(String host, RateLimiter limiter) {
+		limiters.put(host, limiter);
+	}
+	
+	/**
+	 * Retourne le nom d'un site à partir de son hôte : le dernier élément avant le domaine de premier niveau
+	 * (www.opensubtitles.org : opensubtitles)
+	 * @param host
+	 * @return
+	 */
+	public static String getSiteName(String host) {
+		String[] parts = host.toLowerCase().split("\\.");
+		return parts.length > 1 ? parts[parts.length - 2] : host.toLowerCase();
+	}
+	
+	/**
+	 * Flux libérant la place de la requète à sa fermeture
+	 */
+	private static class ReleasingInputStream extends FilterInputStream {
+		
+		private RateLimiter limiter;
+		private long duration;
+		private boolean released;
+		
+		public ReleasingInputStream(InputStream in, RateLimiter limiter, long duration) {
+			super(in);
+			this.limiter = limiter;
+			this.duration = duration;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			try {
+				if ( in != null ) {
+					super.close();
+				}
+			} finally {
+				synchronized (this) {
+					if ( ! released ) {
+						released = true;
+						limiter.release(false, duration);
+					}
+				}
+			}
+		}
+	}
+}
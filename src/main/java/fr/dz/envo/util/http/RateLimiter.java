@@ -0,0 +1,149 @@
+package fr.dz.envo.util.http;
+
+
+/**
+ * Limitation des requètes vers un site :
+ *  - débit : seau à jetons (nombre de requètes par seconde, avec une rafale maximum)
+ *  - concurrence : nombre de requètes simultanées adapté en AIMD, augmenté d'environ 1 à chaque série de
+ *    réponses rapides et divisé à chaque réponse lente ou indiquant une surcharge (429 / 503)
+ * Après une surcharge, plus aucune requète n'est envoyée pendant un délai de pénalité.
+ */
+public class RateLimiter {
+	
+	// Constantes
+	private static final long NANOS_PER_MILLI = 1000000L;
+	private static final double NANOS_PER_SECOND = 1e9;
+	
+	// Paramètres
+	private double rate;
+	private double burst;
+	private int minConcurrency;
+	private int maxConcurrency;
+	private long slowResponse;
+	private double backoffRatio;
+	private long penalty;
+	
+	// Etat
+	private double tokens;
+	private long lastRefill = System.nanoTime();
+	private long pausedUntil = lastRefill;
+	private double concurrencyLimit;
+	private int inFlight;
+	
+	/**
+	 * Constructeur
+	 * @param rate Le nombre de requètes par seconde (0 : pas de limite de débit)
+	 * @param burst Le nombre de requètes pouvant être envoyées d'un coup après une période d'inactivité
+	 * @param minConcurrency Le nombre minimum de requètes simultanées
+	 * @param initialConcurrency Le nombre initial de requètes simultanées
+	 * @param maxConcurrency Le nombre maximum de requètes simultanées
+	 * @param slowResponse La durée en millisecondes au-delà de laquelle une réponse est considérée lente (0 : jamais)
+	 * @param backoffRatio Le coefficient appliqué au nombre de requètes simultanées en cas de surcharge
+	 * @param penalty La durée en millisecondes pendant laquelle les requètes sont suspendues après une surcharge
+	 */
+	public RateLimiter(double rate, double burst, int minConcurrency, int initialConcurrency, int maxConcurrency,
+			long slowResponse, double backoffRatio, long penalty) {
+		this.rate = rate;
+		this.burst = Math.max(1, burst);
+		this.minConcurrency = Math.max(1, minConcurrency);
+		this.maxConcurrency = Math.max(this.minConcurrency, maxConcurrency);
+		this.slowResponse = slowResponse;
+		this.backoffRatio = backoffRatio;
+		this.penalty = penalty;
+		this.tokens = this.burst;
+		this.concurrencyLimit = Math.max(this.minConcurrency, Math.min(this.maxConcurrency, initialConcurrency));
+	}
+	
+	/**
+	 * Attend qu'une requète puisse être envoyée
+	 * Chaque appel doit être suivi d'un appel à release
+	 * @throws InterruptedException
+	 */
+	public synchronized void acquire() throws InterruptedException {
+		
+		// Attente d'une place parmi les requètes simultanées
+		while ( inFlight >= (int) concurrencyLimit ) {
+			wait();
+		}
+		inFlight++;
+		
+		// Attente d'un jeton (et de la fin d'une éventuelle pénalité)
+		try {
+			while ( true ) {
+				long now = System.nanoTime();
+				refill(now);
+				long waitNanos;
+				if ( now - pausedUntil < 0 ) {
+					waitNanos = pausedUntil - now;
+				} else if ( rate <= 0 || tokens >= 1 ) {
+					if ( rate > 0 ) {
+						tokens--;
+					}
+					return;
+				} else {
+					waitNanos = (long) ((1 - tokens) / rate * NANOS_PER_SECOND);
+				}
+				wait(Math.max(1, waitNanos / NANOS_PER_MILLI));
+			}
+		} catch (InterruptedException e) {
+			inFlight--;
+			notifyAll();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Libère la place d'une requète terminée et adapte le nombre de requètes simultanées
+	 * @param overloaded true si le site a indiqué une surcharge
+	 * @param duration La durée de la requète en millisecondes
+	 */
+	public synchronized void release(boolean overloaded, long duration) {
+		inFlight--;
+		if ( overloaded || (slowResponse > 0 && duration > slowResponse) ) {
+			concurrencyLimit = Math.max(minConcurrency, concurrencyLimit * backoffRatio);
+			if ( overloaded ) {
+				pausedUntil = System.nanoTime() + penalty * NANOS_PER_MILLI;
+				tokens = 0;
+			}
+		} else {
+			concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1 / concurrencyLimit);
+		}
+		notifyAll();
+	}
+	
+	/**
+	 * Ajoute les jetons accumulés depuis le dernier ajout
+	 * @param now
+	 */
+	private void refill(long now) {
+		if ( rate > 0 ) {
+			tokens = Math.min(burst, tokens + (now - lastRefill) * rate / NANOS_PER_SECOND);
+		}
+		lastRefill = now;
+	}
+	
+	/*
+	 * GETTERS & SETTERS
+	 */
+	
+	/**
+	 * @return the current number of concurrent requests allowed
+	 */
+	public synchronized int getConcurrencyLimit() {
+		return (int) concurrencyLimit;
+	}
+	
+	/**
+	 * @return the number of requests in progress
+	 */
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+	
+	/**
+	 * @return the number of requests per second (0 for no limit)
+	 */
+	public double getRate() {
+		return rate;
+	}
+}
@@ -0,0 +1,200 @@
+package fr.dz.envo.util.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+import fr.dz.envo.EnVO;
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.util.Configuration;
+
+
+/**
+ * Enregistrement et rejeu des réponses d'un autre URLFetcher, pour mesurer les performances de la recherche
+ * sans accès au réseau :
+ *  - RECORD : les réponses du délégué sont enregistrées dans un dossier (contenu + fichier de méta-données)
+ *  - REPLAY : les réponses sont lues depuis ce dossier, après une latence simulée (durée fixe + variation aléatoire)
+ * Une URL jamais enregistrée provoque une erreur en mode REPLAY, comme une erreur réseau.
+ */
+public class ReplayURLFetcher extends AbstractURLFetcher {
+	
+	// Constantes de configuration
+	public static final String MODE_KEY = "replay.mode";
+	private static final String DIRECTORY_KEY = "replay.directory";
+	private static final String LATENCY_KEY = "replay.latency";
+	private static final String JITTER_KEY = "replay.jitter";
+	
+	// Constantes des enregistrements
+	private static final String URL_META = "url";
+	private static final String STATUS_META = "status";
+	private static final String HEADER_META_PREFIX = "header.";
+	
+	/**
+	 * Mode de fonctionnement
+	 */
+	public enum Mode {
+		RECORD,
+		REPLAY;
+		
+		/**
+		 * Retourne le mode correspondant à un nom (record ou replay), null pour tout autre nom
+		 * @param name
+		 * @return
+		 */
+		public static Mode fromName(String name) {
+			for ( Mode mode : values() ) {
+				if ( mode.name().equalsIgnoreCase(name) ) {
+					return mode;
+				}
+			}
+			return null;
+		}
+	}
+	
+	// Attributs
+	private URLFetcher delegate;
+	private Mode mode;
+	private URLResponseStore store;
+	private long latency;
+	private long jitter;
+	
+	/**
+	 * Constructeur à partir de la configuration
+	 * @param delegate L'URLFetcher dont les réponses sont enregistrées (inutilisé en mode REPLAY)
+	 * @param mode
+	 */
+	public ReplayURLFetcher(URLFetcher delegate, Mode mode) {
+		this(delegate, mode, Configuration.getFile(DIRECTORY_KEY, "replay"),
+				Configuration.getLong(LATENCY_KEY, 0), Configuration.getLong(JITTER_KEY, 0));
+	}
+	
+	/**
+	 * Constructeur
+	 * @param delegate L'URLFetcher dont les réponses sont enregistrées (inutilisé en mode REPLAY)
+	 * @param mode
+	 * @param directory Le dossier des enregistrements
+	 * @param latency La latence simulée en mode REPLAY, en millisecondes
+	 * @param jitter La variation maximum ajoutée aléatoirement à la latence, en millisecondes
+	 */
+	public ReplayURLFetcher(URLFetcher delegate, Mode mode, File directory, long latency, long jitter) {
+		this.delegate = delegate;
+		this.mode = mode;
+		this.store = new URLResponseStore(directory);
+		this.latency = latency;
+		this.jitter = jitter;
+	}
+	
+	@Override
+	public URLResponse fetch(URL url, Map<String,String> headers) throws EnVOException {
+		String key = store.getKey(url);
+		if ( mode == Mode.RECORD ) {
+			record(url, key, delegate.fetch(url, headers));
+		} else {
+			simulateLatency();
+		}
+		return replay(url, key);
+	}
+	
+	/**
+	 * Attend la durée de la latence simulée
+	 * @throws EnVOException
+	 */
+	private void simulateLatency() throws EnVOException {
+		long delay = latency + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0);
+		if ( delay > 0 ) {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new EnVOException("Requète interrompue", e);
+			}
+		}
+	}
+	
+	/**
+	 * Enregistre une réponse (contenu puis méta-données) et la ferme
+	 * @param url
+	 * @param key
+	 * @param response
+	 * @throws EnVOException
+	 */
+	private void record(URL url, String key, URLResponse response) throws EnVOException {
+		File temp = null;
+		try {
+			// Contenu
+			temp = store.writeTemp(key, response.getInputStream());
+			
+			// Méta-données
+			Properties meta = new Properties();
+			meta.setProperty(URL_META, url.toExternalForm());
+			meta.setProperty(STATUS_META, String.valueOf(response.getStatus()));
+			for ( Map.Entry<String,String> header : response.getHeaders().entrySet() ) {
+				meta.setProperty(HEADER_META_PREFIX + header.getKey(), header.getValue());
+			}
+			synchronized (this) {
+				store.replaceData(key, temp);
+				store.writeMeta(key, meta);
+			}
+			EnVO.LOGGER.debug("Réponse enregistrée : "+url);
+		} catch (IOException e) {
+			throw new EnVOException("Erreur pendant l'enregistrement de la réponse de : "+url, e);
+		} finally {
+			try {
+				response.close();
+			} catch (IOException e) {
+				// Rien à faire
+			}
+			if ( temp != null ) {
+				temp.delete();
+			}
+		}
+	}
+	
+	/**
+	 * Crée une réponse à partir d'un enregistrement
+	 * @param url
+	 * @param key
+	 * @return
+	 * @throws EnVOException
+	 */
+	private URLResponse replay(URL url, String key) throws EnVOException {
+		try {
+			Properties meta = store.readMeta(key);
+			if ( meta == null ) {
+				throw new EnVOException("Aucune réponse enregistrée pour la requète : "+url);
+			}
+			URLResponse response = new URLResponse(url, Integer.parseInt(meta.getProperty(STATUS_META)), store.openData(key));
+			for ( String name : meta.stringPropertyNames() ) {
+				if ( name.startsWith(HEADER_META_PREFIX) ) {
+					response.setHeader(name.substring(HEADER_META_PREFIX.length()), meta.getProperty(name));
+				}
+			}
+			return response;
+		} catch (IOException e) {
+			throw new EnVOException("Erreur pendant la lecture de la réponse enregistrée pour : "+url, e);
+		} catch (NumberFormatException e) {
+			throw new EnVOException("Réponse enregistrée invalide pour : "+url, e);
+		}
+	}
+	
+	/*
+	 * GETTERS & SETTERS
+	 */
+	
+	/**
+	 * @return the mode (record or replay)
+	 */
+	public Mode getMode() {
+		return mode;
+	}
+	
+	/**
+	 * @return the directory of the recorded responses
+	 */
+	public File getDirectory() {
+		return store.getDirectory();
+	}
+}
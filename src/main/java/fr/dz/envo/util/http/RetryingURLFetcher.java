@@ -0,0 +1,121 @@
+package fr.dz.envo.util.http;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import fr.dz.envo.EnVO;
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.exception.HttpStatusException;
+import fr.dz.envo.util.Configuration;
+
+
+/**
+ * Nouvelles tentatives des requètes en erreur d'un autre URLFetcher (toutes les requètes sont des GET, donc rejouables)
+ * Sont retentées les erreurs réseau, les erreurs serveur (5xx) et les refus pour trop de requètes (429),
+ * après un délai exponentiel avec une part aléatoire pour ne pas renvoyer toutes les requètes en même temps.
+ */
+public class RetryingURLFetcher extends AbstractURLFetcher {
+	
+	// Constantes de configuration
+	public static final String MAX_ATTEMPTS_KEY = "retry.maxAttempts";
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+	private static final String BASE_DELAY_KEY = "retry.baseDelay";
+	private static final long DEFAULT_BASE_DELAY = 500;
+	private static final String MAX_DELAY_KEY = "retry.maxDelay";
+	private static final long DEFAULT_MAX_DELAY = 8000;
+	
+	// Constantes
+	private static final int SERVER_ERROR = 500;
+	
+	// Attributs
+	private URLFetcher delegate;
+	private int maxAttempts;
+	private long baseDelay;
+	private long maxDelay;
+	
+	/**
+	 * Constructeur à partir de la configuration
+	 * @param delegate
+	 */
+	public RetryingURLFetcher(URLFetcher delegate) {
+		this(delegate, Configuration.getInt(MAX_ATTEMPTS_KEY, DEFAULT_MAX_ATTEMPTS), Configuration.getLong(BASE_DELAY_KEY, DEFAULT_BASE_DELAY),
+				Configuration.getLong(MAX_DELAY_KEY, DEFAULT_MAX_DELAY));
+	}
+	
+	/**
+	 * Constructeur
+	 * @param delegate
+	 * @param maxAttempts Le nombre maximum de tentatives, première comprise
+	 * @param baseDelay Le délai avant la deuxième tentative en millisecondes, doublé à chaque tentative suivante
+	 * @param maxDelay Le délai maximum entre deux tentatives en millisecondes
+	 */
+	public RetryingURLFetcher(URLFetcher delegate, int maxAttempts, long baseDelay, long maxDelay) {
+		this.delegate = delegate;
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+	}
+	
+	@Override
+	public URLResponse fetch(URL url, Map<String,String> headers) throws EnVOException {
+		for ( int attempt = 1; ; attempt++ ) {
+			try {
+				return delegate.fetch(url, headers);
+			} catch (EnVOException e) {
+				if ( attempt >= maxAttempts || ! isRetryable(e) ) {
+					throw e;
+				}
+				long delay = getDelay(attempt);
+				EnVO.LOGGER.warn("Tentative "+attempt+"/"+maxAttempts+" en erreur ("+e.getMessage()+"), nouvelle tentative dans "+delay+" ms");
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Retourne true si la requète peut être retentée après cette erreur : erreur réseau, erreur serveur ou surcharge
+	 * Les autres erreurs (URL invalide, page inexistante...) se reproduiraient à l'identique.
+	 * @param e
+	 * @return
+	 */
+	protected boolean isRetryable(EnVOException e) {
+		if ( Thread.currentThread().isInterrupted() ) {
+			return false;
+		} else if ( e instanceof HttpStatusException ) {
+			HttpStatusException statusException = (HttpStatusException) e;
+			return statusException.getStatus() >= SERVER_ERROR || statusException.isOverloaded();
+		} else {
+			return e.getCause() instanceof IOException;
+		}
+	}
+	
+	/**
+	 * Retourne le délai avant la tentative suivante : la moitié du délai exponentiel plus une part aléatoire
+	 * de l'autre moitié
+	 * @param attempt Le numéro de la tentative en erreur
+	 * @return
+	 */
+	protected long getDelay(int attempt) {
+		long delay = Math.min(maxDelay, baseDelay << Math.min(attempt - 1, 30));
+		long half = delay / 2;
+		return half + (delay - half > 0 ? ThreadLocalRandom.current().nextLong(delay - half + 1) : 0);
+	}
+	
+	/*
+	 * GETTERS & SETTERS
+	 */
+	
+	/**
+	 * @return the maximum number of attempts, first one included
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+}
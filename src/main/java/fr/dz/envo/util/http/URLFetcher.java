@@ -0,0 +1,29 @@
+package fr.dz.envo.util.http;
+
+import java.net.URL;
+import java.util.Map;
+
+import fr.dz.envo.exception.EnVOException;
+
+
+public interface URLFetcher {
+	
+	/**
+	 * Récupère le contenu d'une URL
+	 * La réponse retournée doit être fermée par l'appelant
+	 * @param url
+	 * @return
+	 * @throws EnVOException
+	 */
+	public URLResponse fetch(URL url) throws EnVOException;
+	
+	/**
+	 * Récupère le contenu d'une URL en ajoutant des en-têtes à la requète
+	 * La réponse retournée doit être fermée par l'appelant
+	 * @param url
+	 * @param headers Les en-têtes de la requète (peut être null)
+	 * @return
+	 * @throws EnVOException
+	 */
+	public URLResponse fetch(URL url, Map<String,String> headers) throws EnVOException;
+}
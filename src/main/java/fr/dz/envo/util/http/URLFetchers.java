@@ -0,0 +1,86 @@
+package fr.dz.envo.util.http;
+
+import fr.dz.envo.util.Configuration;
+
+
+/**
+ * Accès aux URLFetcher partagés, construits à partir de la configuration
+ */
+public class URLFetchers {
+	
+	// Constantes
+	private static final String CACHE_ENABLED_KEY = "cache.enabled";
+	
+	// Les URLFetcher partagés
+	private static URLFetcher httpFetcher;
+	private static URLFetcher pageFetcher;
+	
+	/**
+	 * Retourne l'URLFetcher utilisé pour les pages des sources (avec cache si activé)
+	 * @return
+	 */
+	public static synchronized URLFetcher getPageFetcher() {
+		if ( pageFetcher == null ) {
+			if ( Configuration.getBoolean(CACHE_ENABLED_KEY, true) ) {
+				pageFetcher = new CachingURLFetcher(getHttpFetcher());
+			} else {
+				pageFetcher = getHttpFetcher();
+			}
+		}
+		return pageFetcher;
+	}
+	
+	/**
+	 * Retourne l'URLFetcher accédant directement au réseau (sans cache)
+	 * En mode record, les réponses sont enregistrées ; en mode replay, elles sont rejouées sans accès au réseau
+	 * @return
+	 */
+	public static synchronized URLFetcher getHttpFetcher() {
+		if ( httpFetcher == null ) {
+			ReplayURLFetcher.Mode mode = ReplayURLFetcher.Mode.fromName(Configuration.getString(ReplayURLFetcher.MODE_KEY, null));
+			if ( mode == ReplayURLFetcher.Mode.RECORD ) {
+				httpFetcher = new ReplayURLFetcher(createNetworkFetcher(), mode);
+			} else if ( mode == ReplayURLFetcher.Mode.REPLAY ) {
+				httpFetcher = new ReplayURLFetcher(null, mode);
+			} else {
+				httpFetcher = createNetworkFetcher();
+			}
+		}
+		return httpFetcher;
+	}
+	
+	/**
+	 * Crée l'URLFetcher accédant au réseau, avec selon la configuration : nouvelles tentatives en cas d'erreur,
+	 * requètes lentes doublées et limitation des requètes par site
+	 * @return
+	 */
+	private static URLFetcher createNetworkFetcher() {
+		URLFetcher fetcher = new HttpURLFetcher();
+		if ( Configuration.getBoolean(RateLimitedURLFetcher.ENABLED_KEY, true) ) {
+			fetcher = new RateLimitedURLFetcher(fetcher);
+		}
+		if ( Configuration.getBoolean(HedgingURLFetcher.ENABLED_KEY, false) ) {
+			fetcher = new HedgingURLFetcher(fetcher);
+		}
+		if ( Configuration.getInt(RetryingURLFetcher.MAX_ATTEMPTS_KEY, RetryingURLFetcher.DEFAULT_MAX_ATTEMPTS) > 1 ) {
+			fetcher = new RetryingURLFetcher(fetcher);
+		}
+		return fetcher;
+	}
+	
+	/**
+	 * Remplace l'URLFetcher accédant au réseau (null pour revenir à celui de la configuration)
+	 * @param fetcher
+	 */
+	public static synchronized void setHttpFetcher(URLFetcher fetcher) {
+		httpFetcher = fetcher;
+	}
+	
+	/**
+	 * Remplace l'URLFetcher utilisé pour les pages des sources
+	 * @param fetcher
+	 */
+	public static synchronized void setPageFetcher(URLFetcher fetcher) {
+		pageFetcher = fetcher;
+	}
+}
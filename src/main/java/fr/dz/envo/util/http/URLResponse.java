@@ -0,0 +1,115 @@
+package fr.dz.envo.util.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Réponse à la récupération d'une URL : statut, en-têtes et flux du contenu
+ */
+public class URLResponse implements Closeable {
+	
+	// Constantes
+	public static final String CONTENT_TYPE_HEADER = "Content-Type";
+	private static final String CHARSET_PARAMETER = "charset=";
+	
+	// Champs
+	private URL url;
+	private int status;
+	private Map<String,String> headers = new HashMap<String,String>();
+	private InputStream inputStream;
+	
+	/**
+	 * Constructeur
+	 * @param url
+	 * @param status
+	 * @param inputStream
+	 */
+	public URLResponse(URL url, int status, InputStream inputStream) {
+		this.url = url;
+		this.status = status;
+		this.inputStream = inputStream;
+	}
+	
+	/**
+	 * Retourne true si la réponse indique que le contenu n'a pas changé (requète conditionnelle)
+	 * @return
+	 */
+	public boolean isNotModified() {
+		return status == HttpURLConnection.HTTP_NOT_MODIFIED;
+	}
+	
+	/**
+	 * Retourne l'encoding déclaré dans l'en-tête Content-Type, null si absent
+	 * @return
+	 */
+	public String getCharset() {
+		String contentType = getHeader(CONTENT_TYPE_HEADER);
+		if ( contentType != null ) {
+			for ( String parameter : contentType.split(";") ) {
+				parameter = parameter.trim();
+				if ( parameter.toLowerCase().startsWith(CHARSET_PARAMETER) ) {
+					String charset = parameter.substring(CHARSET_PARAMETER.length()).replace("\"", "").trim();
+					return charset.isEmpty() ? null : charset;
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Retourne la valeur d'un en-tête (nom insensible à la casse)
+	 * @param name
+	 * @return
+	 */
+	public String getHeader(String name) {
+		return headers.get(name.toLowerCase());
+	}
+	
+	/**
+	 * Renseigne la valeur d'un en-tête (nom insensible à la casse)
+	 * @param name
+	 * @param value
+	 */
+	public void setHeader(String name, String value) {
+		if ( name != null && value != null ) {
+			headers.put(name.toLowerCase(), value);
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if ( inputStream != null ) {
+			inputStream.close();
+		}
+	}
+	
+	/*
+	 * GETTERS & SETTERS
+	 */
+	
+	public URL getURL() {
+		return url;
+	}
+	
+	public int getStatus() {
+		return status;
+	}
+	
+	public Map<String,String> getHeaders() {
+		return headers;
+	}
+	
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+	
+	public void setInputStream(InputStream inputStream) {
+		this.inputStream = inputStream;
+	}
+}
@@ -0,0 +1,233 @@
+package fr.dz.envo.util.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+
+/**
+ * Stockage disque de réponses HTTP, utilisé par le cache et par l'enregistrement des réponses :
+ * chaque réponse est stockée sous une clé dérivée de son URL (SHA-1), dans un fichier de contenu (.data)
+ * et un fichier de méta-données (.properties).
+ * La synchronisation des accès est à la charge de l'appelant.
+ */
+public class URLResponseStore {
+	
+	// Constantes
+	private static final String DATA_EXTENSION = ".data";
+	private static final String META_EXTENSION = ".properties";
+	private static final String TEMP_EXTENSION = ".tmp";
+	
+	// Attributs
+	private File directory;
+	
+	/**
+	 * Constructeur
+	 * @param directory Le dossier de stockage
+	 */
+	public URLResponseStore(File directory) {
+		this.directory = directory;
+	}
+	
+	/**
+	 * Retourne la clé correspondant à une URL
+	 * @param url
+	 * @return
+	 */
+	public String getKey(URL url) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.toExternalForm().getBytes("UTF-8"));
+			StringBuilder key = new StringBuilder();
+			for ( byte b : digest ) {
+				key.append(String.format("%02x", b));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Retourne la clé correspondant à un fichier de contenu
+	 * @param data
+	 * @return
+	 */
+	public String getKey(File data) {
+		return data.getName().substring(0, data.getName().length() - DATA_EXTENSION.length());
+	}
+	
+	/**
+	 * Copie un contenu dans un fichier temporaire, à remplacer ensuite par replaceData
+	 * Le fichier temporaire est propre au thread courant, l'appelant doit le supprimer s'il n'est pas utilisé.
+	 * @param key
+	 * @param in
+	 * @return Le fichier temporaire
+	 * @throws IOException
+	 */
+	public File writeTemp(String key, InputStream in) throws IOException {
+		directory.mkdirs();
+		File temp = new File(directory, key + Thread.currentThread().getId() + TEMP_EXTENSION);
+		try {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+			try {
+				byte[] buffer = new byte[8192];
+				int nbRead;
+				while ( (nbRead = in.read(buffer)) != -1 ) {
+					out.write(buffer, 0, nbRead);
+				}
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			temp.delete();
+			throw e;
+		}
+		return temp;
+	}
+	
+	/**
+	 * Remplace le contenu d'une entrée par un fichier temporaire
+	 * @param key
+	 * @param temp
+	 * @return Le fichier de contenu
+	 * @throws IOException
+	 */
+	public File replaceData(String key, File temp) throws IOException {
+		File data = getDataFile(key);
+		data.delete();
+		if ( ! temp.renameTo(data) ) {
+			throw new IOException("Impossible de renommer "+temp+" en "+data);
+		}
+		return data;
+	}
+	
+	/**
+	 * Ouvre le contenu d'une entrée
+	 * @param key
+	 * @return
+	 * @throws IOException
+	 */
+	public InputStream openData(String key) throws IOException {
+		return new BufferedInputStream(new FileInputStream(getDataFile(key)));
+	}
+	
+	/**
+	 * Lit les méta-données d'une entrée, null si absentes
+	 * @param key
+	 * @return
+	 * @throws IOException
+	 */
+	public Properties readMeta(String key) throws IOException {
+		File metaFile = getMetaFile(key);
+		if ( ! metaFile.exists() ) {
+			return null;
+		}
+		InputStream in = new FileInputStream(metaFile);
+		try {
+			Properties meta = new Properties();
+			meta.load(in);
+			return meta;
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Ecrit les méta-données d'une entrée
+	 * @param key
+	 * @param meta
+	 * @throws IOException
+	 */
+	public void writeMeta(String key, Properties meta) throws IOException {
+		OutputStream out = new FileOutputStream(getMetaFile(key));
+		try {
+			meta.store(out, null);
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Supprime une entrée
+	 * @param key
+	 * @return true si le contenu a été supprimé
+	 */
+	public boolean delete(String key) {
+		if ( getDataFile(key).delete() ) {
+			getMetaFile(key).delete();
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Supprime toutes les entrées
+	 */
+	public void clear() {
+		File[] files = directory.listFiles();
+		if ( files != null ) {
+			for ( File file : files ) {
+				file.delete();
+			}
+		}
+	}
+	
+	/**
+	 * Retourne la liste des fichiers de contenu
+	 * @return
+	 */
+	public List<File> getDataFiles() {
+		List<File> result = new ArrayList<File>();
+		File[] files = directory.listFiles();
+		if ( files != null ) {
+			for ( File file : files ) {
+				if ( file.getName().endsWith(DATA_EXTENSION) ) {
+					result.add(file);
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Retourne le fichier de contenu d'une entrée
+	 * @param key
+	 * @return
+	 */
+	public File getDataFile(String key) {
+		return new File(directory, key + DATA_EXTENSION);
+	}
+	
+	/**
+	 * Retourne le fichier de méta-données d'une entrée
+	 * @param key
+	 * @return
+	 */
+	public File getMetaFile(String key) {
+		return new File(directory, key + META_EXTENSION);
+	}
+	
+	/*
+	 * GETTERS & SETTERS
+	 */
+	
+	/**
+	 * @return the storage directory
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+}
@@ -7,9 +7,10 @@ import fr.dz.envo.exception.EnVOException;
 
 /**
  * Classe abstraite définissant une opération éxécutable dans un thread et retournant une liste de résultats
+ * L'opération est exécutée par le pool de threads de {@link GenericThreadManager}
  * @param <ReturnType>
  */
-public abstract class GenericTaskThread<ReturnType> extends Thread {
+public abstract class GenericTaskThread<ReturnType> implements Runnable {
 	
 	private List<ReturnType> results = new ArrayList<ReturnType>();
 	private EnVOException exception;
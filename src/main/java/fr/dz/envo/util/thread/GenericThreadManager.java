@@ -1,22 +1,41 @@
 package fr.dz.envo.util.thread;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import fr.dz.envo.EnVO;
 import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.util.Configuration;
 
 /**
  * Classe définissant un ensemble d'opération à exécuter en parallèle
+ * Les opérations sont exécutées par un pool de threads partagé, réutilisé d'une exécution à l'autre
  * @param <ReturnType>
  */
 public abstract class GenericThreadManager<ReturnType> {
 	
 	// Constantes
-	private static final long WAIT_TIME_MILLIS = 100;
+	private static final String TIMEOUT_KEY = "tasks.timeout";
+	private static final long DEFAULT_TIMEOUT_MILLIS = 0;
+	
+	// Le pool de threads partagé (threads démons pour ne pas bloquer l'arrêt de la JVM)
+	private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new DaemonThreadFactory("envo-task-"));
 	
 	// Attributs
 	private List<GenericTaskThread<ReturnType>> threads;
-
+	private long timeoutMillis = Configuration.getLong(TIMEOUT_KEY, DEFAULT_TIMEOUT_MILLIS);
+	
 	/**
 	 * Constructeur par défaut (protected pour que les classes qui en héritent puissent créer les threads elles-mêmes)
 	 * @param request
@@ -33,6 +52,23 @@ public abstract class GenericThreadManager<ReturnType> {
 		init(threads);
 	}
 	
+	/**
+	 * Méthode à redéfinir si une opération est à effectuer dès la fin d'une tâche, sans attendre les autres
+	 * @param task La tâche terminée (avec ses résultats ou son exception)
+	 * @throws EnVOException
+	 */
+	protected void taskCompleted(GenericTaskThread<ReturnType> task) throws EnVOException {}
+	
+	/**
+	 * Méthode à redéfinir pour arrêter l'exécution dès qu'un résultat suffisant a été obtenu
+	 * Les tâches restantes sont alors annulées et le post traitement est exécuté immédiatement
+	 * @param result
+	 * @return true si le résultat rend inutile l'attente des autres tâches
+	 */
+	protected boolean isSufficient(ReturnType result) {
+		return false;
+	}
+	
 	/**
 	 * Méthode à redéfinir si une opération est à effectuer après l'exécution de toutes les tâches
 	 * @throws EnVOException
@@ -41,46 +77,77 @@ public abstract class GenericThreadManager<ReturnType> {
 	
 	/**
 	 * Exécution en parallèle des différentes opérations
+	 * Les tâches qui ne se terminent pas avant le timeout ou avant l'obtention d'un résultat suffisant
+	 * sont annulées et ignorées
 	 * @throws EnVOException
 	 */
 	public List<ReturnType> doTasks() throws EnVOException {
 		
-		// Démarrage des threads
+		// Soumission des tâches au pool de threads
+		CompletionService<GenericTaskThread<ReturnType>> completionService = new ExecutorCompletionService<GenericTaskThread<ReturnType>>(EXECUTOR);
+		Map<Future<GenericTaskThread<ReturnType>>,GenericTaskThread<ReturnType>> futures = new LinkedHashMap<Future<GenericTaskThread<ReturnType>>,GenericTaskThread<ReturnType>>();
 		for ( GenericTaskThread<ReturnType> thread : threads ) {
-			thread.start();
+			futures.put(completionService.submit(thread, thread), thread);
 		}
 		
-		// Attente de la fin des traitements
-		boolean aliveThreads = true;
-		while ( aliveThreads ) {
-			aliveThreads = false;
-			for ( GenericTaskThread<ReturnType> thread : threads ) {
-				if ( thread.isAlive() ) {
-					aliveThreads = true;
-					break;
+		// Traitement de chaque tâche dès qu'elle se termine
+		List<GenericTaskThread<ReturnType>> completed = new ArrayList<GenericTaskThread<ReturnType>>(threads.size());
+		long deadline = timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : 0;
+		boolean sufficient = false;
+		try {
+			while ( ! sufficient && completed.size() < threads.size() ) {
+				Future<GenericTaskThread<ReturnType>> future;
+				if ( deadline > 0 ) {
+					future = completionService.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+					if ( future == null ) {
+						break;
+					}
+				} else {
+					future = completionService.take();
 				}
+				GenericTaskThread<ReturnType> thread = future.get();
+				completed.add(thread);
+				taskCompleted(thread);
+				sufficient = hasSufficientResult(thread);
 			}
-			if ( aliveThreads ) {
-				try {
-					Thread.sleep(WAIT_TIME_MILLIS);
-				} catch (InterruptedException e) {
-					throw new EnVOException("Erreur pendant l'attente des threads", e);
+		} catch (InterruptedException e) {
+			cancel(futures);
+			Thread.currentThread().interrupt();
+			throw new EnVOException("Erreur pendant l'attente des threads", e);
+		} catch (ExecutionException e) {
+			cancel(futures);
+			throw new EnVOException("Erreur pendant l'attente des threads", e.getCause());
+		}
+		
+		// Annulation des tâches trop longues ou devenues inutiles
+		for ( Map.Entry<Future<GenericTaskThread<ReturnType>>,GenericTaskThread<ReturnType>> entry : futures.entrySet() ) {
+			if ( ! completed.contains(entry.getValue()) ) {
+				entry.getKey().cancel(true);
+				if ( sufficient ) {
+					EnVO.LOGGER.debug("Opération '"+entry.getValue().getDescription()+"' annulée : résultat suffisant déjà obtenu");
+				} else {
+					EnVO.LOGGER.warn("Opération '"+entry.getValue().getDescription()+"' annulée après "+timeoutMillis+" ms");
 				}
 			}
 		}
 		
-		// Récupération des résultats et des exceptions
+		// Récupération des résultats et des exceptions, dans l'ordre des tâches
 		List<ReturnType> results = new ArrayList<ReturnType>();
 		List<EnVOException> exceptions = new ArrayList<EnVOException>();
 		for ( GenericTaskThread<ReturnType> thread : threads ) {
-			results.addAll(thread.getResults());
-			if ( thread.getException() != null ) {
-				exceptions.add(thread.getException());
+			if ( completed.contains(thread) ) {
+				results.addAll(thread.getResults());
+				if ( thread.getException() != null ) {
+					exceptions.add(thread.getException());
+					if ( sufficient ) {
+						EnVO.LOGGER.warn(thread.getException().getMessage());
+					}
+				}
 			}
 		}
 		
-		// Traitement d'exception
-		if ( ! exceptions.isEmpty() ) {
+		// Traitement d'exception (ignorées si un résultat suffisant a été obtenu)
+		if ( ! exceptions.isEmpty() && ! sufficient ) {
 			throw new EnVOException(exceptions);
 		}
 		// Exécution du post traitement
@@ -98,4 +165,70 @@ public abstract class GenericThreadManager<ReturnType> {
 	protected void init(List<GenericTaskThread<ReturnType>> threads) {
 		this.threads = threads;
 	}
+	
+	/**
+	 * Retourne true si la tâche a produit un résultat suffisant
+	 * @param thread
+	 * @return
+	 */
+	private boolean hasSufficientResult(GenericTaskThread<ReturnType> thread) {
+		for ( ReturnType result : thread.getResults() ) {
+			if ( isSufficient(result) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Annule les tâches en cours
+	 * @param futures
+	 */
+	protected void cancel(Map<Future<GenericTaskThread<ReturnType>>,GenericTaskThread<ReturnType>> futures) {
+		for ( Future<GenericTaskThread<ReturnType>> future : futures.keySet() ) {
+			future.cancel(true);
+		}
+	}
+	
+	/*
+	 * GETTERS & SETTERS
+	 */
+	
+	/**
+	 * @return the timeout in milliseconds (0 for no timeout)
+	 */
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+	
+	/**
+	 * @param timeoutMillis the timeout in milliseconds (0 for no timeout)
+	 */
+	public void setTimeoutMillis(long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+	}
+	
+	/**
+	 * Fabrique de threads démons nommés
+	 */
+	public static class DaemonThreadFactory implements ThreadFactory {
+		
+		private final String prefix;
+		private final AtomicInteger counter = new AtomicInteger();
+		
+		/**
+		 * Constructeur
+		 * @param prefix Préfixe du nom des threads
+		 */
+		public DaemonThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+		
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
 }
@@ -0,0 +1,156 @@
+package fr.dz.envo.util.thread;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.util.thread.GenericThreadManager.DaemonThreadFactory;
+
+
+/**
+ * Regroupement des appels identiques simultanés : tant qu'un appel est en cours pour une clé, les autres appels
+ * pour la même clé attendent son résultat (ou son erreur) au lieu de l'exécuter à nouveau
+ * L'appel partagé est exécuté dans un pool de threads dédié : un appelant interrompu (tâche annulée, délai dépassé)
+ * abandonne seulement sa propre attente, l'appel n'est annulé que si plus aucun appelant ne l'attend.
+ * Par défaut rien n'est conservé une fois l'appel terminé : un appel ultérieur avec la même clé est exécuté normalement.
+ * Avec mémorisation, le résultat d'un appel réussi est retourné à tous les appels ultérieurs avec la même clé,
+ * un appel en erreur est oublié et un appel abandonné par ses appelants va tout de même à son terme.
+ * Le résultat est partagé entre tous les appelants, il ne doit pas être modifié.
+ * @param <KeyType>
+ * @param <ReturnType>
+ */
+public class SingleFlight<KeyType,ReturnType> {
+	
+	// Le pool de threads des appels partagés (threads démons pour ne pas bloquer l'arrêt de la JVM)
+	private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new DaemonThreadFactory("envo-flight-"));
+	
+	// Attributs
+	private ConcurrentMap<KeyType,Flight> calls = new ConcurrentHashMap<KeyType,Flight>();
+	private boolean memoize;
+	
+	/**
+	 * Constructeur sans mémorisation des résultats
+	 */
+	public SingleFlight() {
+		this(false);
+	}
+	
+	/**
+	 * Constructeur
+	 * @param memoize true pour conserver le résultat des appels réussis
+	 */
+	public SingleFlight(boolean memoize) {
+		this.memoize = memoize;
+	}
+	
+	/**
+	 * Appel partagé et nombre d'appelants qui attendent son résultat
+	 */
+	private class Flight extends FutureTask<ReturnType> {
+		
+		private KeyType key;
+		private int waiters;
+		private boolean abandoned;
+		
+		private Flight(KeyType key, Callable<ReturnType> call) {
+			super(call);
+			this.key = key;
+		}
+		
+		/**
+		 * Ajoute un appelant, false si l'appel a déjà été abandonné
+		 * @return
+		 */
+		private synchronized boolean join() {
+			if ( abandoned ) {
+				return false;
+			}
+			waiters++;
+			return true;
+		}
+		
+		/**
+		 * Retire un appelant, l'appel est annulé s'il n'est pas terminé, que plus personne ne l'attend
+		 * et que son résultat ne doit pas être mémorisé
+		 */
+		private synchronized void leave() {
+			waiters--;
+			if ( waiters == 0 && ! memoize && ! isDone() ) {
+				abandoned = true;
+				cancel(true);
+				calls.remove(key, this);
+			}
+		}
+		
+		@Override
+		protected void set(ReturnType result) {
+			// Retiré avant que le résultat ne soit transmis aux appelants
+			if ( ! memoize ) {
+				calls.remove(key, this);
+			}
+			super.set(result);
+		}
+		
+		@Override
+		protected void setException(Throwable exception) {
+			calls.remove(key, this);
+			super.setException(exception);
+		}
+	}
+	
+	/**
+	 * Exécute l'appel, ou attend le résultat de l'appel déjà en cours pour la même clé
+	 * @param key
+	 * @param call
+	 * @return
+	 * @throws EnVOException
+	 */
+	public ReturnType execute(KeyType key, Callable<ReturnType> call) throws EnVOException {
+		Flight flight = null;
+		while ( flight == null ) {
+			Flight created = new Flight(key, call);
+			Flight current = calls.putIfAbsent(key, created);
+			if ( current == null ) {
+				created.join();
+				EXECUTOR.execute(created);
+				flight = created;
+			} else if ( current.join() ) {
+				flight = current;
+			} else {
+				// Appel abandonné en cours d'annulation : un nouvel appel est exécuté
+				calls.remove(key, current);
+			}
+		}
+		try {
+			return flight.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EnVOException("Interruption pendant l'attente d'un appel identique", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if ( cause instanceof EnVOException ) {
+				throw (EnVOException) cause;
+			} else if ( cause instanceof RuntimeException ) {
+				throw (RuntimeException) cause;
+			} else if ( cause instanceof Error ) {
+				throw (Error) cause;
+			}
+			throw new EnVOException(cause);
+		} finally {
+			flight.leave();
+		}
+	}
+	
+	/**
+	 * Retourne le nombre d'appels en cours (et d'appels réussis mémorisés)
+	 * @return
+	 */
+	public int getInFlight() {
+		return calls.size();
+	}
+}
@@ -4,16 +4,35 @@
 # Paramètres :
 #  - $1 : options (-v pour plus de logs, 
 #                  -w pour avoir la progression dans un popup,
-#                  -t pour transcoder un fichier de sous-titres)
+#                  -t pour transcoder un fichier de sous-titres ou tous ceux d'un dossier,
+#                  -b pour traiter tous les fichiers vidéo d'un dossier ou d'une liste,
+#                  -m pour surveiller un dossier et traiter ses nouveaux fichiers vidéo,
+#                  -d pour démarrer le démon, -s pour l'arrêter,
+#                  -c pour envoyer la requète au démon s'il est démarré)
 #  - $2 : langue (fre pour français)
-#  - $3 : chemin vers la vidéo ou nom de fichier (existance non obligatoire)
+#  - $3 : chemin vers la vidéo ou nom de fichier (existance non obligatoire),
+#         ou dossier / liste de fichiers en mode -b, dossier en mode -m
 ##############################################################################################
 
 # Constantes
 ENVO_JAR=$(dirname $0)/../EnVO.jar
 
+# Lecture d'une clé du fichier envo.properties du Jar
+envo_property() {
+        unzip -p "$ENVO_JAR" envo.properties 2>/dev/null | sed -n "s/^$1=//p" | tr -d '\r'
+}
+
+# Port et secret du démon, comme pour le client Java (server.port, server.secretFile, server.clientTimeout)
+ENVO_PORT=${ENVO_PORT:-$(envo_property server.port)}
+ENVO_PORT=${ENVO_PORT:-7417}
+ENVO_SECRET_FILE=${ENVO_SECRET_FILE:-$(envo_property server.secretFile)}
+ENVO_SECRET_FILE=${ENVO_SECRET_FILE:-$HOME/.envo/server.secret}
+ENVO_TIMEOUT=${ENVO_TIMEOUT:-$(envo_property server.clientTimeout)}
+ENVO_TIMEOUT=$(( ${ENVO_TIMEOUT:-600000} / 1000 ))
+
 # Recherche des paramètres
 WINDOWED="false"
+CLIENT="false"
 OPTIONS=""
 LANG="fre"
 VIDEO=""
@@ -23,6 +42,8 @@ for param in $@; do
         if [ "$param" = "-${param:1}" ]; then
                 if [ "$param" = "-w" ]; then
                         WINDOWED="true"
+                elif [ "$param" = "-c" ]; then
+                        CLIENT="true"
                 else
                         OPTIONS="$OPTIONS $param"
                 fi
@@ -36,6 +57,30 @@ done
 LANG=$1
 VIDEO=$2
 
+# Requète envoyée directement au démon, sans démarrer de JVM (secret puis chemins absolus, séparés par des tabulations)
+# Si le démon ne répond pas, la requète est exécutée normalement
+if [ "$CLIENT" = "true" ] && [ -r "$ENVO_SECRET_FILE" ] && { exec 3<>/dev/tcp/127.0.0.1/$ENVO_PORT; } 2>/dev/null; then
+        REQUEST="$(cat "$ENVO_SECRET_FILE")"$'\t'
+        for arg in $OPTIONS "$LANG" "$VIDEO"; do
+                if [ -e "$arg" ]; then
+                        arg=$(cd "$(dirname "$arg")" && pwd)/$(basename "$arg")
+                fi
+                if [ -n "$arg" ]; then
+                        REQUEST="$REQUEST$arg"$'\t'
+                fi
+        done
+        printf '%s\n' "${REQUEST%$'\t'}" >&3
+        IFS=$'\t' read -r -t "$ENVO_TIMEOUT" STATUS MESSAGE <&3
+        exec 3<&-
+        if [ "$STATUS" = "OK" ]; then
+                echo "$MESSAGE"
+                exit 0
+        else
+                echo "$MESSAGE" >&2
+                exit 1
+        fi
+fi
+
 # Exécution du Jar avec les paramètres fournis
 if [ "$WINDOWED" = "true" ]; then
         java -jar "$ENVO_JAR" $OPTIONS "$LANG" "$VIDEO" | sed 's/#/-/g'  | zenity --progress \
@@ -0,0 +1,121 @@
+package fr.dz.envo.test;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+
+import fr.dz.envo.api.AbstractSubtitlesSource;
+import fr.dz.envo.api.SubtitlesRequest;
+import fr.dz.envo.api.SubtitlesResult;
+import fr.dz.envo.exception.EnVOException;
+
+
+public class AbstractSubtitlesSourceTestCase extends AbstractEnVOTest {
+
+	// Constantes
+	private static final String LANG = "fre";
+	private static final String HTML_PREFIX = "html/";
+	private static final String SERIE_1_RESULT_PAGE = HTML_PREFIX + "The.Big.Bang.Theory.S05E23.[LOL].avi.html";
+	private static final String SERIE_2_RESULTS_PAGE = HTML_PREFIX + "The.Big.Bang.Theory.S05E22.[LOL].avi.html";
+	private static final String FILM_PAGE = HTML_PREFIX + "Wild.Wild.West.[LOL].avi.html";
+	private static final String MISSING_PAGE = HTML_PREFIX + "missing.html";
+
+	@Test
+	public void testFindSubtitlesKeepsPageOrder() throws Exception {
+		debug();
+		LocalPagesSource source = new LocalPagesSource(SERIE_2_RESULTS_PAGE, FILM_PAGE, SERIE_1_RESULT_PAGE, SERIE_2_RESULTS_PAGE);
+		source.init(new SubtitlesRequest(LANG, "The.Big.Bang.Theory.S05E23.avi"));
+		Assert.assertTrue(source.hasSubtitles());
+		List<SubtitlesResult> results = source.findSubtitles();
+		Assert.assertEquals("Nombre de résultats", 4, results.size());
+		Assert.assertEquals("Ordre des résultats", SERIE_2_RESULTS_PAGE, results.get(0).getId());
+		Assert.assertEquals("Ordre des résultats", FILM_PAGE, results.get(1).getId());
+		Assert.assertEquals("Ordre des résultats", SERIE_1_RESULT_PAGE, results.get(2).getId());
+		Assert.assertEquals("Ordre des résultats", SERIE_2_RESULTS_PAGE, results.get(3).getId());
+	}
+
+	@Test
+	public void testFindSubtitlesIgnoresFailedPages() throws Exception {
+		debug();
+		LocalPagesSource source = new LocalPagesSource(SERIE_1_RESULT_PAGE, MISSING_PAGE, FILM_PAGE);
+		source.init(new SubtitlesRequest(LANG, "The.Big.Bang.Theory.S05E23.avi"));
+		Assert.assertTrue(source.hasSubtitles());
+		List<SubtitlesResult> results = source.findSubtitles();
+		Assert.assertEquals("Nombre de résultats", 2, results.size());
+		Assert.assertEquals("Ordre des résultats", SERIE_1_RESULT_PAGE, results.get(0).getId());
+		Assert.assertEquals("Ordre des résultats", FILM_PAGE, results.get(1).getId());
+	}
+
+	@Test(expected=EnVOException.class)
+	public void testFindSubtitlesAllPagesFailed() throws Exception {
+		debug();
+		LocalPagesSource source = new LocalPagesSource(MISSING_PAGE, MISSING_PAGE);
+		source.init(new SubtitlesRequest(LANG, "The.Big.Bang.Theory.S05E23.avi"));
+		Assert.assertTrue(source.hasSubtitles());
+		source.findSubtitles();
+	}
+
+	/**
+	 * Source de test lisant des pages HTML locales
+	 */
+	private static class LocalPagesSource extends AbstractSubtitlesSource {
+
+		private List<String> pages;
+		private List<URL> urls = new ArrayList<URL>();
+
+		public LocalPagesSource(String... pages) {
+			this.pages = Arrays.asList(pages);
+		}
+
+		@Override
+		public URL buildQueryURL() throws EnVOException {
+			try {
+				for ( String page : pages ) {
+					urls.add(new File(page).toURI().toURL());
+				}
+				return new File(FILM_PAGE).toURI().toURL();
+			} catch (Exception e) {
+				throw new EnVOException(e);
+			}
+		}
+
+		@Override
+		public boolean hasResults(Document resultPage) throws EnVOException {
+			return true;
+		}
+
+		@Override
+		public List<URL> getResultsURLs(Document resultPage) throws EnVOException {
+			return urls;
+		}
+
+		@Override
+		public SubtitlesResult createResult(Document downloadPage) throws EnVOException {
+			SubtitlesResult result = new SubtitlesResult();
+			String title = downloadPage.title();
+			for ( String page : pages ) {
+				if ( title.startsWith(getPageTitle(page)) ) {
+					result.setId(page);
+				}
+			}
+			return result;
+		}
+
+		private String getPageTitle(String page) {
+			if ( page.equals(SERIE_1_RESULT_PAGE) ) {
+				return "Sous-titres \"The Big Bang Theory\"";
+			} else if ( page.equals(FILM_PAGE) ) {
+				return "Wild wild west";
+			} else {
+				return "Sous-titres - Téléchargez";
+			}
+		}
+	}
+}
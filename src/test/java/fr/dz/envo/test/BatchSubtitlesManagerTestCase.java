@@ -0,0 +1,58 @@
+package fr.dz.envo.test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import fr.dz.envo.api.BatchSubtitlesManager;
+import fr.dz.envo.exception.EnVOException;
+
+
+public class BatchSubtitlesManagerTestCase extends AbstractEnVOTest {
+
+	// Constantes
+	private static final String FILE_PREFIX = "target/test-files/batch/";
+	private static final String SEASON_FOLDER = FILE_PREFIX + "The Big Bang Theory/Saison 5/";
+	private static final String EPISODE_22 = SEASON_FOLDER + "The.Big.Bang.Theory.S05E22.[LOL].avi";
+	private static final String EPISODE_23 = SEASON_FOLDER + "The.Big.Bang.Theory.S05E23.[LOL].mkv";
+	private static final String SUBTITLES = SEASON_FOLDER + "The.Big.Bang.Theory.S05E23.[LOL].srt";
+	private static final String FILM = FILE_PREFIX + "Wild.Wild.West.AVI";
+	private static final String FILE_LIST = "target/test-files/batch.txt";
+	
+	@BeforeClass
+	public static void init() throws Exception {
+		FileUtils.deleteDirectory(new File(FILE_PREFIX));
+		new File(SEASON_FOLDER).mkdirs();
+		for ( String file : Arrays.asList(EPISODE_22, EPISODE_23, SUBTITLES, FILM) ) {
+			FileUtils.touch(new File(file));
+		}
+		FileUtils.writeLines(new File(FILE_LIST), Arrays.asList(EPISODE_22, "", "  "+FILM+"  "));
+	}
+	
+	@Test
+	public void testFindVideoFilesInFolder() throws Exception {
+		debug();
+		List<String> files = BatchSubtitlesManager.findVideoFiles(new File(FILE_PREFIX));
+		Assert.assertEquals("Fichiers vidéo", Arrays.asList(
+				new File(EPISODE_22).getPath(), new File(EPISODE_23).getPath(), new File(FILM).getPath()), files);
+	}
+	
+	@Test
+	public void testFindVideoFilesInList() throws Exception {
+		debug();
+		List<String> files = BatchSubtitlesManager.findVideoFiles(new File(FILE_LIST));
+		Assert.assertEquals("Fichiers vidéo", Arrays.asList(EPISODE_22, FILM), files);
+	}
+	
+	@Test(expected=EnVOException.class)
+	public void testFindVideoFilesMissing() throws Exception {
+		debug();
+		BatchSubtitlesManager.findVideoFiles(new File(FILE_PREFIX + "missing"));
+	}
+}
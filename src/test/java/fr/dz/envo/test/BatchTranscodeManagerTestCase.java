@@ -0,0 +1,55 @@
+package fr.dz.envo.test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+import fr.dz.envo.EnVO;
+import fr.dz.envo.api.BatchTranscodeManager;
+import fr.dz.envo.util.IOUtils;
+
+
+public class BatchTranscodeManagerTestCase extends AbstractEnVOTest {
+	
+	// Constantes
+	private static final String FILE_PREFIX = "target/test-files/transcode/";
+	private static final String CONTENT = StringUtils.repeat("Déjà vu, ça a été très étrange !\r\n", 200);
+	
+	@Test
+	public void testTranscodeDirectory() throws Exception {
+		debug();
+		File directory = new File(FILE_PREFIX);
+		FileUtils.deleteDirectory(directory);
+		for ( int i = 0; i < 40; i++ ) {
+			FileUtils.writeStringToFile(new File(directory, "saison"+(i % 3)+"/episode"+i+".srt"), "\uFEFF" + CONTENT, "UTF-8");
+		}
+		FileUtils.writeStringToFile(new File(directory, "deja.srt"), CONTENT, EnVO.DEFAULT_TARGET_ENCODING);
+		FileUtils.writeStringToFile(new File(directory, "ignore.txt"), CONTENT, "UTF-8");
+		
+		// Lien vers le dossier parent : non suivi
+		Files.createSymbolicLink(new File(directory, "saison0/boucle").toPath(), directory.getAbsoluteFile().toPath());
+		
+		BatchTranscodeManager manager = new BatchTranscodeManager(directory, EnVO.DEFAULT_TARGET_ENCODING);
+		manager.setNbThreads(4);
+		manager.doTranscode();
+		Assert.assertEquals("Fichiers", 41, manager.getFiles());
+		Assert.assertEquals("Convertis", 40, manager.getTranscoded());
+		Assert.assertEquals("Déjà convertis", 1, manager.getSkipped());
+		Assert.assertTrue("Erreurs", manager.getFailures().isEmpty());
+		File episode = new File(directory, "saison1/episode7.srt");
+		Assert.assertEquals("Encoding", EnVO.DEFAULT_TARGET_ENCODING, IOUtils.detectEncoding(episode));
+		Assert.assertEquals("Contenu", CONTENT, FileUtils.readFileToString(episode, EnVO.DEFAULT_TARGET_ENCODING));
+		Assert.assertEquals("Fichier ignoré", CONTENT, FileUtils.readFileToString(new File(directory, "ignore.txt"), "UTF-8"));
+		
+		// Une seconde passe n'a plus rien à convertir
+		manager = new BatchTranscodeManager(directory, EnVO.DEFAULT_TARGET_ENCODING);
+		manager.doTranscode();
+		Assert.assertEquals("Convertis", 0, manager.getTranscoded());
+		Assert.assertEquals("Déjà convertis", 41, manager.getSkipped());
+	}
+}
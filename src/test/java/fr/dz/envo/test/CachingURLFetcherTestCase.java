@@ -0,0 +1,136 @@
+package fr.dz.envo.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.util.http.AbstractURLFetcher;
+import fr.dz.envo.util.http.CachingURLFetcher;
+import fr.dz.envo.util.http.URLResponse;
+
+
+public class CachingURLFetcherTestCase extends AbstractEnVOTest {
+
+	// Constantes
+	private static final String CACHE_DIRECTORY = "target/test-files/cache/";
+	private static final String PAGE_URL = "http://www.opensubtitles.org/fr/search2/sublanguageid-fre/moviename-wild+wild+west";
+	private static final String FILENAMES_URL = "http://www.opensubtitles.org/fr/moviefilename?idsubmoviefile=";
+	private static final String ETAG = "\"1234\"";
+	
+	private CountingFetcher delegate;
+	
+	@Before
+	public void init() throws Exception {
+		FileUtils.deleteDirectory(new File(CACHE_DIRECTORY));
+		delegate = new CountingFetcher();
+	}
+	
+	@Test
+	public void testPageServedFromCache() throws Exception {
+		debug();
+		CachingURLFetcher fetcher = new CachingURLFetcher(delegate, new File(CACHE_DIRECTORY), 1024 * 1024, 3600);
+		Assert.assertEquals("Contenu", "page 1", read(fetcher.fetch(new URL(PAGE_URL))));
+		Assert.assertEquals("Contenu", "page 1", read(fetcher.fetch(new URL(PAGE_URL))));
+		Assert.assertEquals("Nombre de requètes", 1, delegate.count);
+	}
+	
+	@Test
+	public void testTTLRule() throws Exception {
+		debug();
+		CachingURLFetcher fetcher = new CachingURLFetcher(delegate, new File(CACHE_DIRECTORY), 1024 * 1024, 3600);
+		fetcher.addTTLRule("/search2/", 0);
+		Assert.assertEquals("Contenu", "page 1", read(fetcher.fetch(new URL(PAGE_URL))));
+		Assert.assertEquals("Contenu", "page 2", read(fetcher.fetch(new URL(PAGE_URL))));
+		Assert.assertEquals("Nombre de requètes", 2, delegate.count);
+	}
+	
+	@Test
+	public void testRevalidation() throws Exception {
+		debug();
+		CachingURLFetcher fetcher = new CachingURLFetcher(delegate, new File(CACHE_DIRECTORY), 1024 * 1024, 1);
+		Assert.assertEquals("Contenu", "page 1", read(fetcher.fetch(new URL(PAGE_URL))));
+		Thread.sleep(1100);
+		Assert.assertEquals("Contenu", "page 1", read(fetcher.fetch(new URL(PAGE_URL))));
+		Assert.assertEquals("Nombre de requètes", 2, delegate.count);
+		Assert.assertEquals("Requètes conditionnelles", 1, delegate.notModified);
+	}
+	
+	@Test
+	public void testStaleOnError() throws Exception {
+		debug();
+		CachingURLFetcher fetcher = new CachingURLFetcher(delegate, new File(CACHE_DIRECTORY), 1024 * 1024, 1);
+		Assert.assertEquals("Contenu", "page 1", read(fetcher.fetch(new URL(PAGE_URL))));
+		Thread.sleep(1100);
+		delegate.failing = true;
+		Assert.assertEquals("Contenu", "page 1", read(fetcher.fetch(new URL(PAGE_URL))));
+	}
+	
+	@Test
+	public void testLeastRecentlyUsedEviction() throws Exception {
+		debug();
+		CachingURLFetcher fetcher = new CachingURLFetcher(delegate, new File(CACHE_DIRECTORY), 15, 3600);
+		read(fetcher.fetch(new URL(FILENAMES_URL + 1)));
+		Thread.sleep(1100);
+		read(fetcher.fetch(new URL(FILENAMES_URL + 2)));
+		Thread.sleep(1100);
+		read(fetcher.fetch(new URL(FILENAMES_URL + 1)));
+		Thread.sleep(1100);
+		read(fetcher.fetch(new URL(FILENAMES_URL + 3)));
+		Assert.assertEquals("Nombre de requètes", 3, delegate.count);
+		
+		// La page 2 est la moins récemment utilisée, c'est elle qui a été supprimée
+		read(fetcher.fetch(new URL(FILENAMES_URL + 1)));
+		Assert.assertEquals("Nombre de requètes", 3, delegate.count);
+		read(fetcher.fetch(new URL(FILENAMES_URL + 2)));
+		Assert.assertEquals("Nombre de requètes", 4, delegate.count);
+	}
+	
+	/**
+	 * Lit et ferme une réponse
+	 * @param response
+	 * @return
+	 */
+	private String read(URLResponse response) throws Exception {
+		try {
+			return IOUtils.toString(response.getInputStream(), "UTF-8");
+		} finally {
+			response.close();
+		}
+	}
+	
+	/**
+	 * URLFetcher de test comptant les requètes et gérant les requètes conditionnelles
+	 */
+	private static class CountingFetcher extends AbstractURLFetcher {
+		
+		private int count;
+		private int notModified;
+		private boolean failing;
+		
+		@Override
+		public URLResponse fetch(URL url, Map<String,String> headers) throws EnVOException {
+			if ( failing ) {
+				throw new EnVOException("Erreur réseau simulée");
+			}
+			count++;
+			if ( headers != null && ETAG.equals(headers.get("If-None-Match")) ) {
+				notModified++;
+				return new URLResponse(url, HttpURLConnection.HTTP_NOT_MODIFIED, new ByteArrayInputStream(new byte[0]));
+			}
+			URLResponse response = new URLResponse(url, HttpURLConnection.HTTP_OK, new ByteArrayInputStream(("page "+count).getBytes()));
+			response.setHeader("ETag", ETAG);
+			response.setHeader("Content-Type", "text/html; charset=UTF-8");
+			return response;
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package fr.dz.envo.test;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.dz.envo.EnVO;
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.server.EnVOClient;
+import fr.dz.envo.server.EnVOServer;
+import fr.dz.envo.util.IOUtils;
+
+
+public class EnVOServerTestCase extends AbstractEnVOTest {
+	
+	// Constantes
+	private static final String DIRECTORY = "target/test-files/server/";
+	private static final int TIMEOUT = 60000;
+	
+	private EnVOServer server;
+	private Thread serverThread;
+	private EnVOClient client;
+	private File secretFile;
+	
+	@Before
+	public void init() throws Exception {
+		FileUtils.deleteDirectory(new File(DIRECTORY));
+		new File(DIRECTORY).mkdirs();
+		secretFile = new File(DIRECTORY, "server.secret");
+		server = new EnVOServer(0, 2, secretFile);
+		server.start();
+		serverThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					server.serve();
+				} catch (EnVOException e) {
+					EnVO.LOGGER.error("Erreur du démon", e);
+				}
+			}
+		});
+		serverThread.start();
+		client = new EnVOClient(server.getPort(), secretFile, TIMEOUT);
+	}
+	
+	@After
+	public void close() throws Exception {
+		server.stop();
+		serverThread.join(5000);
+	}
+	
+	@Test
+	public void testRequest() throws Exception {
+		debug();
+		Assert.assertTrue("Démon disponible", client.isAvailable());
+		
+		// Transcodage d'un fichier par le démon
+		File file = new File(DIRECTORY, "episode.srt");
+		FileUtils.writeStringToFile(file, "1\r\n00:00:01,000 --> 00:00:02,000\r\nDéjà vu, ça a été très étrange !\r\n", "UTF-8");
+		String result = client.send(Arrays.asList(EnVO.TRANSCODE_OPTION, file.getPath()));
+		Assert.assertTrue("Bilan : "+result, result.startsWith("Fichier converti"));
+		Assert.assertEquals("Encoding", EnVO.DEFAULT_TARGET_ENCODING, IOUtils.detectEncoding(file));
+		
+		// Arguments incorrects : le message d'erreur est retourné au client
+		try {
+			client.send(Arrays.asList("fre"));
+			Assert.fail("Arguments incorrects");
+		} catch (EnVOException e) {
+			Assert.assertTrue("Message : "+e.getMessage(), e.getMessage().startsWith("Arguments"));
+		}
+		
+		// Options interdites
+		try {
+			client.send(Arrays.asList(EnVO.DAEMON_OPTION));
+			Assert.fail("Option interdite");
+		} catch (EnVOException e) {
+			// OK
+		}
+	}
+	
+	@Test
+	public void testSecret() throws Exception {
+		debug();
+		
+		// Secret généré au démarrage, lisible uniquement par son propriétaire
+		Assert.assertTrue("Secret généré", secretFile.exists());
+		Assert.assertEquals("Droits", "rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(secretFile.toPath())));
+		
+		// Requète avec un autre secret : refusée, le démon continue de fonctionner
+		File otherSecret = new File(DIRECTORY, "other.secret");
+		FileUtils.writeStringToFile(otherSecret, "0123456789abcdef", "UTF-8");
+		Files.setPosixFilePermissions(otherSecret.toPath(), PosixFilePermissions.fromString("rw-------"));
+		EnVOClient other = new EnVOClient(server.getPort(), otherSecret, TIMEOUT);
+		try {
+			other.stop();
+			Assert.fail("Secret invalide");
+		} catch (EnVOException e) {
+			Assert.assertEquals("Message", "Requète non autorisée", e.getMessage());
+		}
+		Assert.assertTrue("Démon toujours démarré", server.isRunning());
+		
+		// Secret lisible par d'autres utilisateurs : refusé par le client
+		Files.setPosixFilePermissions(otherSecret.toPath(), PosixFilePermissions.fromString("rw-r--r--"));
+		try {
+			other.stop();
+			Assert.fail("Droits trop larges");
+		} catch (EnVOException e) {
+			Assert.assertTrue("Message : "+e.getMessage(), e.getMessage().contains("chmod 600"));
+		}
+	}
+	
+	@Test
+	public void testReadTimeout() throws Exception {
+		debug();
+		server.setReadTimeout(200);
+		
+		// Connexion sans requète : fermée par le démon après le délai
+		Socket socket = new Socket(InetAddress.getByName(null), server.getPort());
+		try {
+			socket.setSoTimeout(TIMEOUT);
+			Assert.assertEquals("Connexion fermée", -1, socket.getInputStream().read());
+		} finally {
+			socket.close();
+		}
+		
+		// Le démon continue de traiter les requètes
+		File file = new File(DIRECTORY, "episode.srt");
+		FileUtils.writeStringToFile(file, "1\r\n00:00:01,000 --> 00:00:02,000\r\nDéjà vu\r\n", "UTF-8");
+		Assert.assertTrue("Requète traitée", client.send(Arrays.asList(EnVO.TRANSCODE_OPTION, file.getPath())).startsWith("Fichier converti"));
+	}
+	
+	@Test
+	public void testStop() throws Exception {
+		debug();
+		client.stop();
+		serverThread.join(5000);
+		Assert.assertFalse("Démon arrêté", server.isRunning());
+		Assert.assertFalse("Démon indisponible", client.isAvailable());
+	}
+}
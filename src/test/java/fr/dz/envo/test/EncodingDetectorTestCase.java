@@ -0,0 +1,64 @@
+package fr.dz.envo.test;
+
+import java.io.File;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import fr.dz.envo.util.EncodingDetector;
+import fr.dz.envo.util.IOUtils;
+
+
+public class EncodingDetectorTestCase extends AbstractEnVOTest {
+
+	// Constantes
+	private static final String FILE_PREFIX = "target/test-files/detection/";
+	private static final String LINE = "Déjà vu, ça a été très étrange !\r\n";
+	
+	@BeforeClass
+	public static void init() throws Exception {
+		new File(FILE_PREFIX).mkdirs();
+	}
+	
+	@Test
+	public void testStopsOnBOM() throws Exception {
+		debug();
+		byte[] data = ("\uFEFF" + StringUtils.repeat(LINE, 10000)).getBytes("UTF-8");
+		EncodingDetector detector = new EncodingDetector(1024 * 1024);
+		Assert.assertFalse("Détection terminée", detector.handleData(data, 0, data.length));
+		Assert.assertEquals("Encoding", "UTF-8", detector.getEncoding());
+		
+		// Le détecteur ne retient que ce qu'il a effectivement examiné
+		Assert.assertEquals("Octets examinés", data.length, detector.getExaminedBytes());
+		detector = new EncodingDetector(1024 * 1024);
+		Assert.assertFalse("Détection terminée", detector.handleData(data, 0, 4096));
+		Assert.assertFalse("Détection terminée", detector.handleData(data, 4096, 4096));
+		Assert.assertEquals("Octets examinés", 4096, detector.getExaminedBytes());
+	}
+	
+	@Test
+	public void testStopsOnBudget() throws Exception {
+		debug();
+		byte[] data = StringUtils.repeat("Only ASCII here\r\n", 10000).getBytes("ISO-8859-1");
+		EncodingDetector detector = new EncodingDetector(10000);
+		for ( int offset = 0; offset < data.length; offset += 4096 ) {
+			detector.handleData(data, offset, Math.min(4096, data.length - offset));
+		}
+		Assert.assertTrue("Détection terminée", detector.isDone());
+		Assert.assertEquals("Octets examinés", 10000, detector.getExaminedBytes());
+	}
+	
+	@Test
+	public void testDetectFileEncoding() throws Exception {
+		debug();
+		File file = new File(FILE_PREFIX + "utf8.srt");
+		FileUtils.writeStringToFile(file, "\uFEFF" + StringUtils.repeat(LINE, 10000), "UTF-8");
+		long examined = EncodingDetector.getTotalExaminedBytes();
+		Assert.assertEquals("Encoding", "UTF-8", IOUtils.detectEncoding(file));
+		Assert.assertTrue("Octets examinés", EncodingDetector.getTotalExaminedBytes() - examined <= 4096);
+	}
+}
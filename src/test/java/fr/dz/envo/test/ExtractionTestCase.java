@@ -0,0 +1,83 @@
+package fr.dz.envo.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import fr.dz.envo.EnVO;
+import fr.dz.envo.api.AbstractSubtitlesSource;
+
+
+public class ExtractionTestCase extends AbstractEnVOTest {
+	
+	// Constantes
+	private static final String FILE_PREFIX = "target/test-files/extraction/";
+	private static final String SUBTITLES = "1\r\n00:00:01,000 --> 00:00:02,000\r\nDéjà vu, ça a été très étrange !\r\n";
+	private static final String OTHER = "1\r\n00:00:01,000 --> 00:00:02,000\r\nAutre fichier\r\n";
+	private static final String NFO = "Release info";
+	
+	@BeforeClass
+	public static void init() throws Exception {
+		FileUtils.deleteDirectory(new File(FILE_PREFIX));
+		new File(FILE_PREFIX).mkdirs();
+	}
+	
+	@Test
+	public void testExtractSRTWithBOM() throws Exception {
+		debug();
+		byte[] zip = createZip(
+				new String[] {"release/", "release/release.nfo", "release/other.txt", "release/subtitles.srt"},
+				new byte[][] {null, NFO.getBytes("UTF-8"), OTHER.getBytes("ISO-8859-1"), ("\uFEFF" + SUBTITLES).getBytes("UTF-8")});
+		File destination = new File(FILE_PREFIX + "bom.srt");
+		Assert.assertTrue("Fichier extrait", AbstractSubtitlesSource.extract(new ByteArrayInputStream(zip), destination));
+		Assert.assertEquals("Contenu", SUBTITLES, FileUtils.readFileToString(destination, EnVO.DEFAULT_TARGET_ENCODING));
+	}
+	
+	@Test
+	public void testExtractFirstNonNFO() throws Exception {
+		debug();
+		byte[] zip = createZip(
+				new String[] {"release.nfo", "subtitles.sub", "other.sub"},
+				new byte[][] {NFO.getBytes("UTF-8"), SUBTITLES.getBytes("UTF-16"), OTHER.getBytes("UTF-8")});
+		File destination = new File(FILE_PREFIX + "sub.srt");
+		Assert.assertTrue("Fichier extrait", AbstractSubtitlesSource.extract(new ByteArrayInputStream(zip), destination));
+		Assert.assertEquals("Contenu", SUBTITLES, FileUtils.readFileToString(destination, EnVO.DEFAULT_TARGET_ENCODING));
+	}
+	
+	@Test
+	public void testExtractNothing() throws Exception {
+		debug();
+		byte[] zip = createZip(new String[] {"release.nfo"}, new byte[][] {NFO.getBytes("UTF-8")});
+		File destination = new File(FILE_PREFIX + "none.srt");
+		Assert.assertFalse("Fichier extrait", AbstractSubtitlesSource.extract(new ByteArrayInputStream(zip), destination));
+		Assert.assertFalse("Fichier créé", destination.exists());
+	}
+	
+	/**
+	 * Crée un ZIP en mémoire
+	 * @param names
+	 * @param contents
+	 * @return
+	 */
+	private byte[] createZip(String[] names, byte[][] contents) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ZipOutputStream zip = new ZipOutputStream(out);
+		for ( int i = 0; i < names.length; i++ ) {
+			zip.putNextEntry(new ZipEntry(names[i]));
+			if ( contents[i] != null ) {
+				zip.write(contents[i]);
+			}
+			zip.closeEntry();
+		}
+		zip.close();
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,94 @@
+package fr.dz.envo.test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fr.dz.envo.api.SubtitlesRequest;
+import fr.dz.envo.api.SubtitlesResult;
+import fr.dz.envo.api.SubtitlesSource;
+import fr.dz.envo.exception.EnVOException;
+
+/**
+ * Source de test sans accès au réseau : retourne toujours les mêmes résultats (aucun par défaut),
+ * éventuellement après un délai, et compte les recherches. Les premières recherches peuvent être en erreur.
+ */
+public class FakeSubtitlesSource implements SubtitlesSource {
+	
+	// Attributs
+	private List<SubtitlesResult> results;
+	private long delay;
+	private int failures;
+	private AtomicInteger searches = new AtomicInteger();
+	private volatile SubtitlesRequest request;
+	
+	/**
+	 * Constructeur
+	 * @param results Les résultats de chaque recherche
+	 */
+	public FakeSubtitlesSource(SubtitlesResult... results) {
+		this.results = Arrays.asList(results);
+	}
+	
+	@Override
+	public void init(SubtitlesRequest request) throws EnVOException {
+		this.request = request;
+	}
+	
+	@Override
+	public boolean hasSubtitles() throws EnVOException {
+		int number = searches.incrementAndGet();
+		if ( delay > 0 ) {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new EnVOException("Recherche interrompue", e);
+			}
+		}
+		if ( number <= failures ) {
+			throw new EnVOException("Erreur réseau simulée");
+		}
+		return ! results.isEmpty();
+	}
+	
+	@Override
+	public List<SubtitlesResult> findSubtitles() throws EnVOException {
+		if ( results.isEmpty() ) {
+			throw new EnVOException("Aucun résultat");
+		}
+		return results;
+	}
+	
+	/*
+	 * GETTERS & SETTERS
+	 */
+	
+	/**
+	 * @return the number of searches
+	 */
+	public int getSearches() {
+		return searches.get();
+	}
+	
+	/**
+	 * @return the last request
+	 */
+	public SubtitlesRequest getRequest() {
+		return request;
+	}
+	
+	/**
+	 * @param delay the duration of each search in milliseconds
+	 */
+	public void setDelay(long delay) {
+		this.delay = delay;
+	}
+	
+	/**
+	 * @param failures the number of first searches in error
+	 */
+	public void setFailures(int failures) {
+		this.failures = failures;
+	}
+}
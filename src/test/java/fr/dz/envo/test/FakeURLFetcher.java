@@ -0,0 +1,91 @@
+package fr.dz.envo.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.exception.HttpStatusException;
+import fr.dz.envo.util.http.AbstractURLFetcher;
+import fr.dz.envo.util.http.URLResponse;
+
+/**
+ * URLFetcher de test sans accès au réseau : la réponse à la requète n est "page n", éventuellement après un délai.
+ * Les premières requètes peuvent être en erreur (erreur réseau ou statut HTTP) et une requète peut être plus lente.
+ */
+public class FakeURLFetcher extends AbstractURLFetcher {
+	
+	// Attributs
+	private AtomicInteger count = new AtomicInteger();
+	private int failures;
+	private int status;
+	private long delay;
+	private volatile int slowRequest;
+	private long slowDelay;
+	
+	/**
+	 * Constructeur d'un URLFetcher sans erreur
+	 */
+	public FakeURLFetcher() {
+		this(0, 0);
+	}
+	
+	/**
+	 * Constructeur
+	 * @param failures Le nombre de premières requètes en erreur
+	 * @param status Le statut HTTP des requètes en erreur (0 pour une erreur réseau)
+	 */
+	public FakeURLFetcher(int failures, int status) {
+		this.failures = failures;
+		this.status = status;
+	}
+	
+	@Override
+	public URLResponse fetch(URL url, Map<String,String> headers) throws EnVOException {
+		int number = count.incrementAndGet();
+		long duration = number == slowRequest ? slowDelay : delay;
+		if ( duration > 0 ) {
+			try {
+				Thread.sleep(duration);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new EnVOException("Requète interrompue", e);
+			}
+		}
+		if ( number <= failures ) {
+			throw status > 0 ? new HttpStatusException(url, status) : new EnVOException("Erreur réseau simulée", new IOException("Connexion refusée"));
+		}
+		return new URLResponse(url, HttpURLConnection.HTTP_OK, new ByteArrayInputStream(("page "+number).getBytes()));
+	}
+	
+	/**
+	 * Rend une requète plus lente que les autres
+	 * @param number Le numéro de la requète
+	 * @param slowDelay Sa durée en millisecondes
+	 */
+	public void setSlowRequest(int number, long slowDelay) {
+		this.slowDelay = slowDelay;
+		this.slowRequest = number;
+	}
+	
+	/*
+	 * GETTERS & SETTERS
+	 */
+	
+	/**
+	 * @return the number of requests
+	 */
+	public int getCount() {
+		return count.get();
+	}
+	
+	/**
+	 * @param delay the duration of each request in milliseconds
+	 */
+	public void setDelay(long delay) {
+		this.delay = delay;
+	}
+}
@@ -0,0 +1,119 @@
+package fr.dz.envo.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.util.thread.GenericTaskThread;
+import fr.dz.envo.util.thread.GenericThreadManager;
+
+
+public class GenericThreadManagerTestCase extends AbstractEnVOTest {
+	
+	@Test
+	public void testTasksProcessedAsTheyComplete() throws Exception {
+		debug();
+		RecordingManager manager = new RecordingManager(Arrays.asList(new SleepingTask("lent", 300), new SleepingTask("rapide", 10)));
+		List<String> results = manager.doTasks();
+		Assert.assertEquals("Ordre de fin des tâches", Arrays.asList("rapide", "lent"), manager.completed);
+		Assert.assertEquals("Ordre des résultats", Arrays.asList("lent", "rapide"), results);
+		Assert.assertEquals("Post traitement", results, manager.postResults);
+	}
+	
+	@Test
+	public void testHungTaskIsCancelled() throws Exception {
+		debug();
+		RecordingManager manager = new RecordingManager(Arrays.asList(new SleepingTask("bloqué", 60000), new SleepingTask("rapide", 10)));
+		manager.setTimeoutMillis(200);
+		long start = System.currentTimeMillis();
+		List<String> results = manager.doTasks();
+		Assert.assertTrue("Timeout non respecté", System.currentTimeMillis() - start < 5000);
+		Assert.assertEquals("Résultats", Arrays.asList("rapide"), results);
+		Assert.assertEquals("Post traitement", results, manager.postResults);
+	}
+	
+	@Test
+	public void testSufficientResultStopsWaiting() throws Exception {
+		debug();
+		RecordingManager manager = new RecordingManager(Arrays.asList(new SleepingTask("lent", 60000), new SleepingTask(null, 10), new SleepingTask("parfait", 50)));
+		manager.sufficientResult = "parfait";
+		long start = System.currentTimeMillis();
+		List<String> results = manager.doTasks();
+		Assert.assertTrue("Attente inutile", System.currentTimeMillis() - start < 5000);
+		Assert.assertEquals("Résultats", Arrays.asList("parfait"), results);
+		Assert.assertEquals("Post traitement", results, manager.postResults);
+	}
+	
+	@Test(expected=EnVOException.class)
+	public void testFailedTask() throws Exception {
+		debug();
+		RecordingManager manager = new RecordingManager(Arrays.asList(new SleepingTask(null, 10), new SleepingTask("rapide", 10)));
+		manager.doTasks();
+	}
+	
+	/**
+	 * Gestionnaire enregistrant l'ordre de fin des tâches
+	 */
+	private static class RecordingManager extends GenericThreadManager<String> {
+		
+		private List<String> completed = new ArrayList<String>();
+		private List<String> postResults;
+		private String sufficientResult;
+		
+		public RecordingManager(List<? extends GenericTaskThread<String>> tasks) {
+			super(new ArrayList<GenericTaskThread<String>>(tasks));
+		}
+		
+		@Override
+		protected void taskCompleted(GenericTaskThread<String> task) throws EnVOException {
+			completed.addAll(task.getResults());
+		}
+		
+		@Override
+		protected boolean isSufficient(String result) {
+			return result.equals(sufficientResult);
+		}
+		
+		@Override
+		public void postOperation(List<String> results) throws EnVOException {
+			this.postResults = results;
+		}
+	}
+	
+	/**
+	 * Tâche retournant son nom après une attente (ou échouant si pas de nom)
+	 */
+	private static class SleepingTask extends GenericTaskThread<String> {
+		
+		private String name;
+		private long sleepMillis;
+		
+		public SleepingTask(String name, long sleepMillis) {
+			this.name = name;
+			this.sleepMillis = sleepMillis;
+		}
+		
+		@Override
+		public List<String> doTask() throws EnVOException {
+			try {
+				Thread.sleep(sleepMillis);
+			} catch (InterruptedException e) {
+				throw new EnVOException("Interruption", e);
+			}
+			if ( name == null ) {
+				throw new EnVOException("Echec");
+			}
+			return Arrays.asList(name);
+		}
+		
+		@Override
+		public String getDescription() {
+			return "Attente de "+sleepMillis+" ms";
+		}
+	}
+}
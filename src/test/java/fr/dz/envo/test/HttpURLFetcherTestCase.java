@@ -0,0 +1,130 @@
+package fr.dz.envo.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.util.http.HttpURLFetcher;
+import fr.dz.envo.util.http.URLResponse;
+
+
+public class HttpURLFetcherTestCase extends AbstractEnVOTest {
+	
+	// Constantes
+	private static final String CONTENT = "<html><body>Wild Wild West</body></html>";
+	
+	private HttpServer server;
+	private Set<Integer> clientPorts = new HashSet<Integer>();
+	private HttpURLFetcher fetcher;
+	
+	@Before
+	public void init() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				synchronized (clientPorts) {
+					clientPorts.add(exchange.getRemoteAddress().getPort());
+				}
+				if ( exchange.getRequestURI().getPath().startsWith("/missing") ) {
+					byte[] body = "Not found".getBytes("UTF-8");
+					exchange.sendResponseHeaders(404, body.length);
+					exchange.getResponseBody().write(body);
+					exchange.close();
+					return;
+				}
+				
+				// Contenu compressé si le client l'accepte
+				byte[] body = CONTENT.getBytes("UTF-8");
+				String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+				if ( acceptEncoding != null && acceptEncoding.contains("gzip") ) {
+					ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+					GZIPOutputStream gzip = new GZIPOutputStream(buffer);
+					gzip.write(body);
+					gzip.close();
+					body = buffer.toByteArray();
+					exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+				}
+				exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		server.start();
+		fetcher = new HttpURLFetcher(5000, 5000, 10, 2, 30000);
+	}
+	
+	@After
+	public void close() throws Exception {
+		fetcher.close();
+		server.stop(0);
+	}
+	
+	@Test
+	public void testCompressedContent() throws Exception {
+		debug();
+		URLResponse response = fetcher.fetch(getURL("/search"));
+		Assert.assertEquals("Encoding", "UTF-8", response.getCharset());
+		Assert.assertEquals("Contenu décompressé", CONTENT, read(response));
+	}
+	
+	@Test
+	public void testConnectionReuse() throws Exception {
+		debug();
+		for ( int i = 0; i < 10; i++ ) {
+			Assert.assertEquals("Contenu", CONTENT, read(fetcher.fetch(getURL("/page/"+i))));
+		}
+		
+		// Une erreur ne ferme pas la connexion (son contenu est lu)
+		try {
+			fetcher.fetch(getURL("/missing"));
+			Assert.fail("Erreur HTTP");
+		} catch (EnVOException e) {
+			// OK
+		}
+		Assert.assertEquals("Contenu", CONTENT, read(fetcher.fetch(getURL("/page/last"))));
+		Assert.assertEquals("Connexion réutilisée", 1, clientPorts.size());
+	}
+	
+	@Test
+	public void testInvalidCharacters() throws Exception {
+		debug();
+		Assert.assertEquals("Contenu", CONTENT, read(fetcher.fetch(getURL("/subtitles/The Big Bang Theory [LOL]"))));
+	}
+	
+	private URL getURL(String path) throws Exception {
+		return new URL("http://127.0.0.1:"+server.getAddress().getPort()+path);
+	}
+	
+	/**
+	 * Lit et ferme une réponse
+	 * @param response
+	 * @return
+	 */
+	private String read(URLResponse response) throws Exception {
+		try {
+			return IOUtils.toString(response.getInputStream(), "UTF-8");
+		} finally {
+			response.close();
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package fr.dz.envo.test;
+
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import fr.dz.envo.util.Levenshtein;
+
+
+public class LevenshteinTestCase extends AbstractEnVOTest {
+	
+	// Constantes
+	private static final String ALPHABET = "abcdeABCDE.-_ 0123éèàçŒ€日本";
+	
+	@Test
+	public void testKnownDistances() throws Exception {
+		debug();
+		assertDistance("", "");
+		assertDistance("abc", "");
+		assertDistance("", "abc");
+		assertDistance("kitten", "sitting");
+		assertDistance("The.Big.Bang.Theory.S01E01.720p.HDTV.X264-DIMENSION.mkv", "the big bang theory 1x01 720p hdtv");
+		assertDistance("Dexter.S06E07.HDTV.XviD-LOL", "Dexter - 06x07 - Nebraska.LOL.French.C.orig.Addic7ed.com");
+	}
+	
+	@Test
+	public void testSameDistancesAsReference() throws Exception {
+		debug();
+		Random random = new Random(42);
+		for ( int i = 0; i < 20000; i++ ) {
+			int alphabet = 2 + random.nextInt(ALPHABET.length() - 1);
+			String s0 = randomString(random, random.nextInt(i % 10 == 0 ? 200 : 80), alphabet);
+			String s1 = random.nextInt(4) == 0 ? mutate(random, s0, alphabet) : randomString(random, random.nextInt(i % 10 == 0 ? 200 : 80), alphabet);
+			assertDistance(s0, s1);
+			assertDistance(s1, s0);
+		}
+	}
+	
+	@Test
+	public void testDistanceAtMost() throws Exception {
+		debug();
+		Random random = new Random(7);
+		for ( int i = 0; i < 20000; i++ ) {
+			int alphabet = 2 + random.nextInt(ALPHABET.length() - 1);
+			String s0 = randomString(random, random.nextInt(i % 10 == 0 ? 200 : 80), alphabet);
+			String s1 = random.nextInt(2) == 0 ? mutate(random, s0, alphabet) : randomString(random, random.nextInt(i % 10 == 0 ? 200 : 80), alphabet);
+			int distance = referenceDistance(s0, s1);
+			int limit = random.nextInt(Math.max(s0.length(), s1.length()) + 2);
+			Assert.assertEquals("Distance bornée à "+limit+" entre \""+s0+"\" et \""+s1+"\"", Math.min(distance, limit + 1), Levenshtein.distanceAtMost(s0, s1, limit));
+		}
+		Assert.assertEquals("Sans limite", 3, Levenshtein.distanceAtMost("kitten", "sitting", Integer.MAX_VALUE));
+	}
+	
+	/**
+	 * Compare la distance calculée à celle de l'implémentation de référence
+	 * @param s0
+	 * @param s1
+	 */
+	private void assertDistance(String s0, String s1) {
+		Assert.assertEquals("Distance entre \""+s0+"\" et \""+s1+"\"", referenceDistance(s0, s1), Levenshtein.distance(s0, s1));
+	}
+	
+	private String randomString(Random random, int length, int alphabet) {
+		StringBuilder result = new StringBuilder(length);
+		for ( int i = 0; i < length; i++ ) {
+			result.append(ALPHABET.charAt(random.nextInt(alphabet)));
+		}
+		return result.toString();
+	}
+	
+	private String mutate(Random random, String s, int alphabet) {
+		StringBuilder result = new StringBuilder(s);
+		int mutations = random.nextInt(10);
+		for ( int i = 0; i < mutations && result.length() > 0; i++ ) {
+			int position = random.nextInt(result.length());
+			switch ( random.nextInt(3) ) {
+				case 0:
+					result.deleteCharAt(position);
+					break;
+				case 1:
+					result.insert(position, ALPHABET.charAt(random.nextInt(alphabet)));
+					break;
+				default:
+					result.setCharAt(position, ALPHABET.charAt(random.nextInt(alphabet)));
+			}
+		}
+		return result.toString();
+	}
+	
+	/**
+	 * Implémentation historique de la distance, sert de référence
+	 * @param s0
+	 * @param s1
+	 * @return
+	 */
+	private static int referenceDistance(String s0, String s1) {
+		int len0 = s0.length()+1;
+		int len1 = s1.length()+1;
+		int[] cost = new int[len0];
+		int[] newcost = new int[len0];
+		for(int i=0;i<len0;i++) cost[i]=i;
+		for(int j=1;j<len1;j++) {
+			newcost[0]=j-1;
+			for(int i=1;i<len0;i++) {
+				int match = (s0.charAt(i-1)==s1.charAt(j-1))?0:1;
+				int cost_replace = cost[i-1]+match;
+				int cost_insert  = cost[i]+1;
+				int cost_delete  = newcost[i-1]+1;
+				newcost[i] = Math.min(cost_insert, Math.min(cost_delete, cost_replace));
+			}
+			int[] swap=cost; cost=newcost; newcost=swap;
+		}
+		return cost[len0-1];
+	}
+}
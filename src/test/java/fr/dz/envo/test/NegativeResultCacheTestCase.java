@@ -0,0 +1,88 @@
+package fr.dz.envo.test;
+
+import java.io.File;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.dz.envo.api.NegativeResultCache;
+import fr.dz.envo.api.SearchSubtitlesTask;
+import fr.dz.envo.api.SubtitlesRequest;
+
+
+public class NegativeResultCacheTestCase extends AbstractEnVOTest {
+	
+	// Constantes
+	private static final String FILE_PREFIX = "target/test-files/misses/";
+	private static final File MISSES_FILE = new File(FILE_PREFIX + "misses.properties");
+	private static final long HOUR = 3600 * 1000L;
+	private static final String SOURCE_ID = "test";
+	private static final SubtitlesRequest REQUEST = new SubtitlesRequest("fre", "The.Big.Bang.Theory.S05E23.[LOL].avi");
+	
+	@Before
+	public void init() throws Exception {
+		FileUtils.deleteDirectory(new File(FILE_PREFIX));
+	}
+	
+	@After
+	public void reset() {
+		NegativeResultCache.setInstance(null);
+	}
+	
+	@Test
+	public void testRecheckIntervals() throws Exception {
+		debug();
+		NegativeResultCache cache = new NegativeResultCache(MISSES_FILE, HOUR, 6 * HOUR, 24 * HOUR);
+		Assert.assertTrue("Recherche inconnue", cache.isDue(SOURCE_ID, REQUEST, 0));
+		
+		// Délais successifs : 1h, 6h, puis 24h pour tous les échecs suivants
+		long now = 0;
+		for ( long interval : new long[] {HOUR, 6 * HOUR, 24 * HOUR, 24 * HOUR} ) {
+			cache.recordMiss(SOURCE_ID, REQUEST, now);
+			Assert.assertFalse("Avant le délai", cache.isDue(SOURCE_ID, REQUEST, now + interval - 1));
+			Assert.assertTrue("Après le délai", cache.isDue(SOURCE_ID, REQUEST, now + interval));
+			now += interval;
+		}
+		
+		// Autre épisode, autre source ou autre langue : recherches différentes
+		Assert.assertTrue("Autre épisode", cache.isDue(SOURCE_ID, new SubtitlesRequest("fre", "The.Big.Bang.Theory.S05E24.[LOL].avi"), now));
+		Assert.assertTrue("Autre source", cache.isDue("other", REQUEST, now));
+		Assert.assertTrue("Autre langue", cache.isDue(SOURCE_ID, new SubtitlesRequest("eng", "The.Big.Bang.Theory.S05E23.[LOL].avi"), now));
+		
+		// Un résultat efface l'entrée
+		cache.recordHit(SOURCE_ID, REQUEST);
+		Assert.assertTrue("Après un résultat", cache.isDue(SOURCE_ID, REQUEST, now));
+		Assert.assertEquals("Entrées", 0, cache.size());
+	}
+	
+	@Test
+	public void testPersistence() throws Exception {
+		debug();
+		new NegativeResultCache(MISSES_FILE, HOUR).recordMiss(SOURCE_ID, REQUEST, 1000);
+		NegativeResultCache cache = new NegativeResultCache(MISSES_FILE, HOUR);
+		Assert.assertFalse("Rechargement", cache.isDue(SOURCE_ID, REQUEST, 1000 + HOUR - 1));
+		Assert.assertEquals("Prochaine vérification", 1000 + HOUR, cache.getNextCheck(SOURCE_ID, REQUEST));
+	}
+	
+	@Test
+	public void testSearchTaskSkipsKnownMisses() throws Exception {
+		debug();
+		NegativeResultCache.setInstance(new NegativeResultCache(MISSES_FILE, HOUR));
+		FakeSubtitlesSource source = new FakeSubtitlesSource();
+		
+		// Première recherche sans résultat enregistrée, puis ignorée en traitement par lot
+		SearchSubtitlesTask task = new SearchSubtitlesTask(REQUEST, source, SOURCE_ID);
+		task.setSkipKnownMisses(true);
+		task.doTask();
+		task.doTask();
+		Assert.assertEquals("Recherches", 1, source.getSearches());
+		
+		// Une requète isolée est toujours exécutée
+		new SearchSubtitlesTask(REQUEST, source, SOURCE_ID).doTask();
+		Assert.assertEquals("Recherches", 2, source.getSearches());
+	}
+}
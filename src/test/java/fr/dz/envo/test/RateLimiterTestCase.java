@@ -0,0 +1,128 @@
+package fr.dz.envo.test;
+
+import java.io.ByteArrayInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.exception.HttpStatusException;
+import fr.dz.envo.util.http.AbstractURLFetcher;
+import fr.dz.envo.util.http.RateLimitedURLFetcher;
+import fr.dz.envo.util.http.RateLimiter;
+import fr.dz.envo.util.http.URLResponse;
+
+
+public class RateLimiterTestCase extends AbstractEnVOTest {
+	
+	// Constantes
+	private static final String HOST = "www.opensubtitles.org";
+	private static final String PAGE_URL = "http://"+HOST+"/fr/search2/sublanguageid-fre/moviename-wild+wild+west";
+	
+	@Test
+	public void testRate() throws Exception {
+		debug();
+		RateLimiter limiter = new RateLimiter(20, 1, 1, 4, 4, 0, 0.5, 0);
+		long start = System.currentTimeMillis();
+		for ( int i = 0; i < 5; i++ ) {
+			limiter.acquire();
+			limiter.release(false, 0);
+		}
+		long duration = System.currentTimeMillis() - start;
+		Assert.assertTrue("Débit limité : "+duration, duration >= 180);
+	}
+	
+	@Test
+	public void testAdaptiveConcurrency() throws Exception {
+		debug();
+		RateLimiter limiter = new RateLimiter(0, 1, 1, 4, 8, 1000, 0.5, 0);
+		
+		// Réponses rapides : augmentation progressive jusqu'au maximum
+		for ( int i = 0; i < 200; i++ ) {
+			limiter.acquire();
+			limiter.release(false, 10);
+		}
+		Assert.assertEquals("Augmentation", 8, limiter.getConcurrencyLimit());
+		
+		// Réponse lente puis surcharge : division
+		limiter.acquire();
+		limiter.release(false, 2000);
+		Assert.assertEquals("Réponse lente", 4, limiter.getConcurrencyLimit());
+		limiter.acquire();
+		limiter.release(true, 10);
+		Assert.assertEquals("Surcharge", 2, limiter.getConcurrencyLimit());
+		for ( int i = 0; i < 5; i++ ) {
+			limiter.acquire();
+			limiter.release(true, 10);
+		}
+		Assert.assertEquals("Minimum", 1, limiter.getConcurrencyLimit());
+	}
+	
+	@Test
+	public void testPenalty() throws Exception {
+		debug();
+		RateLimiter limiter = new RateLimiter(0, 1, 1, 4, 8, 0, 0.5, 200);
+		limiter.acquire();
+		limiter.release(true, 10);
+		long start = System.currentTimeMillis();
+		limiter.acquire();
+		limiter.release(false, 10);
+		long duration = System.currentTimeMillis() - start;
+		Assert.assertTrue("Pénalité : "+duration, duration >= 180);
+	}
+	
+	@Test
+	public void testFetcher() throws Exception {
+		debug();
+		StatusFetcher delegate = new StatusFetcher();
+		RateLimitedURLFetcher fetcher = new RateLimitedURLFetcher(delegate);
+		RateLimiter limiter = new RateLimiter(0, 1, 1, 4, 8, 0, 0.5, 0);
+		fetcher.setRateLimiter(HOST, limiter);
+		
+		// La place est occupée jusqu'à la fermeture de la réponse
+		URLResponse response = fetcher.fetch(new URL(PAGE_URL));
+		Assert.assertEquals("Requète en cours", 1, limiter.getInFlight());
+		response.close();
+		response.close();
+		Assert.assertEquals("Requète terminée", 0, limiter.getInFlight());
+		
+		// Site surchargé
+		delegate.status = HttpStatusException.TOO_MANY_REQUESTS;
+		try {
+			fetcher.fetch(new URL(PAGE_URL));
+			Assert.fail("Erreur HTTP");
+		} catch (HttpStatusException e) {
+			Assert.assertTrue("Surcharge", e.isOverloaded());
+		}
+		Assert.assertEquals("Requète terminée", 0, limiter.getInFlight());
+		Assert.assertEquals("Ralentissement", 2, limiter.getConcurrencyLimit());
+	}
+	
+	@Test
+	public void testSiteName() throws Exception {
+		debug();
+		Assert.assertEquals("Site", "opensubtitles", RateLimitedURLFetcher.getSiteName("www.opensubtitles.org"));
+		Assert.assertEquals("Site", "podnapisi", RateLimitedURLFetcher.getSiteName("podnapisi.net"));
+		Assert.assertEquals("Site", "localhost", RateLimitedURLFetcher.getSiteName("localhost"));
+	}
+	
+	/**
+	 * URLFetcher de test retournant une erreur HTTP si un statut d'erreur est renseigné
+	 */
+	private static class StatusFetcher extends AbstractURLFetcher {
+		
+		private int status = HttpURLConnection.HTTP_OK;
+		
+		@Override
+		public URLResponse fetch(URL url, Map<String,String> headers) throws EnVOException {
+			if ( status != HttpURLConnection.HTTP_OK ) {
+				throw new HttpStatusException(url, status);
+			}
+			return new URLResponse(url, status, new ByteArrayInputStream("page".getBytes()));
+		}
+	}
+}
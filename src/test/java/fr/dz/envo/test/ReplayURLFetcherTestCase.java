@@ -0,0 +1,104 @@
+package fr.dz.envo.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.util.http.AbstractURLFetcher;
+import fr.dz.envo.util.http.ReplayURLFetcher;
+import fr.dz.envo.util.http.ReplayURLFetcher.Mode;
+import fr.dz.envo.util.http.URLResponse;
+
+
+public class ReplayURLFetcherTestCase extends AbstractEnVOTest {
+	
+	// Constantes
+	private static final String REPLAY_DIRECTORY = "target/test-files/replay/";
+	private static final String PAGE_URL = "http://www.opensubtitles.org/fr/search2/sublanguageid-fre/moviename-wild+wild+west";
+	private static final String OTHER_URL = "http://www.podnapisi.net/fr/ppodnapisi/search?tbsl=3&sK=wild+wild+west";
+	
+	@Before
+	public void init() throws Exception {
+		FileUtils.deleteDirectory(new File(REPLAY_DIRECTORY));
+	}
+	
+	@Test
+	public void testRecordAndReplay() throws Exception {
+		debug();
+		
+		// Enregistrement
+		ReplayURLFetcher recorder = new ReplayURLFetcher(new PageFetcher(), Mode.RECORD, new File(REPLAY_DIRECTORY), 0, 0);
+		Assert.assertEquals("Contenu enregistré", "page "+PAGE_URL, read(recorder.fetch(new URL(PAGE_URL))));
+		
+		// Rejeu sans délégué
+		ReplayURLFetcher replayer = new ReplayURLFetcher(null, Mode.REPLAY, new File(REPLAY_DIRECTORY), 0, 0);
+		URLResponse response = replayer.fetch(new URL(PAGE_URL));
+		Assert.assertEquals("Statut", HttpURLConnection.HTTP_OK, response.getStatus());
+		Assert.assertEquals("Encoding", "UTF-8", response.getCharset());
+		Assert.assertEquals("Contenu rejoué", "page "+PAGE_URL, read(response));
+		
+		// URL jamais enregistrée
+		try {
+			replayer.fetch(new URL(OTHER_URL));
+			Assert.fail("URL non enregistrée");
+		} catch (EnVOException e) {
+			// OK
+		}
+	}
+	
+	@Test
+	public void testLatency() throws Exception {
+		debug();
+		new ReplayURLFetcher(new PageFetcher(), Mode.RECORD, new File(REPLAY_DIRECTORY), 0, 0).fetch(new URL(PAGE_URL)).close();
+		ReplayURLFetcher replayer = new ReplayURLFetcher(null, Mode.REPLAY, new File(REPLAY_DIRECTORY), 100, 50);
+		long start = System.currentTimeMillis();
+		read(replayer.fetch(new URL(PAGE_URL)));
+		long duration = System.currentTimeMillis() - start;
+		Assert.assertTrue("Latence simulée : "+duration, duration >= 100);
+	}
+	
+	@Test
+	public void testMode() throws Exception {
+		debug();
+		Assert.assertEquals("Mode", Mode.RECORD, Mode.fromName("record"));
+		Assert.assertEquals("Mode", Mode.REPLAY, Mode.fromName("REPLAY"));
+		Assert.assertNull("Mode", Mode.fromName(""));
+		Assert.assertNull("Mode", Mode.fromName(null));
+	}
+	
+	/**
+	 * Lit et ferme une réponse
+	 * @param response
+	 * @return
+	 */
+	private String read(URLResponse response) throws Exception {
+		try {
+			return IOUtils.toString(response.getInputStream(), "UTF-8");
+		} finally {
+			response.close();
+		}
+	}
+	
+	/**
+	 * URLFetcher de test retournant une page contenant son URL
+	 */
+	private static class PageFetcher extends AbstractURLFetcher {
+		
+		@Override
+		public URLResponse fetch(URL url, Map<String,String> headers) throws EnVOException {
+			URLResponse response = new URLResponse(url, HttpURLConnection.HTTP_OK, new ByteArrayInputStream(("page "+url).getBytes()));
+			response.setHeader("Content-Type", "text/html; charset=UTF-8");
+			return response;
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package fr.dz.envo.test;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.exception.HttpStatusException;
+import fr.dz.envo.util.http.AbstractURLFetcher;
+import fr.dz.envo.util.http.HedgingURLFetcher;
+import fr.dz.envo.util.http.HttpURLFetcher;
+import fr.dz.envo.util.http.RetryingURLFetcher;
+import fr.dz.envo.util.http.URLResponse;
+
+
+public class RetryingURLFetcherTestCase extends AbstractEnVOTest {
+	
+	// Constantes
+	private static final String PAGE_URL = "http://www.opensubtitles.org/fr/search2/sublanguageid-fre/moviename-wild+wild+west";
+	
+	@Test
+	public void testRetry() throws Exception {
+		debug();
+		
+		// Deux erreurs réseau puis succès
+		FakeURLFetcher delegate = new FakeURLFetcher(2, 0);
+		RetryingURLFetcher fetcher = new RetryingURLFetcher(delegate, 3, 10, 100);
+		Assert.assertEquals("Contenu", "page 3", read(fetcher.fetch(new URL(PAGE_URL))));
+		
+		// Trop d'erreurs
+		delegate = new FakeURLFetcher(3, 0);
+		fetcher = new RetryingURLFetcher(delegate, 3, 10, 100);
+		try {
+			fetcher.fetch(new URL(PAGE_URL));
+			Assert.fail("Erreur");
+		} catch (EnVOException e) {
+			Assert.assertEquals("Tentatives", 3, delegate.getCount());
+		}
+		
+		// Une erreur 404 n'est pas retentée, une erreur 503 l'est
+		delegate = new FakeURLFetcher(1, HttpURLConnection.HTTP_NOT_FOUND);
+		fetcher = new RetryingURLFetcher(delegate, 3, 10, 100);
+		try {
+			fetcher.fetch(new URL(PAGE_URL));
+			Assert.fail("Erreur");
+		} catch (HttpStatusException e) {
+			Assert.assertEquals("Tentatives", 1, delegate.getCount());
+		}
+		delegate = new FakeURLFetcher(1, HttpURLConnection.HTTP_UNAVAILABLE);
+		fetcher = new RetryingURLFetcher(delegate, 3, 10, 100);
+		Assert.assertEquals("Contenu", "page 2", read(fetcher.fetch(new URL(PAGE_URL))));
+	}
+	
+	@Test
+	public void testInvalidURL() throws Exception {
+		debug();
+		
+		// Une URL invalide n'est pas retentée
+		final AtomicInteger count = new AtomicInteger();
+		final HttpURLFetcher http = new HttpURLFetcher();
+		RetryingURLFetcher fetcher = new RetryingURLFetcher(new AbstractURLFetcher() {
+			@Override
+			public URLResponse fetch(URL url, Map<String,String> headers) throws EnVOException {
+				count.incrementAndGet();
+				return http.fetch(url, headers);
+			}
+		}, 3, 10, 100);
+		try {
+			fetcher.fetch(new URL("http://www.opensubtitles .org/fr/search"));
+			Assert.fail("URL invalide");
+		} catch (EnVOException e) {
+			Assert.assertTrue("Message : "+e.getMessage(), e.getMessage().startsWith("URL invalide"));
+			Assert.assertEquals("Tentatives", 1, count.get());
+		}
+	}
+	
+	@Test
+	public void testHedging() throws Exception {
+		debug();
+		FakeURLFetcher delegate = new FakeURLFetcher();
+		delegate.setDelay(10);
+		HedgingURLFetcher fetcher = new HedgingURLFetcher(delegate, 95, 5, 20);
+		
+		// Mesure des temps de réponse habituels, sans requète doublée
+		for ( int i = 0; i < 5; i++ ) {
+			read(fetcher.fetch(new URL(PAGE_URL)));
+		}
+		Assert.assertEquals("Requètes", 5, delegate.getCount());
+		
+		// Requète lente : doublée, la seconde répond la première
+		delegate.setSlowRequest(6, 2000);
+		long start = System.currentTimeMillis();
+		Assert.assertEquals("Réponse de la requète doublée", "page 7", read(fetcher.fetch(new URL(PAGE_URL))));
+		long duration = System.currentTimeMillis() - start;
+		Assert.assertTrue("Durée : "+duration, duration < 1000);
+		Assert.assertEquals("Requètes", 7, delegate.getCount());
+	}
+	
+	/**
+	 * Lit et ferme une réponse
+	 * @param response
+	 * @return
+	 */
+	private String read(URLResponse response) throws Exception {
+		try {
+			return IOUtils.toString(response.getInputStream(), "UTF-8");
+		} finally {
+			response.close();
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package fr.dz.envo.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import fr.dz.envo.api.SubtitlesRequest;
+import fr.dz.envo.api.SubtitlesResult;
+import fr.dz.envo.api.SubtitlesResultFile;
+import fr.dz.envo.api.SubtitlesResultsScorer;
+import fr.dz.envo.util.ReleaseName;
+import fr.dz.envo.util.ReleaseNameIndex;
+
+public class ScoringTestCase extends AbstractEnVOTest {
+	
+	// Constantes
+	private static final String LANG = "fre";
+	private static final String FILENAME = "The.Big.Bang.Theory.S05E23.[LOL].avi";
+	
+	@Test
+	public void testScoring() throws Exception {
+		debug();
+		SubtitlesRequest request = new SubtitlesRequest(LANG, FILENAME);
+		SubtitlesResult result = new SubtitlesResult();
+		result.setTrusted(false);
+		Assert.assertNull("Pas encore de scoring", result.getScoring());
+		
+		// Le nom identique donne 0 pour le nom, la taille inconnue 50 : (0 * 5 + 50 * 2) / 7
+		SubtitlesResultFile exact = createFile("The.Big.Bang.Theory.S05E23.[LOL].avi", "Dexter.S06E07.HDTV.XviD-LOL");
+		SubtitlesResultFile other = createFile("Dexter.S06E07.HDTV.XviD-LOL");
+		Assert.assertNull("Pas encore de scoring", exact.getScoring());
+		result.addFile(other);
+		result.addFile(exact);
+		Assert.assertNull("Scoring fait avec le résultat", exact.getScoring());
+		
+		// Le résultat prend le meilleur fichier, avec un bonus s'il est trusted
+		result.doScoring(request);
+		Assert.assertEquals("Scoring du fichier", Integer.valueOf(14), exact.getScoring());
+		Assert.assertTrue("Scoring du fichier", other.getScoringValue() > exact.getScoringValue());
+		Assert.assertEquals("Scoring", Integer.valueOf(14), result.getScoring());
+		result.setTrusted(true);
+		result.doScoring(request);
+		Assert.assertEquals("Scoring trusted", 13, result.getScoringValue());
+		
+		// Sans fichier, scoring par défaut
+		SubtitlesResult empty = new SubtitlesResult();
+		empty.setTrusted(false);
+		empty.doScoring(request);
+		Assert.assertEquals("Scoring par défaut", Integer.valueOf(100), empty.getScoring());
+	}
+	
+	@Test
+	public void testResultsScorer() throws Exception {
+		debug();
+		SubtitlesRequest request = new SubtitlesRequest(LANG, FILENAME);
+		List<SubtitlesResult> results = new ArrayList<SubtitlesResult>();
+		for ( int i = 1; i <= 20; i++ ) {
+			results.add(createResult(createFile("The.Big.Bang.Theory.S05E"+(i < 10 ? "0" : "")+i+".720p.HDTV.X264-DIMENSION.mkv")));
+		}
+		SubtitlesResult best = createResult(createFile("Dexter.S06E07.HDTV.XviD-LOL", "the.big.bang.theory.s05e23.hdtv.xvid-[lol]"));
+		results.add(best);
+		
+		// Seuls les deux noms les plus proches par tokens sont comparés par distance
+		SubtitlesResultsScorer scorer = new SubtitlesResultsScorer();
+		scorer.setTopK(2);
+		scorer.doScoring(request, results);
+		SubtitlesResult expected = createResult(createFile("the.big.bang.theory.s05e23.hdtv.xvid-[lol]"));
+		expected.doScoring(request);
+		Assert.assertEquals("Meilleur résultat", expected.getScoring(), best.getScoring());
+		Assert.assertEquals("Nom de fichier non comparé", Integer.valueOf(85), results.get(19).getScoring());
+		for ( SubtitlesResult result : results ) {
+			Assert.assertTrue("Meilleur résultat", best.getScoringValue() < result.getScoringValue() || result == best);
+		}
+		
+		// Sans sélection, même scoring que résultat par résultat
+		scorer.setTopK(0);
+		scorer.doScoring(request, results);
+		for ( SubtitlesResult result : results ) {
+			SubtitlesResult alone = createResult(result.getFiles().toArray(new SubtitlesResultFile[0]));
+			for ( SubtitlesResultFile file : alone.getFiles() ) {
+				file.setScoring(null);
+			}
+			alone.doScoring(request);
+			Assert.assertEquals("Scoring complet", alone.getScoring(), result.getScoring());
+		}
+	}
+	
+	@Test
+	public void testTokenize() throws Exception {
+		debug();
+		Assert.assertEquals("Tokens", "[TITLE:the, TITLE:big, TITLE:bang, TITLE:theory, EPISODE:s05e22, RESOLUTION:720p, SOURCE:hdtv, CODEC:x264, GROUP:lol]",
+				ReleaseName.tokenize("The.Big.Bang.Theory.S05E22.720p.HDTV.H264-[LOL].mkv").toString());
+		Assert.assertEquals("Tokens", "[TITLE:dexter, EPISODE:s06e07, OTHER:nebraska, OTHER:lol, OTHER:french]",
+				ReleaseName.tokenize("Dexter - 6x07 - Nebraska.LOL.French.srt").toString());
+		Assert.assertEquals("Tokens", "[TITLE:house, EPISODE:s01e01, EPISODE:s01e02, SOURCE:web, SOURCE:dl, GROUP:ntb]",
+				ReleaseName.tokenize("House.S01E01E02.WEB-DL-NTb").toString());
+		Assert.assertEquals("Tokens", "[GROUP:lol, TITLE:wild, TITLE:wild, TITLE:west, YEAR:1999]",
+				ReleaseName.tokenize("[LOL] Wild Wild West (1999).avi").toString());
+		Assert.assertEquals("Tokens", "[TITLE:spider, TITLE:man]", ReleaseName.tokenize("Spider-Man.avi").toString());
+		
+		// Un numéro d'épisode trop long n'est pas un marqueur d'épisode
+		Assert.assertEquals("Tokens", "[TITLE:show, TITLE:1x12345678901]", ReleaseName.tokenize("Show.1x12345678901.avi").toString());
+		Assert.assertEquals("Tokens", "[TITLE:show, TITLE:s01e12345678901]", ReleaseName.tokenize("Show.S01E12345678901.avi").toString());
+		Assert.assertEquals("Tokens", "[TITLE:show, EPISODE:s01e123]", ReleaseName.tokenize("Show.1x123.avi").toString());
+	}
+	
+	@Test
+	public void testIndex() throws Exception {
+		debug();
+		ReleaseNameIndex index = new ReleaseNameIndex();
+		index.add("The.Big.Bang.Theory.S05E22.720p.HDTV.X264-DIMENSION.mkv");
+		index.add("Dexter.S06E07.HDTV.XviD-LOL.avi");
+		index.add("the big bang theory 5x23 lol");
+		index.add("The.Big.Bang.Theory.S05E23.720p.HDTV.X264-DIMENSION.mkv");
+		int[] ids = index.search(FILENAME, 3);
+		Assert.assertEquals("Nombre", 3, ids.length);
+		Assert.assertEquals("Même épisode et même groupe", 2, ids[0]);
+		Assert.assertEquals("Même épisode", 3, ids[1]);
+		Assert.assertEquals("Même titre", 0, ids[2]);
+		Assert.assertEquals("Recherche vide", 0, index.search(FILENAME, 0).length);
+	}
+	
+	private SubtitlesResult createResult(SubtitlesResultFile... files) {
+		SubtitlesResult result = new SubtitlesResult();
+		result.setTrusted(false);
+		result.setFiles(new ArrayList<SubtitlesResultFile>(Arrays.asList(files)));
+		return result;
+	}
+	
+	private SubtitlesResultFile createFile(String... fileNames) {
+		SubtitlesResultFile file = new SubtitlesResultFile();
+		file.setFileNames(Arrays.asList(fileNames));
+		return file;
+	}
+}
@@ -0,0 +1,167 @@
+package fr.dz.envo.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import fr.dz.envo.api.SeasonPrefetch;
+import fr.dz.envo.api.SubtitlesRequest;
+import fr.dz.envo.api.SubtitlesResult;
+import fr.dz.envo.api.SubtitlesResultFile;
+import fr.dz.envo.exception.EnVOException;
+
+
+public class SeasonPrefetchTestCase extends AbstractEnVOTest {
+	
+	// Constantes
+	private static final String FILE_PREFIX = "target/test-files/prefetch/";
+	private static final String EPISODE_21 = FILE_PREFIX + "The.Big.Bang.Theory.S05E21.[LOL].avi";
+	private static final String EPISODE_22 = FILE_PREFIX + "The.Big.Bang.Theory.S05E22.[LOL].avi";
+	private static final String EPISODE_23 = FILE_PREFIX + "The.Big.Bang.Theory.S05E23.[LOL].avi";
+	private static final String EPISODE_24 = FILE_PREFIX + "The.Big.Bang.Theory.S05E24.[LOL].avi";
+	private static final String SUBTITLES_24 = FILE_PREFIX + "The.Big.Bang.Theory.S05E24.[LOL].srt";
+	private static final String OTHER_SEASON = FILE_PREFIX + "The.Big.Bang.Theory.S06E01.[LOL].avi";
+	private static final String FILM = FILE_PREFIX + "Wild.Wild.West.1999.avi";
+	
+	@BeforeClass
+	public static void init() throws Exception {
+		FileUtils.deleteDirectory(new File(FILE_PREFIX));
+		for ( String file : Arrays.asList(EPISODE_21, EPISODE_22, EPISODE_23, EPISODE_24, SUBTITLES_24, OTHER_SEASON, FILM) ) {
+			FileUtils.touch(new File(file));
+		}
+	}
+	
+	@Test
+	public void testPlan() throws Exception {
+		debug();
+		
+		// Episodes 21 à 23 regroupés, l'épisode 24 a déjà ses sous-titres
+		Map<String,SeasonPrefetch> prefetches = SeasonPrefetch.plan("fre",
+				Arrays.asList(EPISODE_21, EPISODE_22, EPISODE_23, EPISODE_24, OTHER_SEASON, FILM), 3);
+		Assert.assertEquals("Saisons", 1, prefetches.size());
+		SeasonPrefetch prefetch = prefetches.get(SeasonPrefetch.getKey(new SubtitlesRequest("fre", EPISODE_22)));
+		Assert.assertNotNull("Saison 5", prefetch);
+		Assert.assertEquals("Saison", Integer.valueOf(5), prefetch.getSeasonRequest().getSeason());
+		Assert.assertNull("Sans épisode", prefetch.getSeasonRequest().getEpisode());
+		Assert.assertEquals("Requète", "the big bang theory", prefetch.getSeasonRequest().getQuery());
+		
+		// Pas assez d'épisodes
+		Assert.assertTrue("Pas de regroupement", SeasonPrefetch.plan("fre", Arrays.asList(EPISODE_21, EPISODE_22), 3).isEmpty());
+		Assert.assertNull("Film", SeasonPrefetch.getKey(new SubtitlesRequest("fre", FILM)));
+	}
+	
+	@Test
+	public void testSplit() throws Exception {
+		debug();
+		SubtitlesResult episode21 = createResult("1", "The.Big.Bang.Theory.S05E21.HDTV.XviD-LOL.avi");
+		SubtitlesResult episode22 = createResult("2", "The.Big.Bang.Theory.S05E22.HDTV.XviD-LOL.avi", "the.big.bang.theory.522.hdtv-lol.avi");
+		SubtitlesResult double22 = createResult("3", "The.Big.Bang.Theory.S05E22E23.720p.HDTV.X264-DIMENSION.mkv");
+		SubtitlesResult unknown = createResult("4", "tbbt.avi");
+		List<SubtitlesResult> seasonResults = Arrays.asList(episode21, episode22, double22, unknown);
+		
+		List<SubtitlesResult> results = SeasonPrefetch.split(seasonResults, new SubtitlesRequest("fre", EPISODE_22));
+		Assert.assertEquals("Résultats de l'épisode 22", Arrays.asList("2", "3"), getIds(results));
+		for ( SubtitlesResult result : results ) {
+			Assert.assertTrue("Résultat noté", result.isScored());
+			Assert.assertNotSame("Copie", episode22, result);
+		}
+		Assert.assertFalse("Résultat de la saison non noté", episode22.isScored());
+		Assert.assertEquals("Résultats de l'épisode 23", Arrays.asList("3"), getIds(SeasonPrefetch.split(seasonResults, new SubtitlesRequest("fre", EPISODE_23))));
+	}
+	
+	@Test
+	public void testSeasonSearchedOnce() throws Exception {
+		debug();
+		FakeSubtitlesSource source = new FakeSubtitlesSource(createResult("1", "The.Big.Bang.Theory.S05E21.HDTV.XviD-LOL.avi"),
+				createResult("2", "The.Big.Bang.Theory.S05E22.HDTV.XviD-LOL.avi"));
+		SeasonPrefetch prefetch = new SeasonPrefetch(new SubtitlesRequest("fre", EPISODE_21).getSeasonRequest());
+		
+		Assert.assertEquals("Episode 21", Arrays.asList("1"), getIds(prefetch.getResults("test", source, new SubtitlesRequest("fre", EPISODE_21))));
+		Assert.assertEquals("Episode 22", Arrays.asList("2"), getIds(prefetch.getResults("test", source, new SubtitlesRequest("fre", EPISODE_22))));
+		Assert.assertNull("Episode 23 absent", prefetch.getResults("test", source, new SubtitlesRequest("fre", EPISODE_23)));
+		Assert.assertEquals("Recherches", 1, source.getSearches());
+		Assert.assertNull("Recherche sur la saison", source.getRequest().getEpisode());
+		
+		// Saison sans aucun résultat : inutile de rechercher les épisodes
+		prefetch = new SeasonPrefetch(new SubtitlesRequest("fre", EPISODE_21).getSeasonRequest());
+		Assert.assertTrue("Saison sans résultat", prefetch.getResults("test", new FakeSubtitlesSource(), new SubtitlesRequest("fre", EPISODE_21)).isEmpty());
+	}
+	
+	@Test
+	public void testFailedSeasonSearchRetried() throws Exception {
+		debug();
+		FakeSubtitlesSource source = new FakeSubtitlesSource(createResult("1", "The.Big.Bang.Theory.S05E21.HDTV.XviD-LOL.avi"));
+		source.setFailures(1);
+		SeasonPrefetch prefetch = new SeasonPrefetch(new SubtitlesRequest("fre", EPISODE_21).getSeasonRequest());
+		try {
+			prefetch.getResults("test", source, new SubtitlesRequest("fre", EPISODE_21));
+			Assert.fail("Recherche en erreur");
+		} catch (EnVOException e) {
+			// OK
+		}
+		
+		// L'erreur n'est pas conservée : l'épisode suivant relance la recherche sur la saison
+		Assert.assertEquals("Nouvelle recherche", Arrays.asList("1"), getIds(prefetch.getResults("test", source, new SubtitlesRequest("fre", EPISODE_21))));
+		Assert.assertEquals("Recherches", 2, source.getSearches());
+	}
+	
+	@Test
+	public void testEpisodeCancelled() throws Exception {
+		debug();
+		final FakeSubtitlesSource source = new FakeSubtitlesSource(createResult("1", "The.Big.Bang.Theory.S05E21.HDTV.XviD-LOL.avi"),
+				createResult("2", "The.Big.Bang.Theory.S05E22.HDTV.XviD-LOL.avi"));
+		source.setDelay(300);
+		final SeasonPrefetch prefetch = new SeasonPrefetch(new SubtitlesRequest("fre", EPISODE_21).getSeasonRequest());
+		
+		// La tâche du premier épisode est annulée pendant la recherche sur la saison
+		final AtomicReference<EnVOException> error = new AtomicReference<EnVOException>();
+		Thread episode = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					prefetch.getResults("test", source, new SubtitlesRequest("fre", EPISODE_21));
+				} catch (EnVOException e) {
+					error.set(e);
+				}
+			}
+		});
+		episode.start();
+		while ( source.getSearches() == 0 ) {
+			Thread.sleep(5);
+		}
+		episode.interrupt();
+		episode.join();
+		Assert.assertNotNull("Episode 21 interrompu", error.get());
+		
+		// La recherche sur la saison va à son terme et sert aux épisodes suivants
+		Assert.assertEquals("Episode 22", Arrays.asList("2"), getIds(prefetch.getResults("test", source, new SubtitlesRequest("fre", EPISODE_22))));
+		Assert.assertEquals("Recherches", 1, source.getSearches());
+	}
+	
+	private SubtitlesResult createResult(String id, String... filenames) {
+		SubtitlesResult result = new SubtitlesResult();
+		result.setId(id);
+		SubtitlesResultFile file = new SubtitlesResultFile();
+		file.setId(id);
+		file.setFileNames(Arrays.asList(filenames));
+		result.addFile(file);
+		return result;
+	}
+	
+	private List<String> getIds(List<SubtitlesResult> results) {
+		List<String> ids = new ArrayList<String>();
+		for ( SubtitlesResult result : results ) {
+			ids.add(result.getId());
+		}
+		return ids;
+	}
+}
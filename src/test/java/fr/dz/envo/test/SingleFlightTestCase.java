@@ -0,0 +1,222 @@
+package fr.dz.envo.test;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.jsoup.nodes.Document;
+import org.junit.After;
+import org.junit.Test;
+
+import fr.dz.envo.api.AbstractSubtitlesSource;
+import fr.dz.envo.api.NegativeResultCache;
+import fr.dz.envo.api.SearchSubtitlesTask;
+import fr.dz.envo.api.SubtitlesRequest;
+import fr.dz.envo.api.SubtitlesResult;
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.util.http.URLFetchers;
+import fr.dz.envo.util.thread.SingleFlight;
+
+
+public class SingleFlightTestCase extends AbstractEnVOTest {
+	
+	// Constantes
+	private static final int CALLERS = 8;
+	private static final long DURATION = 300;
+	private static final String PAGE_URL = "http://www.opensubtitles.org/fr/search2/sublanguageid-fre/moviename-the+big+bang+theory/season-5";
+	
+	@After
+	public void reset() {
+		URLFetchers.setPageFetcher(null);
+		NegativeResultCache.setInstance(null);
+	}
+	
+	@Test
+	public void testConcurrentCallsShareOneExecution() throws Exception {
+		debug();
+		final SingleFlight<String,Integer> singleFlight = new SingleFlight<String,Integer>();
+		final AtomicInteger executions = new AtomicInteger();
+		List<Integer> results = runConcurrently(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				return singleFlight.execute("key", new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						Thread.sleep(DURATION);
+						return executions.incrementAndGet();
+					}
+				});
+			}
+		});
+		Assert.assertEquals("Exécutions", 1, executions.get());
+		for ( Integer result : results ) {
+			Assert.assertEquals("Résultat partagé", Integer.valueOf(1), result);
+		}
+		Assert.assertEquals("Appels en cours", 0, singleFlight.getInFlight());
+		
+		// Appel terminé : un nouvel appel est exécuté
+		Assert.assertEquals("Nouvel appel", Integer.valueOf(2), singleFlight.execute("key", new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				return executions.incrementAndGet();
+			}
+		}));
+	}
+	
+	@Test
+	public void testErrorShared() throws Exception {
+		debug();
+		final SingleFlight<String,Integer> singleFlight = new SingleFlight<String,Integer>();
+		final AtomicInteger executions = new AtomicInteger();
+		List<Integer> results = runConcurrently(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				try {
+					return singleFlight.execute("key", new Callable<Integer>() {
+						@Override
+						public Integer call() throws Exception {
+							executions.incrementAndGet();
+							Thread.sleep(DURATION);
+							throw new EnVOException("Erreur réseau");
+						}
+					});
+				} catch (EnVOException e) {
+					return -1;
+				}
+			}
+		});
+		Assert.assertEquals("Exécutions", 1, executions.get());
+		for ( Integer result : results ) {
+			Assert.assertEquals("Erreur partagée", Integer.valueOf(-1), result);
+		}
+	}
+	
+	@Test
+	public void testLeaderInterrupted() throws Exception {
+		debug();
+		final SingleFlight<String,Integer> singleFlight = new SingleFlight<String,Integer>();
+		final AtomicInteger executions = new AtomicInteger();
+		final Callable<Integer> call = new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				Thread.sleep(DURATION);
+				return executions.incrementAndGet();
+			}
+		};
+		
+		// Premier appelant, interrompu pendant l'appel (tâche annulée par le gestionnaire de threads)
+		final AtomicReference<EnVOException> leaderError = new AtomicReference<EnVOException>();
+		Thread leader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					singleFlight.execute("key", call);
+				} catch (EnVOException e) {
+					leaderError.set(e);
+				}
+			}
+		});
+		leader.start();
+		while ( singleFlight.getInFlight() == 0 ) {
+			Thread.sleep(5);
+		}
+		
+		// Les autres appelants attendent le même appel et reçoivent son résultat
+		final CountDownLatch started = new CountDownLatch(CALLERS);
+		ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+		try {
+			List<Future<Integer>> followers = new ArrayList<Future<Integer>>();
+			for ( int i = 0; i < CALLERS; i++ ) {
+				followers.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						started.countDown();
+						return singleFlight.execute("key", call);
+					}
+				}));
+			}
+			started.await();
+			Thread.sleep(DURATION / 3);
+			leader.interrupt();
+			leader.join();
+			Assert.assertNotNull("Premier appelant interrompu", leaderError.get());
+			for ( Future<Integer> follower : followers ) {
+				Assert.assertEquals("Résultat partagé", Integer.valueOf(1), follower.get());
+			}
+			Assert.assertEquals("Exécutions", 1, executions.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void testPageFetchedOnce() throws Exception {
+		debug();
+		FakeURLFetcher fetcher = new FakeURLFetcher();
+		fetcher.setDelay(DURATION);
+		URLFetchers.setPageFetcher(fetcher);
+		List<Document> documents = runConcurrently(new Callable<Document>() {
+			@Override
+			public Document call() throws Exception {
+				return AbstractSubtitlesSource.getJsoupDocument(new URL(PAGE_URL));
+			}
+		});
+		Assert.assertEquals("Requètes", 1, fetcher.getCount());
+		for ( Document document : documents ) {
+			Assert.assertSame("Document partagé", documents.get(0), document);
+		}
+	}
+	
+	@Test
+	public void testIdenticalRequestsSearchedOnce() throws Exception {
+		debug();
+		NegativeResultCache.setInstance(new NegativeResultCache(new File("target/test-files/singleflight/misses.properties"), 1000));
+		final FakeSubtitlesSource source = new FakeSubtitlesSource();
+		source.setDelay(DURATION);
+		
+		// Copies d'un même fichier dans deux dossiers
+		runConcurrently(new Callable<List<SubtitlesResult>>() {
+			private AtomicInteger copy = new AtomicInteger();
+			
+			@Override
+			public List<SubtitlesResult> call() throws Exception {
+				SubtitlesRequest request = new SubtitlesRequest("fre", "copie" + copy.incrementAndGet() + "/The.Big.Bang.Theory.S05E23.[LOL].avi");
+				return new SearchSubtitlesTask(request, source, "test").doTask();
+			}
+		});
+		Assert.assertEquals("Recherches", 1, source.getSearches());
+	}
+	
+	/**
+	 * Exécute plusieurs appels simultanés et retourne leurs résultats
+	 * @param call
+	 * @return
+	 * @throws Exception
+	 */
+	private <ReturnType> List<ReturnType> runConcurrently(Callable<ReturnType> call) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+		try {
+			List<Future<ReturnType>> futures = new ArrayList<Future<ReturnType>>();
+			for ( int i = 0; i < CALLERS; i++ ) {
+				futures.add(executor.submit(call));
+			}
+			List<ReturnType> results = new ArrayList<ReturnType>();
+			for ( Future<ReturnType> future : futures ) {
+				results.add(future.get());
+			}
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -1,9 +1,14 @@
 package fr.dz.envo.test;
 
 import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import junit.framework.Assert;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -20,6 +25,8 @@ public class SubtitlesRequestTestCase extends AbstractEnVOTest {
 	private static final String FILM = "wild wild west [lol]";
 	private static final Integer SEASON = 5;
 	private static final Integer EPISODE = 23;
+	private static final String CORPUS = "/filenames.txt";
+	private static final String SERIE_REG_EXP = "^([A-Za-z0-9 .]*)[Ss]([0-9]{1,2})[EeXx]([0-9]{1,2}).*$";
 	
 	@BeforeClass
 	public static void init() {
@@ -74,4 +81,63 @@ public class SubtitlesRequestTestCase extends AbstractEnVOTest {
 		Assert.assertNull("Episode", request.getEpisode());
 		Assert.assertNull("Filesize", request.getFilesize());
 	}
+	
+	@Test
+	public void testSerieFormats() throws Exception {
+		debug();
+		assertRequest("Dexter - 6x07 - Nebraska.avi", "dexter", 6, 7, 7, null);
+		assertRequest("House.S01E01E02.WEB-DL-NTb.mkv", "house", 1, 1, 2, null);
+		assertRequest("House.S01E01E12345678901.mkv", "house s01e01e12345678901", null, null, null, null);
+		assertRequest("[HorribleSubs] Fringe S05E04 [720p].mkv", "fringe", 5, 4, 4, null);
+		assertRequest("the_walking_dead_s03e09_hdtv_x264.avi", "the walking dead", 3, 9, 9, null);
+		assertRequest("Doctor.Who.2005.S07E05.The.Angels.Take.Manhattan.HDTV.x264-FoV.mp4", "doctor who 2005", 7, 5, 5, null);
+	}
+	
+	@Test
+	public void testFilmFormats() throws Exception {
+		debug();
+		assertRequest("Wild.Wild.West.1999.DVDRip.XviD-NoGrp.avi", "wild wild west", null, null, null, 1999);
+		assertRequest("Avatar (2009) [1080p].mkv", "avatar", null, null, null, 2009);
+		assertRequest("2012.2009.DVDRip.XviD-iMBT.avi", "2012", null, null, null, 2009);
+		assertRequest("Video.1920x1080.avi", "video 1920x1080", null, null, null, null);
+		assertRequest("Spider-Man.avi", "spider-man", null, null, null, null);
+	}
+	
+	@Test
+	public void testRegExpEquivalence() throws Exception {
+		debug();
+		// Sur les noms reconnus par l'ancienne expression régulière, le parcours unique doit donner le même résultat
+		Pattern pattern = Pattern.compile(SERIE_REG_EXP);
+		SubtitlesRequest request = new SubtitlesRequest(null, null);
+		int checked = 0;
+		for ( String filename : loadCorpus() ) {
+			Matcher matcher = pattern.matcher(filename);
+			if ( matcher.find() ) {
+				request.parseFilename(filename);
+				Assert.assertEquals("Query "+filename, matcher.group(1).replaceAll("\\.", " ").trim().toLowerCase(), request.getQuery());
+				Assert.assertEquals("Season "+filename, Integer.valueOf(matcher.group(2)), request.getSeason());
+				Assert.assertEquals("Episode "+filename, Integer.valueOf(matcher.group(3)), request.getEpisode());
+				checked++;
+			}
+		}
+		Assert.assertTrue("Aucun nom de fichier vérifié", checked > 0);
+	}
+	
+	private List<String> loadCorpus() throws Exception {
+		InputStream in = getClass().getResourceAsStream(CORPUS);
+		try {
+			return IOUtils.readLines(in, "UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+	
+	private void assertRequest(String filename, String query, Integer season, Integer episode, Integer lastEpisode, Integer year) {
+		SubtitlesRequest request = new SubtitlesRequest(LANG, FILE_PREFIX + filename);
+		Assert.assertEquals("Query", query, request.getQuery());
+		Assert.assertEquals("Season", season, request.getSeason());
+		Assert.assertEquals("Episode", episode, request.getEpisode());
+		Assert.assertEquals("Last episode", lastEpisode, request.getLastEpisode());
+		Assert.assertEquals("Year", year, request.getYear());
+	}
 }
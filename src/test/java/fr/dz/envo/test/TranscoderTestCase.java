@@ -0,0 +1,92 @@
+package fr.dz.envo.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.charset.CodingErrorAction;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.util.IOUtils;
+import fr.dz.envo.util.Transcoder;
+
+
+public class TranscoderTestCase extends AbstractEnVOTest {
+	
+	// Constantes
+	private static final String FILE_PREFIX = "target/test-files/transcoder/";
+	private static final String LINE = "Déjà vu, ça a été très étrange !\r\n";
+	
+	@BeforeClass
+	public static void init() throws Exception {
+		new File(FILE_PREFIX).mkdirs();
+	}
+	
+	@Test
+	public void testChangeEncoding() throws Exception {
+		debug();
+		File file = new File(FILE_PREFIX + "change/utf8.srt");
+		String content = StringUtils.repeat(LINE, 5000);
+		FileUtils.writeStringToFile(file, "\uFEFF" + content, "UTF-8");
+		IOUtils.changeEncoding(file, "UTF-8", "WINDOWS-1252");
+		
+		// BOM supprimé, contenu identique, pas de fichier temporaire restant
+		Assert.assertEquals("Contenu", content, FileUtils.readFileToString(file, "WINDOWS-1252"));
+		Assert.assertEquals("Fichiers", 1, file.getParentFile().list().length);
+	}
+	
+	@Test
+	public void testShortFilename() throws Exception {
+		debug();
+		File file = new File(FILE_PREFIX + "short/a");
+		FileUtils.writeStringToFile(file, LINE, "UTF-8");
+		new Transcoder("UTF-8", "WINDOWS-1252").transcode(new FileInputStream(file), file);
+		Assert.assertEquals("Contenu", LINE, FileUtils.readFileToString(file, "WINDOWS-1252"));
+		Assert.assertEquals("Fichiers", 1, file.getParentFile().list().length);
+	}
+	
+	@Test
+	public void testWriteBOM() throws Exception {
+		debug();
+		Transcoder transcoder = new Transcoder("UTF-8", "UTF-8", CodingErrorAction.REPLACE, true);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		transcoder.transcode(new ByteArrayInputStream(("\uFEFF" + LINE).getBytes("UTF-8")), out);
+		Assert.assertEquals("Un seul BOM", "\uFEFF" + LINE, new String(out.toByteArray(), "UTF-8"));
+	}
+	
+	@Test
+	public void testUnmappable() throws Exception {
+		debug();
+		byte[] data = "Œuvre → été".getBytes("UTF-8");
+		Assert.assertEquals("Remplacement", "Œuvre ? été", transcode(data, CodingErrorAction.REPLACE));
+		Assert.assertEquals("Suppression", "Œuvre  été", transcode(data, CodingErrorAction.IGNORE));
+		try {
+			transcode(data, CodingErrorAction.REPORT);
+			Assert.fail("Erreur attendue");
+		} catch (EnVOException e) {
+			// Le fichier d'origine n'est pas modifié
+			Assert.assertTrue("Fichier intact", FileUtils.readFileToString(new File(FILE_PREFIX + "unmappable.srt"), "WINDOWS-1252").startsWith("Œuvre"));
+		}
+	}
+	
+	/**
+	 * Conversion en WINDOWS-1252 d'un fichier existant avec la politique donnée
+	 * @param data
+	 * @param action
+	 * @return
+	 * @throws Exception
+	 */
+	private String transcode(byte[] data, CodingErrorAction action) throws Exception {
+		File file = new File(FILE_PREFIX + "unmappable.srt");
+		FileUtils.writeStringToFile(file, "Œuvre", "WINDOWS-1252");
+		new Transcoder("UTF-8", "WINDOWS-1252", action, false).transcode(new ByteArrayInputStream(data), file);
+		return FileUtils.readFileToString(file, "WINDOWS-1252");
+	}
+}
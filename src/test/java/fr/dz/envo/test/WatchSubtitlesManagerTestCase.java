@@ -0,0 +1,225 @@
+package fr.dz.envo.test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.dz.envo.api.WatchSubtitlesManager;
+import fr.dz.envo.exception.EnVOException;
+import fr.dz.envo.util.WorkQueue;
+
+
+public class WatchSubtitlesManagerTestCase extends AbstractEnVOTest {
+	
+	// Constantes
+	private static final String FILE_PREFIX = "target/test-files/watch/";
+	private static final String LIBRARY = FILE_PREFIX + "library/";
+	private static final String QUEUE_FILE = FILE_PREFIX + "queue.txt";
+	private static final long DEBOUNCE = 300;
+	private static final long TIMEOUT = 10000;
+	
+	// Attributs
+	private List<String> processed = new CopyOnWriteArrayList<String>();
+	private TestWatchSubtitlesManager manager;
+	private volatile Boolean result = true;
+	private volatile boolean error;
+	
+	/**
+	 * Surveillance sans accès au réseau : les fichiers traités sont seulement mémorisés
+	 */
+	private class TestWatchSubtitlesManager extends WatchSubtitlesManager {
+		
+		private TestWatchSubtitlesManager() throws EnVOException {
+			super("fre", new File(LIBRARY), DEBOUNCE, new File(QUEUE_FILE));
+		}
+		
+		@Override
+		protected Boolean process(String file) throws EnVOException {
+			processed.add(file);
+			if ( error ) {
+				throw new EnVOException("Erreur de recherche");
+			}
+			return result;
+		}
+	}
+	
+	@Before
+	public void init() throws Exception {
+		FileUtils.deleteDirectory(new File(FILE_PREFIX));
+		new File(LIBRARY).mkdirs();
+	}
+	
+	@After
+	public void stopWatch() {
+		if ( manager != null ) {
+			manager.stop();
+		}
+	}
+	
+	@Test
+	public void testWorkQueue() throws Exception {
+		debug();
+		WorkQueue queue = new WorkQueue(new File(QUEUE_FILE));
+		Assert.assertTrue("Ajout", queue.add("a.avi"));
+		Assert.assertTrue("Ajout", queue.add("b.avi"));
+		Assert.assertFalse("Doublon", queue.add("a.avi"));
+		Assert.assertTrue("Suppression", queue.remove("a.avi"));
+		queue.add("c.avi");
+		Assert.assertEquals("Rechargement", Arrays.asList("b.avi", "c.avi"), new WorkQueue(new File(QUEUE_FILE)).getItems());
+		
+		// Ajout groupé : seuls les nouveaux éléments sont retournés
+		Assert.assertEquals("Ajout groupé", Arrays.asList("d.avi", "e.avi"), queue.addAll(Arrays.asList("c.avi", "d.avi", "e.avi", "d.avi")));
+		Assert.assertEquals("Rechargement", Arrays.asList("b.avi", "c.avi", "d.avi", "e.avi"), new WorkQueue(new File(QUEUE_FILE)).getItems());
+	}
+	
+	@Test
+	public void testQueueFile() throws Exception {
+		debug();
+		File library = new File(LIBRARY);
+		Assert.assertEquals("Même surveillance", WatchSubtitlesManager.getQueueFile("fre", library),
+				WatchSubtitlesManager.getQueueFile("fre", new File(LIBRARY + "Saison 6/..")));
+		Assert.assertFalse("Autre langue", WatchSubtitlesManager.getQueueFile("fre", library).equals(WatchSubtitlesManager.getQueueFile("eng", library)));
+		Assert.assertFalse("Autre dossier", WatchSubtitlesManager.getQueueFile("fre", library).equals(WatchSubtitlesManager.getQueueFile("fre", new File(FILE_PREFIX))));
+	}
+	
+	@Test
+	public void testNewFiles() throws Exception {
+		debug();
+		startWatch();
+		
+		// Fichier vidéo sans sous-titres, fichier vidéo avec sous-titres, fichier non vidéo et dossier copié
+		File video = new File(LIBRARY + "The.Big.Bang.Theory.S05E22.[LOL].avi");
+		File subtitled = new File(LIBRARY + "The.Big.Bang.Theory.S05E23.[LOL].mkv");
+		FileUtils.touch(new File(LIBRARY + "The.Big.Bang.Theory.S05E23.[LOL].srt"));
+		FileUtils.touch(new File(LIBRARY + "readme.txt"));
+		FileUtils.writeStringToFile(video, "video");
+		FileUtils.writeStringToFile(subtitled, "video");
+		File season = new File(FILE_PREFIX + "Saison 6");
+		File episode = new File(season, "The.Big.Bang.Theory.S06E01.[LOL].mp4");
+		FileUtils.writeStringToFile(episode, "video");
+		FileUtils.moveDirectoryToDirectory(season, new File(LIBRARY), false);
+		
+		waitProcessed(2);
+		Thread.sleep(DEBOUNCE * 3);
+		Collections.sort(processed);
+		Assert.assertEquals("Fichiers traités", Arrays.asList(new File(LIBRARY + "Saison 6/" + episode.getName()).getPath(), video.getPath()), processed);
+		waitEmptyQueue();
+	}
+	
+	@Test
+	public void testDebounce() throws Exception {
+		debug();
+		startWatch();
+		
+		// Le fichier grossit pendant plus longtemps que le délai de stabilisation
+		File video = new File(LIBRARY + "Wild.Wild.West.1999.avi");
+		long end = System.currentTimeMillis() + DEBOUNCE * 4;
+		while ( System.currentTimeMillis() < end ) {
+			FileUtils.writeStringToFile(video, "data", true);
+			Thread.sleep(DEBOUNCE / 5);
+			Assert.assertTrue("Fichier traité pendant l'écriture", processed.isEmpty());
+		}
+		waitProcessed(1);
+		Assert.assertEquals("Fichiers traités", Arrays.asList(video.getPath()), processed);
+	}
+	
+	@Test
+	public void testResume() throws Exception {
+		debug();
+		String video = new File(LIBRARY + "Wild.Wild.West.1999.avi").getPath();
+		FileUtils.touch(new File(video));
+		new WorkQueue(new File(QUEUE_FILE)).add(video);
+		startWatch();
+		waitProcessed(1);
+		Assert.assertEquals("Fichiers repris", Arrays.asList(video), processed);
+		waitEmptyQueue();
+	}
+	
+	@Test
+	public void testNotFoundRechecked() throws Exception {
+		debug();
+		result = false;
+		File video = new File(LIBRARY + "Wild.Wild.West.1999.avi");
+		FileUtils.touch(video);
+		new WorkQueue(new File(QUEUE_FILE)).add(video.getPath());
+		
+		// Le fichier sans sous-titres reste dans la file et est revérifié
+		startWatch(DEBOUNCE);
+		waitProcessed(2);
+		Assert.assertEquals("File de travail", Arrays.asList(video.getPath()), manager.getQueue().getItems());
+		
+		// Fichier supprimé : retiré de la file sans recherche
+		video.delete();
+		waitEmptyQueue();
+	}
+	
+	@Test
+	public void testErrorRechecked() throws Exception {
+		debug();
+		error = true;
+		File video = new File(LIBRARY + "Wild.Wild.West.1999.avi");
+		FileUtils.touch(video);
+		new WorkQueue(new File(QUEUE_FILE)).add(video.getPath());
+		
+		// Le fichier en erreur reste dans la file et est revérifié
+		startWatch(DEBOUNCE);
+		waitProcessed(2);
+		Assert.assertEquals("File de travail", Arrays.asList(video.getPath()), manager.getQueue().getItems());
+		
+		// Recherche de nouveau possible : sous-titres trouvés, fichier retiré de la file
+		error = false;
+		waitEmptyQueue();
+	}
+	
+	/**
+	 * Démarre la surveillance dans un thread séparé
+	 * @throws EnVOException
+	 */
+	private void startWatch() throws EnVOException {
+		startWatch(TIMEOUT * 10);
+	}
+	
+	/**
+	 * Démarre la surveillance dans un thread séparé
+	 * @param recheck Le délai entre deux vérifications des fichiers sans sous-titres
+	 * @throws EnVOException
+	 */
+	private void startWatch(long recheck) throws EnVOException {
+		manager = new TestWatchSubtitlesManager();
+		manager.setRecheck(recheck);
+		manager.start();
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				manager.watch();
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	private void waitProcessed(int count) throws InterruptedException {
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while ( processed.size() < count && System.currentTimeMillis() < end ) {
+			Thread.sleep(50);
+		}
+		Assert.assertTrue("Fichiers non traités", processed.size() >= count);
+	}
+	
+	private void waitEmptyQueue() throws InterruptedException {
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while ( manager.getQueue().size() > 0 && System.currentTimeMillis() < end ) {
+			Thread.sleep(50);
+		}
+		Assert.assertEquals("File de travail", 0, manager.getQueue().size());
+	}
+}